@@ -37,7 +37,9 @@ public class EAEventListener extends AbstractListener
 	public void mouseMoved(MouseEvent e)
 	{
 		super.mouseMoved(e);
-		this.controller.paintLayers();
+
+		// only the hovered cell of the grid changes
+		this.controller.paintLayer(this.controller.getVisualizer().getGridRenderLayer());
 	}
 
 }
@@ -22,6 +22,8 @@ package org.matsim.evacuationgui.analysis;
 
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.evacuationgui.analysis.control.EnsembleAnalysis;
+import org.matsim.evacuationgui.analysis.data.ClassificationMode;
 import org.matsim.evacuationgui.analysis.gui.AbstractDataPanel;
 import org.matsim.evacuationgui.analysis.gui.EvacuationTimeGraphPanel;
 import org.matsim.evacuationgui.analysis.gui.KeyPanel;
@@ -43,6 +45,10 @@ import java.util.ArrayList;
 public class EAToolBox extends AbstractToolBox {
     private static final long serialVersionUID = 1L;
     private static final Logger log = Logger.getLogger(EvacuationAnalysis.class);
+    private static final String NO_COMPARISON = "-";
+    private static final String NO_PERCENTILE = "-";
+    private static final String BATCH_LABEL = "analyze all iterations";
+    private static final String ENSEMBLE_LABEL = "analyze ensemble";
     private int exportSize;
     private JPanel compositePanel;
     //	private JButton saveButton;
@@ -58,9 +64,21 @@ public class EAToolBox extends AbstractToolBox {
     private JButton calcButton;
     private ArrayList<File> eventFiles;
     private JComboBox iterationsList;
+    private JComboBox comparisonList;
     private JSlider gridSizeSlider;
     private JComboBox modeList;
+    private JComboBox classificationList;
     private JSlider transparencySlider;
+    private JSlider timeSlider;
+    private JLabel timeLabel;
+    private double timeBinSize = 60;
+    private JCheckBox streamingCheckBox;
+    private JProgressBar readingProgressBar;
+    private JButton cancelButton;
+    private JButton batchButton;
+    private JButton ensembleButton;
+    private JComboBox percentileList;
+    private boolean ensembleAvailable = false;
     private float cellTransparency;
     private String itersOutputDir;
     private boolean firstLoad;
@@ -104,9 +122,9 @@ public class EAToolBox extends AbstractToolBox {
         this.keyPanel = new KeyPanel(this.mode, 360, 160);
         this.keyPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
 
-        this.controlPanel = new JPanel(new GridLayout(7, 3));
-        this.controlPanel.setPreferredSize(new Dimension(360, 220));
-        this.controlPanel.setSize(new Dimension(360, 220));
+        this.controlPanel = new JPanel(new GridLayout(14, 3));
+        this.controlPanel.setPreferredSize(new Dimension(360, 392));
+        this.controlPanel.setSize(new Dimension(360, 392));
 
         this.blockPanel.add(graphPanel);
         this.blockPanel.add(keyPanel);
@@ -153,6 +171,17 @@ public class EAToolBox extends AbstractToolBox {
         iterationSelectionPanel.add(new JLabel(" event file: ", SwingConstants.RIGHT));
         iterationSelectionPanel.add(this.iterationsList);
 
+        // the differences to the selected file are shown, if any
+        JPanel comparisonSelectionPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        comparisonSelectionPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        this.comparisonList = new JComboBox();
+        this.comparisonList.addItem(NO_COMPARISON);
+        this.comparisonList.addActionListener(this);
+        this.comparisonList.setActionCommand("changeComparison");
+        this.comparisonList.setPreferredSize(new Dimension(220, 24));
+        comparisonSelectionPanel.add(new JLabel(" compare with: ", SwingConstants.RIGHT));
+        comparisonSelectionPanel.add(this.comparisonList);
+
         JPanel gridSizeSelectionPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         gridSizeSelectionPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
         this.gridSizeSlider = new JSlider(SwingConstants.HORIZONTAL, 10, 100, (int) this.cellSize);
@@ -175,7 +204,7 @@ public class EAToolBox extends AbstractToolBox {
                     int value = ((JSlider) (arg0.getSource())).getValue();
                     updateCellSize(value);
                     //
-                    EAToolBox.this.module.runCalculation();
+                    EAToolBox.this.module.updateGrid();
                 }
             }
 
@@ -214,6 +243,18 @@ public class EAToolBox extends AbstractToolBox {
         modeSelectionPanel.add(new JLabel(" mode: ", SwingConstants.RIGHT));
         modeSelectionPanel.add(this.modeList);
 
+        JPanel classificationSelectionPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        classificationSelectionPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        this.classificationList = new JComboBox();
+        this.classificationList.addItem(ClassificationMode.QUANTILE);
+        this.classificationList.addItem(ClassificationMode.NATURAL_BREAKS);
+        this.classificationList.addItem(ClassificationMode.EQUAL_INTERVAL);
+        this.classificationList.setActionCommand("changeClassification");
+        this.classificationList.addActionListener(this);
+        this.classificationList.setPreferredSize(new Dimension(220, 24));
+        classificationSelectionPanel.add(new JLabel(" classes: ", SwingConstants.RIGHT));
+        classificationSelectionPanel.add(this.classificationList);
+
         JPanel calculateButtonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         calculateButtonPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 7));
         calculateButtonPanel.add(new JLabel(""));
@@ -238,7 +279,7 @@ public class EAToolBox extends AbstractToolBox {
                 // if (!useCalculateButton)
                 // {
                 EAToolBox.this.module.setCellTransparency((((JSlider) arg0.getSource()).getValue()) / 100f);
-                EAToolBox.this.module.runCalculation();
+                EAToolBox.this.module.updateColoration();
                 // }
             }
 
@@ -262,13 +303,92 @@ public class EAToolBox extends AbstractToolBox {
         transparencySliderPanel.add(new JLabel(" cell transparency: ", SwingConstants.RIGHT));
         transparencySliderPanel.add(transparencySlider);
 
+        // the last position shows the end of the run
+        JPanel timeSliderPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        timeSliderPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        this.timeSlider = new JSlider(SwingConstants.HORIZONTAL, 0, 0, 0);
+        this.timeSlider.setEnabled(false);
+        this.timeSlider.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                updateTimeBin(((JSlider) e.getSource()).getValue());
+            }
+        });
+        this.timeSlider.setPreferredSize(new Dimension(220, 24));
+        this.timeLabel = new JLabel(" time: end ", SwingConstants.RIGHT);
+        timeSliderPanel.add(this.timeLabel);
+        timeSliderPanel.add(this.timeSlider);
+
+        JPanel streamingPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        streamingPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        this.streamingCheckBox = new JCheckBox(" streaming analysis (low memory)");
+        this.streamingCheckBox.setToolTipText("events are not kept in memory, median and clearing times are estimated");
+        this.streamingCheckBox.addItemListener(new ItemListener() {
+            @Override
+            public void itemStateChanged(ItemEvent e) {
+                EAToolBox.this.module.setStreaming(e.getStateChange() == ItemEvent.SELECTED);
+                if ((!firstLoad) && (!useCalculateButton)) {
+                    EAToolBox.this.module.runCalculation();
+                }
+            }
+        });
+        streamingPanel.add(this.streamingCheckBox);
+
+        JPanel readingPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        readingPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        this.readingProgressBar = new JProgressBar(0, 100);
+        this.readingProgressBar.setStringPainted(true);
+        this.readingProgressBar.setPreferredSize(new Dimension(220, 20));
+        this.cancelButton = new JButton("cancel");
+        this.cancelButton.setActionCommand("cancel");
+        this.cancelButton.addActionListener(this);
+        this.cancelButton.setEnabled(false);
+        this.cancelButton.setPreferredSize(new Dimension(80, 20));
+        readingPanel.add(this.readingProgressBar);
+        readingPanel.add(this.cancelButton);
+
+        JPanel batchPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        batchPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        this.batchButton = new JButton(BATCH_LABEL);
+        this.batchButton.setActionCommand("batch");
+        this.batchButton.addActionListener(this);
+        this.batchButton.setPreferredSize(new Dimension(180, 20));
+        batchPanel.add(this.batchButton);
+
+        // all event files as runs of an ensemble (e.g. random seeds), shown
+        // as percentiles once analyzed
+        JPanel ensemblePanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        ensemblePanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        this.ensembleButton = new JButton(ENSEMBLE_LABEL);
+        this.ensembleButton.setActionCommand("ensemble");
+        this.ensembleButton.addActionListener(this);
+        this.ensembleButton.setPreferredSize(new Dimension(150, 20));
+        this.percentileList = new JComboBox();
+        this.percentileList.addItem(NO_PERCENTILE);
+        for (double percentile : EnsembleAnalysis.PERCENTILES) {
+            this.percentileList.addItem(EnsembleAnalysis.getPercentileName(percentile));
+        }
+        this.percentileList.addActionListener(this);
+        this.percentileList.setActionCommand("changePercentile");
+        this.percentileList.setEnabled(false);
+        ensemblePanel.add(this.ensembleButton);
+        ensemblePanel.add(new JLabel(" percentile: ", SwingConstants.RIGHT));
+        ensemblePanel.add(this.percentileList);
+
         this.controlPanel.add(new JLabel(""));
         this.controlPanel.add(iterationSelectionPanel);
+        this.controlPanel.add(comparisonSelectionPanel);
         this.controlPanel.add(gridSizeSelectionPanel);
         this.controlPanel.add(modeSelectionPanel);
+        this.controlPanel.add(classificationSelectionPanel);
         this.controlPanel.add(calculateButtonPanel);
         this.controlPanel.add(new JSeparator());
         this.controlPanel.add(transparencySliderPanel);
+        this.controlPanel.add(timeSliderPanel);
+        this.controlPanel.add(streamingPanel);
+        this.controlPanel.add(readingPanel);
+        this.controlPanel.add(batchPanel);
+        this.controlPanel.add(ensemblePanel);
 
 //		if (this.controller.isStandAlone())
 //			panel.add(this.openBtn);
@@ -338,6 +458,14 @@ public class EAToolBox extends AbstractToolBox {
         }
     }
 
+    /**
+     * @return signed difference, e.g. of a comparison of two runs
+     */
+    public static String getReadableDifference(double value, Unit unit) {
+        String sign = value < 0 ? " -" : " +";
+        return sign + getReadableTime(Math.abs(value), unit).replace(" > ", " ").trim();
+    }
+
     protected void updateCellSize(int value) {
         this.cellSize = (double) value;
         this.gridSizeLabel.setText(cellSizeText + value + " ");
@@ -355,6 +483,27 @@ public class EAToolBox extends AbstractToolBox {
         this.gridRenderer.setTransparency(transparency);
     }
 
+    /**
+     * sets the range of the time slider, which is reset to the end of the
+     * run
+     */
+    public void setTimeBins(int timeBinCount, double timeBinSize) {
+        this.timeBinSize = timeBinSize;
+        this.timeSlider.setMaximum(timeBinCount);
+        this.timeSlider.setValue(timeBinCount);
+        this.timeSlider.setEnabled(timeBinCount > 0);
+        updateTimeBin(timeBinCount);
+    }
+
+    protected void updateTimeBin(int value) {
+        boolean end = value >= this.timeSlider.getMaximum();
+        this.timeLabel.setText(end ? " time: end " : " time:" + getReadableTime((value + 1) * this.timeBinSize, Unit.TIME) + " ");
+
+        if ((this.gridRenderer != null) && (this.gridRenderer.getTimeBin() != (end ? -1 : value))) {
+            this.gridRenderer.setTimeBin(end ? -1 : value);
+        }
+    }
+
     /**
      * save, open and (re)calculate events
      */
@@ -365,6 +514,23 @@ public class EAToolBox extends AbstractToolBox {
             this.module.runCalculation();
         }
 
+        else if (e.getActionCommand() == "cancel") {
+            this.module.cancelEventReader();
+        }
+
+        else if (e.getActionCommand() == "batch") {
+            this.module.runBatchAnalysis();
+        }
+
+        else if (e.getActionCommand() == "ensemble") {
+            this.module.runEnsembleAnalysis();
+        }
+
+        else if (e.getActionCommand() == "changePercentile") {
+            int index = percentileList.getSelectedIndex();
+            this.module.showPercentile(index > 0 ? EnsembleAnalysis.PERCENTILES[index - 1] : -1);
+        }
+
         else {
             if ((e.getActionCommand() == "changeIteration") && (!firstLoad)) {
                 File newFile = this.module.getEventPathFromName("" + iterationsList.getSelectedItem());
@@ -386,6 +552,18 @@ public class EAToolBox extends AbstractToolBox {
                     this.module.setMode((Mode) modeList.getSelectedItem());
 
                 }
+                else if ((e.getActionCommand() == "changeComparison") && (!firstLoad)) {
+                    File variantFile = this.module.getEventPathFromName("" + comparisonList.getSelectedItem());
+                    if (variantFile != null) {
+                        this.module.runComparison(variantFile);
+                    }
+                    else {
+                        this.module.clearComparison();
+                    }
+                }
+                else if (e.getActionCommand() == "changeClassification") {
+                    this.module.setClassificationMode((ClassificationMode) classificationList.getSelectedItem());
+                }
                 else {
                     if (e.getActionCommand() == "OTFVis") {
                         // TODO
@@ -410,12 +588,31 @@ public class EAToolBox extends AbstractToolBox {
 
     public void setEventFileItems(ArrayList<File> items) {
         iterationsList.removeAllItems();
+        comparisonList.removeAllItems();
+        comparisonList.addItem(NO_COMPARISON);
         for (File eventFile : items) {
             String shortenedFileName = eventFile.getName();
             iterationsList.addItem(shortenedFileName);
+            comparisonList.addItem(shortenedFileName);
         }
     }
 
+    /**
+     * @param running true while two runs are compared
+     */
+    public void setComparisonRunning(boolean running) {
+        this.comparisonList.setEnabled(!running);
+    }
+
+    /**
+     * shows no comparison as selected, without notifying the module
+     */
+    public void resetComparison() {
+        this.comparisonList.setActionCommand("");
+        this.comparisonList.setSelectedItem(NO_COMPARISON);
+        this.comparisonList.setActionCommand("changeComparison");
+    }
+
 //	public void setSaveButtonEnabled(boolean enabled) {
 //		this.saveButton.setEnabled(enabled);
 //	}
@@ -459,6 +656,72 @@ public class EAToolBox extends AbstractToolBox {
 
     }
 
+    /**
+     * @param reading true while an event file is read
+     */
+    public void setReading(boolean reading) {
+        this.cancelButton.setEnabled(reading);
+        if (reading) {
+            this.readingProgressBar.setValue(0);
+        }
+    }
+
+    /**
+     * @param running true while all iterations are analyzed
+     */
+    public void setBatchAnalysisRunning(boolean running) {
+        this.batchButton.setEnabled(!running);
+        this.batchButton.setText(running ? getProgressLabel(0) : BATCH_LABEL);
+    }
+
+    /**
+     * @param progress share of the iterations analyzed
+     */
+    public void setBatchAnalysisProgress(double progress) {
+        this.batchButton.setText(getProgressLabel(progress));
+    }
+
+    /**
+     * @param running true while the ensemble is analyzed
+     */
+    public void setEnsembleAnalysisRunning(boolean running) {
+        this.ensembleButton.setEnabled(!running);
+        this.ensembleButton.setText(running ? getProgressLabel(0) : ENSEMBLE_LABEL);
+        this.percentileList.setEnabled(!running && ensembleAvailable);
+    }
+
+    /**
+     * @param progress share of the runs analyzed
+     */
+    public void setEnsembleAnalysisProgress(double progress) {
+        this.ensembleButton.setText(getProgressLabel(progress));
+    }
+
+    private static String getProgressLabel(double progress) {
+        return "analyzing (" + (int) (progress * 100) + "%)";
+    }
+
+    /**
+     * @param available percentiles of an ensemble can be shown
+     */
+    public void setEnsembleAvailable(boolean available) {
+        this.ensembleAvailable = available;
+        this.percentileList.setEnabled(available && this.ensembleButton.isEnabled());
+    }
+
+    /**
+     * shows no percentile as selected, without notifying the module
+     */
+    public void resetPercentile() {
+        this.percentileList.setActionCommand("");
+        this.percentileList.setSelectedItem(NO_PERCENTILE);
+        this.percentileList.setActionCommand("changePercentile");
+    }
+
+    public void setReadingProgress(double progress) {
+        this.readingProgressBar.setValue((int) (progress * 100));
+    }
+
     class TypeHour implements KeyListener {
 
         @Override
@@ -20,11 +20,25 @@
 
 package org.matsim.evacuationgui.analysis;
 
+import org.matsim.evacuationgui.analysis.control.BatchAnalysis;
+import org.matsim.evacuationgui.analysis.control.EnsembleAnalysis;
 import org.matsim.evacuationgui.analysis.control.EventHandler;
-import org.matsim.evacuationgui.analysis.control.EventReaderThread;
+import org.matsim.evacuationgui.analysis.control.EventsCache;
+import org.matsim.evacuationgui.analysis.control.EventsCacheReader;
+import org.matsim.evacuationgui.analysis.control.EventsCacheWriter;
+import org.matsim.evacuationgui.analysis.control.EventsFileReader;
+import org.matsim.evacuationgui.analysis.control.PipelinedEventsReader;
+import org.matsim.evacuationgui.analysis.control.RunComparison;
+import org.matsim.evacuationgui.analysis.control.vis.ColorationCache;
+import org.matsim.evacuationgui.analysis.control.vis.DifferenceVisualizer;
+import org.matsim.evacuationgui.analysis.data.ClassificationMode;
 import org.matsim.evacuationgui.analysis.data.ColorationMode;
+import org.matsim.evacuationgui.analysis.data.ComparisonData;
+import org.matsim.evacuationgui.analysis.data.EnsembleData;
 import org.matsim.evacuationgui.analysis.data.EventData;
+import org.matsim.evacuationgui.analysis.data.IterationSummary;
 import org.matsim.evacuationgui.analysis.gui.AbstractDataPanel;
+import org.matsim.evacuationgui.analysis.gui.BatchAnalysisDialog;
 import org.matsim.evacuationgui.analysis.gui.KeyPanel;
 import org.matsim.evacuationgui.control.Controller;
 import org.matsim.evacuationgui.model.AbstractModule;
@@ -35,8 +49,8 @@ import org.matsim.evacuationgui.model.imagecontainer.BufferedImageContainer;
 import org.matsim.evacuationgui.model.process.*;
 import org.matsim.evacuationgui.view.DefaultWindow;
 import org.matsim.evacuationgui.view.renderer.GridRenderer;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.core.api.experimental.events.EventsManager;
-import org.matsim.core.events.EventsReaderXMLv1;
 import org.matsim.core.events.EventsUtils;
 
 import javax.swing.*;
@@ -44,7 +58,8 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Collection;
+import java.util.List;
 
 public class EvacuationAnalysis extends AbstractModule {
 
@@ -52,6 +67,7 @@ public class EvacuationAnalysis extends AbstractModule {
     private File currentEventFile;
     private EventHandler eventHandler;
     private ColorationMode colorationMode = ColorationMode.GREEN_YELLOW_RED;
+    private ClassificationMode classificationMode = ClassificationMode.QUANTILE;
     private float cellTransparency = 0.6f;
     private int k = 5;
     private GridRenderer gridRenderer;
@@ -59,12 +75,31 @@ public class EvacuationAnalysis extends AbstractModule {
     private AbstractDataPanel graphPanel;
     private KeyPanel keyPanel;
     private Thread readerThread;
+    private EventsFileReader eventReader;
     private Mode mode;
 
     private EAToolBox toolBox;
 
     private double gridSize = 10;
     private boolean useCellCount = true;
+    private boolean streaming = false;
+    private boolean warmUpModes = true;
+
+    // minimum time between two intermediate results while reading (ms), 0
+    // shows the result only once all events are read
+    private long snapshotInterval = 2000;
+    private EventData pendingSnapshot;
+
+    // events file the current one is compared with, if any
+    private File comparisonFile;
+    // incremented per comparison started, results of earlier ones (e.g. on
+    // the previous grid) are dropped
+    private int comparisonRun;
+
+    // runs analyzed as ensemble and the percentile shown instead of the
+    // current events file (-1: none)
+    private EnsembleData ensembleData;
+    private double percentile = -1;
 
     public EvacuationAnalysis(Controller controller) {
         super(controller.getLocale().moduleEvacuationAnalysis(), Constants.ModuleType.ANALYSIS, controller);
@@ -159,17 +194,18 @@ public class EvacuationAnalysis extends AbstractModule {
 
 
     public void runCalculation() {
-        try {
-            this.controller.getParentComponent().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-
-            if (currentEventFile != null) {
-                readEvents();
+        if (currentEventFile == null) {
+            return;
+        }
 
-                this.controller.paintLayers();
+        this.controller.getParentComponent().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 
-            }
-        } finally {
+        // the layers are repainted and the cursor is reset once the events are read
+        try {
+            readEvents();
+        } catch (RuntimeException e) {
             this.controller.getParentComponent().setCursor(Cursor.getDefaultCursor());
+            throw e;
         }
     }
 
@@ -197,40 +233,229 @@ public class EvacuationAnalysis extends AbstractModule {
             keyPanel = ((EAToolBox) getToolBox()).getKeyPanel();
         }
 
-        // run event reader
+        // run event reader, the data is updated while reading and once it
+        // has finished
         runEventReader(currentEventFile);
 
+        ((EAToolBox) getToolBox()).setFirstLoad(false);
+
+    }
+
+    /**
+     * reads the event file in the background. a reader that is still running
+     * is cancelled. the first read of an event file writes a binary cache
+     * file next to it, which is replayed by later reads.
+     */
+    public void runEventReader(File eventFile) {
+        cancelEventReader();
+
+        this.eventHandler = null;
+        EventReaderTask task = new EventReaderTask();
+        this.readerThread = new Thread(task, "readerthread");
+        this.eventHandler = new EventHandler(useCellCount, streaming, eventFile.getName(), this.controller.getScenario(), this.gridSize, this.readerThread);
+
+        if (EventsCache.isValid(eventFile)) {
+            task.reader = new EventsCacheReader(EventsCache.getCacheFile(eventFile), this.eventHandler);
+        } else {
+            EventsManager e = EventsUtils.createEventsManager();
+            e.addHandler(this.eventHandler);
+            task.cacheWriter = new EventsCacheWriter(eventFile);
+            e.addHandler(task.cacheWriter);
+            task.reader = new PipelinedEventsReader(eventFile.toString(), e);
+        }
+
+        if (this.snapshotInterval > 0) {
+            setVisualizationAttributes(this.eventHandler);
+            final EventHandler handler = this.eventHandler;
+            this.eventHandler.setSnapshotListener(new EventHandler.SnapshotListener() {
+                @Override
+                public void snapshotAvailable(EventData snapshot) {
+                    showSnapshot(handler, snapshot);
+                }
+            }, this.snapshotInterval);
+        }
+
+        task.reader.setProgressListener(new EventsFileReader.ProgressListener() {
+            @Override
+            public void progressChanged(final double progress) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        ((EAToolBox) getToolBox()).setReadingProgress(progress);
+                    }
+                });
+            }
+        });
+
+        this.eventReader = task.reader;
+        ((EAToolBox) getToolBox()).setReading(true);
+        this.readerThread.start();
+
+    }
+
+    /**
+     * cancels the event reader, if running. the data of the last completed
+     * run stays visible.
+     */
+    public void cancelEventReader() {
+        if (this.eventReader != null) {
+            this.eventReader.cancel();
+        }
+    }
+
+    /**
+     * shows an intermediate result. called from the reader thread; if the
+     * EDT has not yet shown the previous snapshot, it is replaced, so slow
+     * repaints skip snapshots instead of queueing them.
+     */
+    private void showSnapshot(final EventHandler handler, EventData snapshot) {
+        synchronized (this) {
+            boolean scheduled = this.pendingSnapshot != null;
+            this.pendingSnapshot = snapshot;
+            if (scheduled) {
+                return;
+            }
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                EventData data;
+                synchronized (EvacuationAnalysis.this) {
+                    data = pendingSnapshot;
+                    pendingSnapshot = null;
+                }
+
+                // reader finished or superseded meanwhile, or percentiles shown
+                if ((handler != eventHandler) || (eventReader == null) || (isPercentileShown())) {
+                    return;
+                }
+
+                showEventData(data);
+                controller.paintLayers();
+            }
+        });
+    }
+
+    private void finishEventReader(EventsFileReader reader, RuntimeException failure) {
+        // superseded by another reader
+        if (reader != this.eventReader) {
+            return;
+        }
+
+        this.eventReader = null;
+        ((EAToolBox) getToolBox()).setReading(false);
+        this.controller.getParentComponent().setCursor(Cursor.getDefaultCursor());
+
+        if (reader.isCancelled()) {
+            return;
+        }
+
+        if (failure != null) {
+            JOptionPane.showMessageDialog(this.controller.getParentComponent(), "Could not read event file " + currentEventFile.getName(), "Event file error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        // the grid size may have been changed while reading
+        this.eventHandler.setGridSize(this.gridSize);
+        updateEventData();
+
+        // the comparison follows the baseline file and settings
+        if (this.comparisonFile != null) {
+            runComparison(this.comparisonFile);
+        }
+    }
+
+    /**
+     * applies the current grid size to the events read last. the grid is
+     * derived from the per link data of the event handler, the event file
+     * is not read again.
+     */
+    public void updateGrid() {
+        if (this.eventHandler == null) {
+            runCalculation();
+            return;
+        }
+
+        // the ensemble has been analyzed on the previous grid
+        clearEnsemble();
+
+        // applied once the running reader has finished, the handler is used
+        // by the reader thread
+        if (this.eventReader != null) {
+            return;
+        }
+
+        this.eventHandler.setGridSize(this.gridSize);
+
+        if (this.comparisonFile != null) {
+            runComparison(this.comparisonFile);
+        }
+
+        updateEventData();
+    }
+
+    private void updateEventData() {
+        if (isPercentileShown()) {
+            showEventData(getPercentileData());
+        }
+
         // get data from eventhandler (if not null)
-        if (eventHandler != null) {
-            eventHandler.setColorationMode(this.colorationMode);
-            eventHandler.setTransparency(this.cellTransparency);
-            eventHandler.setK(k);
+        else if (eventHandler != null) {
+            setVisualizationAttributes(eventHandler);
 
             // get data
             EventData data = eventHandler.getData();
 
-            // update data in both the map viewer and the graphs
-
-            this.controller.setEventData(data);
+            showEventData(data);
 
-            graphPanel.updateData(data);
-            keyPanel.updateData(data);
+            if (this.warmUpModes) {
+                warmUp(data);
+            }
         }
 
-        ((EAToolBox) getToolBox()).setFirstLoad(false);
+        this.controller.paintLayers();
+    }
 
+    private void setVisualizationAttributes(EventHandler handler) {
+        handler.setColorationMode(this.colorationMode);
+        handler.setClassificationMode(this.classificationMode);
+        handler.setTransparency(this.cellTransparency);
+        handler.setK(k);
     }
 
-    public void runEventReader(File eventFile) {
+    /**
+     * updates the map viewer and the graphs
+     */
+    private void showEventData(EventData data) {
+        this.controller.setEventData(data);
 
-        this.eventHandler = null;
-        EventsManager e = EventsUtils.createEventsManager();
-        EventsReaderXMLv1 reader = new EventsReaderXMLv1(e);
-        this.readerThread = new Thread(new EventReaderThread(reader, eventFile.toString()), "readerthread");
-        this.eventHandler = new EventHandler(useCellCount, eventFile.getName(), this.controller.getScenario(), this.gridSize, this.readerThread);
-        e.addHandler(this.eventHandler);
-        this.readerThread.run();
+        graphPanel.updateData(data);
+        keyPanel.updateData(data);
+
+        this.gridRenderer.setColorationMode(this.colorationMode);
+        this.gridRenderer.setTransparency(this.cellTransparency);
+        ((EAToolBox) getToolBox()).setTimeBins(data.getTimeBinCount(), data.getTimeBinSize());
+    }
+
+    /**
+     * computes the visual data of all modes in the background, starting with
+     * the shown one. switching the mode then does not wait for it.
+     */
+    private void warmUp(final EventData data) {
+        final Mode shownMode = this.mode != null ? this.mode : Mode.EVACUATION;
 
+        Thread warmUpThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                data.prepare(shownMode);
+                for (Mode mode : Mode.values()) {
+                    data.prepare(mode);
+                }
+            }
+        }, "warmupthread");
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
     }
 
     public File getEventPathFromName(String selectedItem) {
@@ -263,47 +488,289 @@ public class EvacuationAnalysis extends AbstractModule {
     }
 
     public ArrayList<File> getAvailableEventFiles(String dirString) {
-        File dir = new File(dirString);
-        Stack<File> directoriesToScan = new Stack<File>();
-        ArrayList<File> files = new ArrayList<File>();
+        return BatchAnalysis.getEventFiles(dirString);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+
+        this.gridRenderer.setMode(mode);
+        if (keyPanel != null) {
+            keyPanel.setMode(mode);
+        }
+
+    }
+
+    /**
+     * analyzes all available event files in the background, using the
+     * current grid and streaming settings. the summary is shown once all
+     * files are read.
+     */
+    public void runBatchAnalysis() {
+        if ((eventFiles == null) || (eventFiles.isEmpty())) {
+            return;
+        }
+
+        final BatchAnalysis batchAnalysis = new BatchAnalysis(this.controller.getScenario(), Math.max(1, Runtime.getRuntime().availableProcessors() / 3));
+        batchAnalysis.setGridSize(useCellCount, gridSize);
+        batchAnalysis.setStreaming(streaming);
+        batchAnalysis.setProgressListener(new EventsFileReader.ProgressListener() {
+            @Override
+            public void progressChanged(final double progress) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        ((EAToolBox) getToolBox()).setBatchAnalysisProgress(progress);
+                    }
+                });
+            }
+        });
+        final List<File> files = new ArrayList<File>(eventFiles);
 
-        directoriesToScan.add(dir);
+        ((EAToolBox) getToolBox()).setBatchAnalysisRunning(true);
 
-        while (!directoriesToScan.isEmpty()) {
-            File currentDir = directoriesToScan.pop();
-            File[] filesToCheck = currentDir.listFiles(new EventFileFilter());
+        Thread batchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final List<IterationSummary> summaries = batchAnalysis.run(files);
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        ((EAToolBox) getToolBox()).setBatchAnalysisRunning(false);
+                        new BatchAnalysisDialog(controller.getParentComponent(), summaries).setVisible(true);
+                    }
+                });
+            }
+        }, "batchanalysis");
+        batchThread.setDaemon(true);
+        batchThread.start();
+    }
 
-            if (filesToCheck.length > 0) {
+    /**
+     * analyzes all available event files as runs of an ensemble (e.g.
+     * random seeds) in the background, using the current grid. the
+     * percentiles can be shown once all files are read, the link ones are
+     * written to the iterations output directory.
+     */
+    public void runEnsembleAnalysis() {
+        if ((eventFiles == null) || (eventFiles.isEmpty())) {
+            return;
+        }
 
-                for (File currentFile : filesToCheck) {
-                    if (currentFile.isDirectory()) {
-                        directoriesToScan.push(currentFile);
+        final double ensembleGridSize = this.gridSize;
+        final EnsembleAnalysis ensembleAnalysis = new EnsembleAnalysis(this.controller.getScenario(), Math.max(1, Runtime.getRuntime().availableProcessors() / 3));
+        ensembleAnalysis.setGridSize(useCellCount, ensembleGridSize);
+        ensembleAnalysis.setProgressListener(new EventsFileReader.ProgressListener() {
+            @Override
+            public void progressChanged(final double progress) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        ((EAToolBox) getToolBox()).setEnsembleAnalysisProgress(progress);
                     }
-                    else {
-                        if (!files.contains(currentFile)) {
-                            files.add(currentFile);
-                        }
+                });
+            }
+        });
+        final List<File> files = new ArrayList<File>(eventFiles);
+        final Collection<? extends Link> linkPercentileLinks = this.controller.getScenario().getNetwork().getLinks().values();
+        final File linkPercentileFile = new File(this.controller.getIterationsOutputDirectory(), EnsembleAnalysis.LINK_PERCENTILES_FILE);
+
+        ((EAToolBox) getToolBox()).setEnsembleAnalysisRunning(true);
+
+        Thread ensembleThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final EnsembleData ensemble = ensembleAnalysis.run(files);
+
+                RuntimeException failure = null;
+                if (ensemble.getRuns() > 0) {
+                    try {
+                        EnsembleAnalysis.writeLinkPercentiles(ensemble, linkPercentileLinks, linkPercentileFile.toString());
+                    } catch (RuntimeException e) {
+                        failure = e;
                     }
                 }
+
+                final RuntimeException writeFailure = failure;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        finishEnsembleAnalysis(ensemble, ensembleGridSize, linkPercentileFile, writeFailure);
+                    }
+                });
             }
+        }, "ensembleanalysis");
+        ensembleThread.setDaemon(true);
+        ensembleThread.start();
+    }
 
+    private void finishEnsembleAnalysis(EnsembleData ensemble, double ensembleGridSize, File linkPercentileFile, RuntimeException writeFailure) {
+        ((EAToolBox) getToolBox()).setEnsembleAnalysisRunning(false);
+        if (writeFailure != null) {
+            JOptionPane.showMessageDialog(this.controller.getParentComponent(), "Could not write " + linkPercentileFile, "Ensemble error", JOptionPane.ERROR_MESSAGE);
         }
 
-        return files;
+        // the grid has changed meanwhile
+        if ((ensembleGridSize != this.gridSize) || (ensemble.getRuns() == 0)) {
+            return;
+        }
+
+        this.ensembleData = ensemble;
+        ((EAToolBox) getToolBox()).setEnsembleAvailable(true);
+
+        if (isPercentileShown()) {
+            updateEventData();
+        }
     }
 
-    public Mode getMode() {
-        return mode;
+    /**
+     * @param percentile
+     *            quantile over the runs of the ensemble shown instead of the
+     *            current events file, -1 to show the events file again
+     */
+    public void showPercentile(double percentile) {
+        this.percentile = percentile;
+
+        // differences are drawn on top of the current events file only
+        if ((isPercentileShown()) && (this.comparisonFile != null)) {
+            clearComparison();
+            ((EAToolBox) getToolBox()).resetComparison();
+        }
+
+        if ((isPercentileShown()) || ((this.eventHandler != null) && (this.eventReader == null))) {
+            updateEventData();
+        }
     }
 
-    public void setMode(Mode mode) {
-        this.mode = mode;
+    private boolean isPercentileShown() {
+        return (this.ensembleData != null) && (this.percentile > 0);
+    }
 
-        this.gridRenderer.setMode(mode);
+    /**
+     * @return the cells of the shown percentile, colored with the current
+     *         settings on request
+     */
+    private EventData getPercentileData() {
+        EventData data = EnsembleAnalysis.getPercentileData(this.ensembleData, this.percentile);
+
+        final ColorationCache colorationCache = new ColorationCache(this.eventHandler != null ? this.eventHandler.getLinkList() : new ArrayList<Link>());
+        final int k = this.k;
+        final ClassificationMode classificationMode = this.classificationMode;
+        final ColorationMode colorationMode = this.colorationMode;
+        final float cellTransparency = this.cellTransparency;
+        data.setVisualDataProvider(new EventData.VisualDataProvider() {
+            @Override
+            public boolean computeVisualData(EventData eventData, Mode mode) {
+                colorationCache.apply(eventData, mode, k, classificationMode, colorationMode, cellTransparency);
+                return true;
+            }
+        });
+
+        return data;
+    }
+
+    /**
+     * drops the ensemble, e.g. once the grid has changed. the events file is
+     * shown again with the next update.
+     */
+    private void clearEnsemble() {
+        this.ensembleData = null;
+        this.percentile = -1;
+        ((EAToolBox) getToolBox()).resetPercentile();
+        ((EAToolBox) getToolBox()).setEnsembleAvailable(false);
+    }
+
+    /**
+     * compares the current events file (baseline) with the given one. the
+     * baseline is taken from the events read last, the variant file is read
+     * in the background and the differences are shown once available. while
+     * the baseline is still being read, the comparison follows once it has
+     * finished.
+     */
+    public void runComparison(final File variantFile) {
+        if (this.currentEventFile == null) {
+            return;
+        }
+
+        this.comparisonFile = variantFile;
+        if ((this.eventHandler == null) || (this.eventReader != null)) {
+            return;
+        }
+
+        final EventHandler baseline = this.eventHandler;
+        final int run = ++this.comparisonRun;
+        final RunComparison runComparison = new RunComparison(this.controller.getScenario());
+        runComparison.setGridSize(useCellCount, gridSize);
+        runComparison.setStreaming(streaming);
+
+        ((EAToolBox) getToolBox()).setComparisonRunning(true);
+
+        Thread comparisonThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ComparisonData comparison = null;
+                RuntimeException failure = null;
+                try {
+                    comparison = runComparison.run(baseline, variantFile);
+                    new DifferenceVisualizer(comparison, k, cellTransparency);
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+
+                final ComparisonData comparisonData = comparison;
+                final RuntimeException comparisonFailure = failure;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        finishComparison(run, baseline, variantFile, comparisonData, comparisonFailure);
+                    }
+                });
+            }
+        }, "comparison");
+        comparisonThread.setDaemon(true);
+        comparisonThread.start();
+    }
+
+    private void finishComparison(int run, EventHandler baseline, File variantFile, ComparisonData comparison, RuntimeException failure) {
+        // superseded by another comparison, which is still running
+        if (run != this.comparisonRun) {
+            return;
+        }
+
+        ((EAToolBox) getToolBox()).setComparisonRunning(false);
+
+        // cleared or superseded meanwhile
+        if ((variantFile != this.comparisonFile) || (baseline != this.eventHandler)) {
+            return;
+        }
+
+        if (failure != null) {
+            clearComparison();
+            ((EAToolBox) getToolBox()).resetComparison();
+            JOptionPane.showMessageDialog(this.controller.getParentComponent(), "Could not compare with " + variantFile.getName(), "Comparison error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        this.gridRenderer.setComparisonData(comparison);
         if (keyPanel != null) {
-            keyPanel.setMode(mode);
+            keyPanel.setComparisonData(comparison);
         }
+    }
 
+    /**
+     * shows the current events file again, without differences
+     */
+    public void clearComparison() {
+        this.comparisonFile = null;
+        this.gridRenderer.setComparisonData(null);
+        if (keyPanel != null) {
+            keyPanel.setComparisonData(null);
+        }
     }
 
     public void setGraphPanel(AbstractDataPanel graphPanel) {
@@ -321,15 +788,89 @@ public class EvacuationAnalysis extends AbstractModule {
 
     }
 
-    class EventFileFilter implements java.io.FileFilter {
+    public void setClassificationMode(ClassificationMode classificationMode) {
+        this.classificationMode = classificationMode;
+        updateColoration();
+    }
+
+    /**
+     * recolors the events read last with the current classification, colors
+     * and transparency. the event file is not read again, unchanged classes
+     * are taken from the coloration cache of the event handler.
+     */
+    public void updateColoration() {
+        if (((this.eventHandler != null) && (this.eventReader == null)) || (isPercentileShown())) {
+            updateEventData();
+        }
+
+        ComparisonData comparison = this.gridRenderer.getComparisonData();
+        if (comparison != null) {
+            new DifferenceVisualizer(comparison, k, cellTransparency);
+            keyPanel.setComparisonData(comparison);
+            this.controller.paintLayers();
+        }
+    }
+
+    /**
+     * @param warmUpModes
+     *            compute the visual data of all modes in the background once
+     *            events are read, otherwise only on request
+     */
+    public void setWarmUpModes(boolean warmUpModes) {
+        this.warmUpModes = warmUpModes;
+    }
+
+    /**
+     * @param snapshotInterval
+     *            minimum time between two intermediate results while events
+     *            are read (ms), 0 to disable them
+     */
+    public void setSnapshotInterval(long snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * runs the reader, finishes the cache file and hands over to the EDT
+     */
+    private class EventReaderTask implements Runnable {
+
+        private EventsFileReader reader;
+        private EventsCacheWriter cacheWriter;
 
         @Override
-        public boolean accept(File f) {
-            if (f.isDirectory()) {
-                return true;
+        public void run() {
+            RuntimeException failure = null;
+            try {
+                reader.run();
+            } catch (RuntimeException e) {
+                failure = e;
             }
-            return f.getName().endsWith(".events.xml.gz");
+
+            if (cacheWriter != null) {
+                if ((failure == null) && (!reader.isCancelled())) {
+                    cacheWriter.finish();
+                } else {
+                    cacheWriter.discard();
+                }
+            }
+
+            final RuntimeException readerFailure = failure;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    finishEventReader(reader, readerFailure);
+                }
+            });
         }
+
     }
 
 }
@@ -0,0 +1,272 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * BatchAnalysis.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.control;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.utils.charts.XYLineChart;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.evacuationgui.analysis.data.IterationSummary;
+
+/**
+ * analyzes the events files of several iterations at once. every file is
+ * read by its own {@link EventHandler} on a bounded thread pool, the
+ * results are summarized per iteration. does not depend on the gui, so it
+ * can be run headless after a simulation run.
+ *
+ */
+public class BatchAnalysis {
+
+	private static final Logger log = Logger.getLogger(BatchAnalysis.class);
+
+	public static final String EVENTS_FILE_SUFFIX = ".events.xml.gz";
+
+	private final Scenario scenario;
+	private final int threads;
+
+	private boolean useCellCount = true;
+	private double gridSize = 10;
+	private boolean streaming = false;
+
+	private EventsFileReader.ProgressListener progressListener;
+
+	/**
+	 * @param threads
+	 *            maximum number of events files read in parallel. each
+	 *            reader uses three threads itself.
+	 */
+	public BatchAnalysis(Scenario scenario, int threads) {
+		this.scenario = scenario;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * @see EventHandler#setGridSize(double)
+	 */
+	public void setGridSize(boolean useCellCount, double gridSize) {
+		this.useCellCount = useCellCount;
+		this.gridSize = gridSize;
+	}
+
+	/**
+	 * @see EventHandler#isStreaming()
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * progress is the share of events files analyzed
+	 */
+	public void setProgressListener(EventsFileReader.ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * @return summaries of all files that could be read, ordered by
+	 *         iteration
+	 */
+	public List<IterationSummary> run(List<File> eventFiles) {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, eventFiles.size())));
+		List<Future<IterationSummary>> futures = new ArrayList<Future<IterationSummary>>();
+		List<IterationSummary> summaries = new ArrayList<IterationSummary>();
+
+		try {
+			for (final File eventFile : eventFiles) {
+				futures.add(pool.submit(new Callable<IterationSummary>() {
+					@Override
+					public IterationSummary call() {
+						return analyze(eventFile);
+					}
+				}));
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					summaries.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					log.error("could not analyze events file " + eventFiles.get(i), e.getCause());
+				}
+
+				if (progressListener != null)
+					progressListener.progressChanged((i + 1d) / futures.size());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			pool.shutdownNow();
+		}
+
+		Collections.sort(summaries, new Comparator<IterationSummary>() {
+			@Override
+			public int compare(IterationSummary s1, IterationSummary s2) {
+				return Integer.compare(s1.getIteration(), s2.getIteration());
+			}
+		});
+
+		return summaries;
+	}
+
+	private IterationSummary analyze(File eventFile) {
+		log.info("analyzing " + eventFile);
+
+		EventHandler eventHandler = new EventHandler(useCellCount, streaming, eventFile.getName(), scenario, gridSize, null);
+		readEvents(eventFile, eventHandler);
+
+		return eventHandler.getSummary(getIteration(eventFile));
+	}
+
+	/**
+	 * reads the events file in the calling thread. the binary cache is
+	 * replayed if available, otherwise it is written while reading.
+	 */
+	public static void readEvents(File eventFile, EventHandler eventHandler) {
+		EventsCacheWriter cacheWriter = null;
+		EventsFileReader reader;
+		if (EventsCache.isValid(eventFile))
+			reader = new EventsCacheReader(EventsCache.getCacheFile(eventFile), eventHandler);
+		else {
+			EventsManager events = EventsUtils.createEventsManager();
+			events.addHandler(eventHandler);
+			cacheWriter = new EventsCacheWriter(eventFile);
+			events.addHandler(cacheWriter);
+			reader = new PipelinedEventsReader(eventFile.toString(), events);
+		}
+
+		try {
+			reader.run();
+		} catch (RuntimeException e) {
+			if (cacheWriter != null)
+				cacheWriter.discard();
+			throw e;
+		}
+		if (cacheWriter != null)
+			cacheWriter.finish();
+	}
+
+	/**
+	 * @return the iteration number of a MATSim events file
+	 *         ([runId.]iteration.events.xml.gz), or -1
+	 */
+	public static int getIteration(File eventFile) {
+		String name = eventFile.getName();
+		if (!name.endsWith(EVENTS_FILE_SUFFIX))
+			return -1;
+
+		name = name.substring(0, name.length() - EVENTS_FILE_SUFFIX.length());
+		try {
+			return Integer.parseInt(name.substring(name.lastIndexOf('.') + 1));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return all events files within the given directory and its sub
+	 *         directories
+	 */
+	public static ArrayList<File> getEventFiles(String dirString) {
+		File dir = new File(dirString);
+		Stack<File> directoriesToScan = new Stack<File>();
+		ArrayList<File> files = new ArrayList<File>();
+
+		FileFilter filter = new FileFilter() {
+			@Override
+			public boolean accept(File f) {
+				return f.isDirectory() || f.getName().endsWith(EVENTS_FILE_SUFFIX);
+			}
+		};
+
+		directoriesToScan.add(dir);
+
+		while (!directoriesToScan.isEmpty()) {
+			File currentDir = directoriesToScan.pop();
+			File[] filesToCheck = currentDir.listFiles(filter);
+			if (filesToCheck == null)
+				continue;
+
+			for (File currentFile : filesToCheck) {
+				if (currentFile.isDirectory())
+					directoriesToScan.push(currentFile);
+				else if (!files.contains(currentFile))
+					files.add(currentFile);
+			}
+		}
+
+		return files;
+	}
+
+	/**
+	 * writes the summaries as tab separated table
+	 */
+	public static void writeSummaries(List<IterationSummary> summaries, String filename) {
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(filename)) {
+			writer.write("ITERATION\tEVENTS_FILE\tARRIVALS\tEVACUATION_TIME\tMAX_CLEARING_TIME\tMAX_UTILIZATION");
+			writer.newLine();
+			for (IterationSummary summary : summaries) {
+				writer.write(summary.getIteration() + "\t" + summary.getEventFile() + "\t" + summary.getArrivals() + "\t" + summary.getEvacuationTime() + "\t"
+						+ summary.getMaxClearingTime() + "\t" + summary.getMaxUtilization());
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("could not write " + filename, e);
+		}
+	}
+
+	/**
+	 * @return chart of evacuation and clearing time over the iterations
+	 */
+	public static XYLineChart getConvergenceChart(List<IterationSummary> summaries) {
+		double[] iterations = new double[summaries.size()];
+		double[] evacuationTimes = new double[summaries.size()];
+		double[] clearingTimes = new double[summaries.size()];
+
+		for (int i = 0; i < summaries.size(); i++) {
+			IterationSummary summary = summaries.get(i);
+			iterations[i] = summary.getIteration();
+			evacuationTimes[i] = summary.getEvacuationTime();
+			clearingTimes[i] = summary.getMaxClearingTime();
+		}
+
+		XYLineChart chart = new XYLineChart("convergence", "iteration", "time (s)");
+		chart.addSeries("evacuation time", iterations, evacuationTimes);
+		chart.addSeries("max clearing time", iterations, clearingTimes);
+		return chart;
+	}
+
+}
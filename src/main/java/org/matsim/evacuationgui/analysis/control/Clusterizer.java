@@ -20,51 +20,279 @@
 
 package org.matsim.evacuationgui.analysis.control;
 
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.LinkedList;
+import java.util.Arrays;
 
-import org.matsim.api.core.v01.Id;
-import org.matsim.core.utils.collections.Tuple;
+import org.matsim.evacuationgui.analysis.data.ClassificationMode;
 
 /**
- * this clusterizer is simply finding average values, while ignoring duplicate
- * values.
- * 
+ * finds the class breaks of a set of values. class i starts at break i - 1,
+ * values below the first break are in class 0. works on primitive arrays
+ * only: quantile breaks are selected in linear time, natural breaks are
+ * computed on at most 512 groups of the sorted values.
+ *
  * @author wdoering
- * 
+ *
  */
 public class Clusterizer {
 
-	public <T> LinkedList<Tuple<Id<T>, Double>> getClusters(LinkedList<Tuple<Id<T>, Double>> data, int n) {
-		LinkedList<Tuple<Id<T>, Double>> clusters = new LinkedList<>();
+	private static final int MAX_NATURAL_BREAKS_GROUPS = 512;
 
-		Collections.sort(data, new Comparator<Tuple<Id<T>, Double>>() {
+	private final ClassificationMode mode;
 
-			@Override
-			public int compare(Tuple<Id<T>, Double> o1, Tuple<Id<T>, Double> o2) {
-				if (o1.getSecond() > o2.getSecond())
-					return 1;
-				else if (o1.getSecond() < o2.getSecond())
-					return -1;
-				return 0;
-			}
-		});
+	public Clusterizer() {
+		this(ClassificationMode.QUANTILE);
+	}
+
+	public Clusterizer(ClassificationMode mode) {
+		this.mode = mode;
+	}
+
+	public ClassificationMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return n ascending breaks, the first one is the minimum. missing
+	 *         breaks (fewer values than classes) are set to the maximum.
+	 *         NaN values are ignored.
+	 */
+	public double[] getBreaks(double[] values, int n) {
+		double[] a = new double[values.length];
+		int size = 0;
+		for (double value : values) {
+			if (!Double.isNaN(value))
+				a[size++] = value;
+		}
+
+		double[] breaks = new double[n];
+		if ((size == 0) || (n == 0))
+			return breaks;
+
+		if (mode.equals(ClassificationMode.EQUAL_INTERVAL))
+			getEqualIntervalBreaks(a, size, breaks);
+		else if (mode.equals(ClassificationMode.NATURAL_BREAKS))
+			getNaturalBreaks(a, size, breaks);
+		else
+			getQuantileBreaks(a, size, breaks);
+
+		return breaks;
+	}
+
+	/**
+	 * every (size / (n - 1))th value, in ascending order
+	 */
+	private static void getQuantileBreaks(double[] a, int size, double[] breaks) {
+		int n = breaks.length;
+		int m = Math.max(1, size / Math.max(1, n - 1));
+
+		double max = a[0];
+		for (int j = 1; j < size; j++)
+			max = Math.max(max, a[j]);
 
-		int m = (data.size() / (n-1)) > 0 ? (data.size() / (n-1)) : 1;
+		// each selection only partitions the values above the previous one
 		int i = 0;
+		int from = 0;
+		for (; (i < n) && ((long) i * m < size); i++) {
+			int position = i * m;
+			select(a, from, size, position);
+			breaks[i] = a[position];
+			from = position;
+		}
+
+		for (; i < n; i++)
+			breaks[i] = max;
+	}
+
+	private static void getEqualIntervalBreaks(double[] a, int size, double[] breaks) {
+		double min = a[0];
+		double max = a[0];
+		for (int j = 1; j < size; j++) {
+			min = Math.min(min, a[j]);
+			max = Math.max(max, a[j]);
+		}
+
+		int n = breaks.length;
+		for (int i = 0; i < n; i++)
+			breaks[i] = min + i * (max - min) / n;
+	}
 
-		for (Tuple<Id<T>, Double> element : data) {
-			if ((i++ % m == 0) && clusters.size() < n) {
-				clusters.add(element);
+	/**
+	 * jenks natural breaks (minimal squared deviations within the classes).
+	 * the sorted values are grouped into equally sized groups first, breaks
+	 * are set at group boundaries.
+	 */
+	private static void getNaturalBreaks(double[] a, int size, double[] breaks) {
+		Arrays.sort(a, 0, size);
+
+		int groups = Math.min(size, MAX_NATURAL_BREAKS_GROUPS);
+		int[] groupStarts = new int[groups + 1];
+		double[] weights = new double[groups + 1];
+		double[] sums = new double[groups + 1];
+		double[] squareSums = new double[groups + 1];
+
+		// prefix sums over the groups
+		for (int g = 0; g < groups; g++) {
+			groupStarts[g] = (int) ((long) g * size / groups);
+			groupStarts[g + 1] = (int) ((long) (g + 1) * size / groups);
+
+			double sum = 0;
+			double squareSum = 0;
+			for (int j = groupStarts[g]; j < groupStarts[g + 1]; j++) {
+				sum += a[j];
+				squareSum += a[j] * a[j];
 			}
+			weights[g + 1] = weights[g] + groupStarts[g + 1] - groupStarts[g];
+			sums[g + 1] = sums[g] + sum;
+			squareSums[g + 1] = squareSums[g] + squareSum;
+		}
+
+		int classes = Math.min(breaks.length, groups);
+		double[][] costs = new double[classes][groups];
+		int[][] classStarts = new int[classes][groups];
+
+		for (int j = 0; j < groups; j++)
+			costs[0][j] = getSquaredDeviation(weights, sums, squareSums, 0, j);
 
+		for (int c = 1; c < classes; c++) {
+			for (int j = 0; j < groups; j++) {
+				costs[c][j] = Double.POSITIVE_INFINITY;
+				for (int i = c; i <= j; i++) {
+					double cost = costs[c - 1][i - 1] + getSquaredDeviation(weights, sums, squareSums, i, j);
+					if (cost < costs[c][j]) {
+						costs[c][j] = cost;
+						classStarts[c][j] = i;
+					}
+				}
+			}
+		}
+
+		int j = groups - 1;
+		for (int c = classes - 1; c >= 0; c--) {
+			int start = classStarts[c][j];
+			breaks[c] = a[groupStarts[start]];
+			j = start - 1;
+		}
+
+		for (int c = classes; c < breaks.length; c++)
+			breaks[c] = a[size - 1];
+	}
+
+	/**
+	 * @return squared deviation of the values of the groups from to to
+	 *         (inclusive)
+	 */
+	private static double getSquaredDeviation(double[] weights, double[] sums, double[] squareSums, int from, int to) {
+		double weight = weights[to + 1] - weights[from];
+		double sum = sums[to + 1] - sums[from];
+		return Math.max(0d, squareSums[to + 1] - squareSums[from] - sum * sum / weight);
+	}
+
+	/**
+	 * @return the class of each value
+	 * @see #getClassOf(double[], double)
+	 */
+	public static int[] getClasses(double[] values, double[] breaks) {
+		int[] classes = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+			classes[i] = getClassOf(breaks, values[i]);
+		return classes;
+	}
+
+	/**
+	 * @return number of breaks lower than or equal to the value (0 to
+	 *         breaks.length), -1 for NaN
+	 */
+	public static int getClassOf(double[] breaks, double value) {
+		if (Double.isNaN(value))
+			return -1;
+
+		int low = 0;
+		int high = breaks.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (breaks[mid] <= value)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * @return the values without duplicates, in the order of their first
+	 *         occurrence
+	 */
+	public static double[] getDistinctValues(double[] values) {
+		int capacity = Integer.highestOneBit(Math.max(2, values.length) * 2 - 1) << 1;
+		int mask = capacity - 1;
+		long[] table = new long[capacity];
+		boolean[] used = new boolean[capacity];
+
+		double[] distinct = new double[values.length];
+		int n = 0;
+		for (double value : values) {
+			long bits = Double.doubleToLongBits(value);
+			int slot = (int) ((bits * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+			while ((used[slot]) && (table[slot] != bits))
+				slot = (slot + 1) & mask;
+
+			if (!used[slot]) {
+				used[slot] = true;
+				table[slot] = bits;
+				distinct[n++] = value;
+			}
 		}
 
-		while (clusters.size() < n)
-			clusters.add(data.get(data.size() - 1));
+		return Arrays.copyOf(distinct, n);
+	}
+
+	/**
+	 * partially sorts a[from, to) so that a[k] is the value it would be after
+	 * sorting, with lower or equal values before and higher or equal ones
+	 * after it
+	 */
+	private static void select(double[] a, int from, int to, int k) {
+		int low = from;
+		int high = to - 1;
+
+		while (high > low) {
+			// median of three as pivot
+			int mid = (low + high) >>> 1;
+			if (a[mid] < a[low])
+				swap(a, low, mid);
+			if (a[high] < a[low])
+				swap(a, low, high);
+			if (a[high] < a[mid])
+				swap(a, mid, high);
+			double pivot = a[mid];
+
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (a[i] < pivot)
+					i++;
+				while (a[j] > pivot)
+					j--;
+				if (i <= j) {
+					swap(a, i, j);
+					i++;
+					j--;
+				}
+			}
+
+			if (k <= j)
+				high = j;
+			else if (k >= i)
+				low = i;
+			else
+				return;
+		}
+	}
 
-		return clusters;
+	private static void swap(double[] a, int i, int j) {
+		double tmp = a[i];
+		a[i] = a[j];
+		a[j] = tmp;
 	}
 
 }
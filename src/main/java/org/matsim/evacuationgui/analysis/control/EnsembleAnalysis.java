@@ -0,0 +1,283 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EnsembleAnalysis.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.control;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.collections.QuadTree;
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.evacuationgui.analysis.data.ArrivalCurve;
+import org.matsim.evacuationgui.analysis.data.Cell;
+import org.matsim.evacuationgui.analysis.data.EnsembleData;
+import org.matsim.evacuationgui.analysis.data.EventData;
+import org.matsim.evacuationgui.model.Constants.Mode;
+
+/**
+ * analyzes an ensemble of runs of the same scenario (e.g. random seeds).
+ * every events file is read by its own {@link EventHandler} on a bounded
+ * thread pool; once read, its cell and link values are added to an
+ * {@link EnsembleData} and the handler is dropped, so at most one handler
+ * per thread is kept in memory. the events are streamed.
+ *
+ */
+public class EnsembleAnalysis {
+
+	private static final Logger log = Logger.getLogger(EnsembleAnalysis.class);
+
+	// resolution of the arrival curves (s)
+	public static final double ARRIVAL_TIME_BIN_SIZE = 60;
+
+	public static final double[] PERCENTILES = { 0.5, 0.9, 0.99 };
+
+	public static final String LINK_PERCENTILES_FILE = "evacuation_analysis_link_percentiles.txt";
+
+	private final Scenario scenario;
+	private final int threads;
+
+	private boolean useCellCount = true;
+	private double gridSize = 10;
+
+	private EventsFileReader.ProgressListener progressListener;
+
+	/**
+	 * @param threads
+	 *            maximum number of events files read in parallel. each
+	 *            reader uses three threads itself.
+	 */
+	public EnsembleAnalysis(Scenario scenario, int threads) {
+		this.scenario = scenario;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * @see EventHandler#setGridSize(double)
+	 */
+	public void setGridSize(boolean useCellCount, double gridSize) {
+		this.useCellCount = useCellCount;
+		this.gridSize = gridSize;
+	}
+
+	/**
+	 * progress is the share of events files analyzed
+	 */
+	public void setProgressListener(EventsFileReader.ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * @return the ensemble of all files that could be read
+	 */
+	public EnsembleData run(List<File> eventFiles) {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, eventFiles.size())));
+		// results are merged as soon as their run finishes, whatever the order
+		CompletionService<EnsembleData> completionService = new ExecutorCompletionService<EnsembleData>(pool);
+		Map<Future<EnsembleData>, File> files = new HashMap<Future<EnsembleData>, File>();
+		EnsembleData ensemble = new EnsembleData(ARRIVAL_TIME_BIN_SIZE);
+
+		try {
+			for (final File eventFile : eventFiles) {
+				files.put(completionService.submit(new Callable<EnsembleData>() {
+					@Override
+					public EnsembleData call() {
+						return analyze(eventFile);
+					}
+				}), eventFile);
+			}
+
+			for (int i = 0; i < eventFiles.size(); i++) {
+				Future<EnsembleData> future = completionService.take();
+				// the run is merged now
+				File eventFile = files.remove(future);
+				try {
+					ensemble.merge(future.get());
+				} catch (ExecutionException e) {
+					log.error("could not analyze events file " + eventFile, e.getCause());
+				} catch (IllegalArgumentException e) {
+					log.error("could not add events file " + eventFile, e);
+				}
+
+				if (progressListener != null)
+					progressListener.progressChanged((i + 1d) / eventFiles.size());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			pool.shutdownNow();
+		}
+
+		return ensemble;
+	}
+
+	private EnsembleData analyze(File eventFile) {
+		log.info("analyzing " + eventFile);
+
+		EventHandler eventHandler = new EventHandler(useCellCount, true, eventFile.getName(), scenario, gridSize, null);
+		BatchAnalysis.readEvents(eventFile, eventHandler);
+
+		EnsembleData run = new EnsembleData(ARRIVAL_TIME_BIN_SIZE);
+		addRun(run, eventHandler);
+		return run;
+	}
+
+	/**
+	 * adds the events read by the handler as one run. the handler has to use
+	 * the grid of the runs added before.
+	 */
+	public static void addRun(EnsembleData ensemble, EventHandler eventHandler) {
+		EventData<?> data = eventHandler.getData();
+		Cell[] cells = eventHandler.getCells();
+
+		double[] cellXs = new double[cells.length];
+		double[] cellYs = new double[cells.length];
+		for (int i = 0; i < cells.length; i++) {
+			cellXs[i] = cells[i].getCoord().getX();
+			cellYs[i] = cells[i].getCoord().getY();
+		}
+		ensemble.setGrid(cellXs, cellYs, data.getCellSize(), data.getBoundingBox(), data.getSampleSize());
+
+		for (int i = 0; i < cells.length; i++) {
+			Cell cell = cells[i];
+			double medianArrivalTime = cell.getArrivalTimeCount() > 0 ? cell.getMedianArrivalTime() : Double.NaN;
+			ensemble.addCell(i, cell.getCount(), cell.getTimeSum(), medianArrivalTime, cell.getClearingTime());
+		}
+
+		for (Link link : eventHandler.getLinkList()) {
+			if (data.isExcludedLink(link.getId()))
+				continue;
+			int linkIndex = link.getId().index();
+			ensemble.addLink(linkIndex, eventHandler.getLinkMedianArrivalTime(linkIndex), eventHandler.getLinkClearingTime(linkIndex));
+		}
+
+		ensemble.addArrivalTimes(data.getArrivalTimes());
+		ensemble.addRun();
+	}
+
+	/**
+	 * @param q
+	 *            quantile over the runs, between 0 and 1
+	 * @return cells with the given quantile of the evacuation and clearing
+	 *         times of the runs, and the mean counts. the arrival curves of
+	 *         all {@link #PERCENTILES} are set. link utilization is not
+	 *         part of the data, the visual data provider has to be set.
+	 */
+	public static EventData<?> getPercentileData(EnsembleData ensemble, double q) {
+		QuadTree.Rect boundingBox = ensemble.getBoundingBox();
+		QuadTree<Cell> cellTree = new QuadTree<Cell>(boundingBox.minX, boundingBox.minY, boundingBox.maxX, boundingBox.maxY);
+		double maxClearingTime = 0;
+		double timeSum = 0;
+		double maxCellTimeSum = 0;
+
+		for (int i = 0; i < ensemble.getCellCount(); i++) {
+			Cell cell = new Cell();
+			cell.setCoord(new Coord(ensemble.getCellX(i), ensemble.getCellY(i)));
+			cell.setCount((int) Math.ceil(ensemble.getMeanCount(i)));
+			cell.setTimeSum(ensemble.getMeanTimeSum(i));
+
+			double evacuationTime = ensemble.getCellQuantile(Mode.EVACUATION, i, q);
+			if (!Double.isNaN(evacuationTime))
+				cell.addArrivalTime(evacuationTime);
+
+			double clearingTime = ensemble.getCellQuantile(Mode.CLEARING, i, q);
+			if (!Double.isNaN(clearingTime)) {
+				cell.updateClearanceTime(clearingTime);
+				maxClearingTime = Math.max(maxClearingTime, clearingTime);
+			}
+
+			timeSum += cell.getTimeSum();
+			maxCellTimeSum = Math.max(maxCellTimeSum, cell.getTimeSum());
+			cellTree.put(ensemble.getCellX(i), ensemble.getCellY(i), cell);
+		}
+
+		EventData<?> data = new EventData<Object>(getPercentileName(q) + " of " + ensemble.getRuns() + " runs");
+		data.setCellTree(cellTree);
+		data.setCellSize(ensemble.getCellSize());
+		data.setBoundingBox(boundingBox);
+		data.setSampleSize(ensemble.getSampleSize());
+		data.setTimeSum(timeSum);
+		data.setMaxCellTimeSum(maxCellTimeSum);
+		data.setMaxClearingTime(maxClearingTime);
+		data.setArrivalTimes(new ArrayList<Tuple<Double, Integer>>());
+
+		LinkedHashMap<String, ArrivalCurve> curves = new LinkedHashMap<String, ArrivalCurve>();
+		for (double percentile : PERCENTILES)
+			curves.put(getPercentileName(percentile), ensemble.getArrivalCurve(percentile));
+		data.setArrivalCurves(curves);
+
+		return data;
+	}
+
+	/**
+	 * @return e.g. p90
+	 */
+	public static String getPercentileName(double q) {
+		return "p" + Math.round(q * 100);
+	}
+
+	/**
+	 * writes the percentiles of the evacuation and clearing times per link
+	 * as tab separated table. links without values (e.g. exit links) are
+	 * left out.
+	 */
+	public static void writeLinkPercentiles(EnsembleData ensemble, Collection<? extends Link> links, String filename) {
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(filename)) {
+			writer.write("LINK_ID");
+			for (Mode mode : new Mode[] { Mode.EVACUATION, Mode.CLEARING })
+				for (double percentile : PERCENTILES)
+					writer.write("\t" + mode + "_" + getPercentileName(percentile).toUpperCase());
+			writer.newLine();
+
+			for (Link link : links) {
+				int linkIndex = link.getId().index();
+				if ((Double.isNaN(ensemble.getLinkQuantile(Mode.EVACUATION, linkIndex, 0.5))) && (Double.isNaN(ensemble.getLinkQuantile(Mode.CLEARING, linkIndex, 0.5))))
+					continue;
+
+				writer.write(link.getId().toString());
+				for (Mode mode : new Mode[] { Mode.EVACUATION, Mode.CLEARING })
+					for (double percentile : PERCENTILES)
+						writer.write("\t" + ensemble.getLinkQuantile(mode, linkIndex, percentile));
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("could not write " + filename, e);
+		}
+	}
+
+}
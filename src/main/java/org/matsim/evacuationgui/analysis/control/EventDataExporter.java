@@ -0,0 +1,295 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventDataExporter.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.control;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+import javax.imageio.ImageIO;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.collections.QuadTree.Rect;
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.evacuationgui.analysis.data.Cell;
+import org.matsim.evacuationgui.analysis.data.EventData;
+import org.matsim.evacuationgui.model.Constants.Mode;
+import org.matsim.evacuationgui.model.config.ToolConfig;
+
+/**
+ * writes the colorations of an analysis to georeferenced images (png with
+ * world file, in the coordinate system of the network) and the cell and
+ * link values to csv files. only uses off-screen images, so it works with
+ * java.awt.headless=true.
+ *
+ */
+public class EventDataExporter {
+
+	private static final int MAX_IMAGE_SIZE = 8192;
+
+	private final EventData<?> data;
+	private final Collection<? extends Link> links;
+
+	// image extent, in network coordinates
+	private final double minX;
+	private final double minY;
+	private final double maxX;
+	private final double maxY;
+
+	private double pixelSize;
+
+	/**
+	 * @param links
+	 *            links drawn in utilization mode
+	 */
+	public EventDataExporter(EventData<?> data, Collection<? extends Link> links) {
+		this.data = data;
+		this.links = links;
+
+		double halfCell = data.getCellSize() / 2d;
+		Rect boundingBox = data.getBoundingBox();
+		this.minX = boundingBox.minX - halfCell;
+		this.minY = boundingBox.minY - halfCell;
+		this.maxX = boundingBox.maxX + halfCell;
+		this.maxY = boundingBox.maxY + halfCell;
+
+		// eight pixels per cell by default
+		setPixelSize(data.getCellSize() / 8d);
+	}
+
+	/**
+	 * @param pixelSize
+	 *            pixel size in network units. is increased if the image
+	 *            would exceed 8192 pixels.
+	 */
+	public void setPixelSize(double pixelSize) {
+		this.pixelSize = Math.max(pixelSize, Math.max(maxX - minX, maxY - minY) / MAX_IMAGE_SIZE);
+	}
+
+	public double getPixelSize() {
+		return pixelSize;
+	}
+
+	/**
+	 * writes the coloration of the given mode as png, plus a world file
+	 * (.pgw) that georeferences the image
+	 */
+	public void writeImage(Mode mode, String filename) {
+		data.prepare(mode);
+
+		int width = Math.max(1, (int) Math.ceil((maxX - minX) / pixelSize));
+		int height = Math.max(1, (int) Math.ceil((maxY - minY) / pixelSize));
+
+		BufferedImage image = render(mode, minX, maxY, pixelSize, width, height, data.getCells(), links);
+
+		try {
+			ImageIO.write(image, "png", new File(filename));
+		} catch (IOException e) {
+			throw new RuntimeException("could not write " + filename, e);
+		}
+
+		writeWorldFile(getWorldFilename(filename));
+	}
+
+	/**
+	 * draws the given cells and, in utilization mode, links. the visual data
+	 * of the mode has to be prepared.
+	 *
+	 * @param originX
+	 *            x coordinate of the left image border
+	 * @param originY
+	 *            y coordinate of the upper image border
+	 * @param pixelSize
+	 *            in network units
+	 */
+	BufferedImage render(Mode mode, double originX, double originY, double pixelSize, int width, int height, Collection<Cell> cells, Collection<? extends Link> links) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+		drawGrid(g, mode, cells, originX, originY, pixelSize);
+		if (mode.equals(Mode.UTILIZATION))
+			drawUtilization(g, links, originX, originY, pixelSize);
+
+		g.dispose();
+		return image;
+	}
+
+	private void drawGrid(Graphics2D g, Mode mode, Collection<Cell> cells, double originX, double originY, double pixelSize) {
+		double halfCell = data.getCellSize() / 2d;
+
+		for (Cell cell : cells) {
+			Coord c = cell.getCoord();
+			int x1 = toPixel(c.getX() - halfCell, originX, pixelSize);
+			int x2 = toPixel(c.getX() + halfCell, originX, pixelSize);
+			int y1 = toPixel(originY, c.getY() + halfCell, pixelSize);
+			int y2 = toPixel(originY, c.getY() - halfCell, pixelSize);
+
+			if (mode.equals(Mode.UTILIZATION)) {
+				g.setColor(ToolConfig.COLOR_CELL);
+				g.fillRect(x1, y1, x2 - x1, y2 - y1);
+				g.setColor(ToolConfig.COLOR_GRID_UTILIZATION);
+				g.setStroke(new BasicStroke(2));
+			} else {
+				Color color = getCellColor(cell, mode);
+				g.setColor(color != null ? color : ToolConfig.COLOR_DISABLED_TRANSPARENT);
+				g.fillRect(x1, y1, x2 - x1, y2 - y1);
+				g.setColor(ToolConfig.COLOR_GRID);
+				g.setStroke(new BasicStroke(1));
+			}
+			g.drawRect(x1, y1, x2 - x1, y2 - y1);
+		}
+	}
+
+	private void drawUtilization(Graphics2D g, Collection<? extends Link> links, double originX, double originY, double pixelSize) {
+		for (Link link : links) {
+			if ((data.getLinkEnterCount(link.getId()) == 0) || (data.getLinkLeaveCount(link.getId()) == 0))
+				continue;
+
+			float strokeWidth = 1;
+			Color linkColor = Color.BLUE;
+			Tuple<Float, Color> coloration = getLinkColoration(link);
+			if (coloration != null) {
+				// at most a quarter of a cell
+				strokeWidth = Math.max(1f, coloration.getFirst() * (float) (data.getCellSize() / pixelSize) / 4f);
+				linkColor = coloration.getSecond();
+			}
+
+			g.setStroke(new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+			g.setColor(linkColor);
+			Coord from = link.getFromNode().getCoord();
+			Coord to = link.getToNode().getCoord();
+			g.drawLine(toPixel(from.getX(), originX, pixelSize), toPixel(originY, from.getY(), pixelSize), toPixel(to.getX(), originX, pixelSize),
+					toPixel(originY, to.getY(), pixelSize));
+		}
+	}
+
+	/**
+	 * world file: pixel size, rotation, upper left pixel center
+	 */
+	private void writeWorldFile(String filename) {
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(filename)) {
+			writer.write(pixelSize + "\n0.0\n0.0\n" + (-pixelSize) + "\n" + (minX + pixelSize / 2d) + "\n" + (maxY - pixelSize / 2d) + "\n");
+		} catch (IOException e) {
+			throw new RuntimeException("could not write " + filename, e);
+		}
+	}
+
+	/**
+	 * writes one line per cell: center, person count, mean evacuation time,
+	 * median arrival time, clearing time, link enter count and the
+	 * evacuation and clearing time colors
+	 */
+	public void writeCells(String filename) {
+		data.prepare(Mode.EVACUATION);
+		data.prepare(Mode.CLEARING);
+
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(filename)) {
+			writer.write("x,y,persons,mean_evacuation_time,median_arrival_time,clearing_time,link_enter_count,evacuation_color,clearing_color");
+			writer.newLine();
+
+			for (Cell cell : data.getCells()) {
+				double meanEvacuationTime = cell.getCount() > 0 ? cell.getTimeSum() / cell.getCount() : 0d;
+				writer.write(cell.getCoord().getX() + "," + cell.getCoord().getY() + "," + cell.getCount() + "," + meanEvacuationTime + "," + cell.getMedianArrivalTime() + ","
+						+ cell.getClearingTime() + "," + cell.getLinkEnterCount() + "," + toHex(getCellColor(cell, Mode.EVACUATION)) + ","
+						+ toHex(getCellColor(cell, Mode.CLEARING)));
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("could not write " + filename, e);
+		}
+	}
+
+	/**
+	 * writes one line per link: id, node coordinates, enter and leave counts
+	 * and the utilization coloration
+	 */
+	public void writeLinks(String filename) {
+		data.prepare(Mode.UTILIZATION);
+
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(filename)) {
+			writer.write("link_id,from_x,from_y,to_x,to_y,enter_count,leave_count,utilization,utilization_color");
+			writer.newLine();
+
+			for (Link link : links) {
+				Coord from = link.getFromNode().getCoord();
+				Coord to = link.getToNode().getCoord();
+				Tuple<Float, Color> coloration = getLinkColoration(link);
+				writer.write(link.getId() + "," + from.getX() + "," + from.getY() + "," + to.getX() + "," + to.getY() + "," + data.getLinkEnterCount(link.getId()) + ","
+						+ data.getLinkLeaveCount(link.getId()) + "," + (coloration != null ? coloration.getFirst() : "") + ","
+						+ toHex(coloration != null ? coloration.getSecond() : null));
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("could not write " + filename, e);
+		}
+	}
+
+	/**
+	 * @return the color of the cell, as in the grid renderer, or null if the
+	 *         cell has no value in the given mode
+	 */
+	private Color getCellColor(Cell cell, Mode mode) {
+		if ((mode.equals(Mode.EVACUATION)) && (cell.getCount() > 0) && (data.getEvacuationTimeVisData() != null))
+			return data.getEvacuationTimeVisData().getAttribute(cell.getId());
+		if ((mode.equals(Mode.CLEARING)) && (cell.getClearingTime() > 0) && (data.getClearingTimeVisData() != null))
+			return data.getClearingTimeVisData().getAttribute(cell.getId());
+		return null;
+	}
+
+	private Tuple<Float, Color> getLinkColoration(Link link) {
+		if (data.getLinkUtilizationVisData() == null)
+			return null;
+		return data.getLinkUtilizationVisData().getAttribute(link.getId());
+	}
+
+	/**
+	 * @return pixel offset of the distance from - to (x grows to the right,
+	 *         y downwards)
+	 */
+	private static int toPixel(double to, double from, double pixelSize) {
+		return (int) Math.round((to - from) / pixelSize);
+	}
+
+	static String toHex(Color color) {
+		if (color == null)
+			return "";
+		return String.format("#%02x%02x%02x%02x", color.getRed(), color.getGreen(), color.getBlue(), color.getAlpha());
+	}
+
+	/**
+	 * @return name of the world file of the given png file
+	 */
+	public static String getWorldFilename(String imageFilename) {
+		if (imageFilename.toLowerCase().endsWith(".png"))
+			return imageFilename.substring(0, imageFilename.length() - 4) + ".pgw";
+		return imageFilename + ".pgw";
+	}
+
+}
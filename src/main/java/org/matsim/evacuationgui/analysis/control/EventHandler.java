@@ -22,15 +22,14 @@ package org.matsim.evacuationgui.analysis.control;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
-import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
 import org.matsim.api.core.v01.events.PersonArrivalEvent;
@@ -46,17 +45,30 @@ import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.Person;
-import org.matsim.evacuationgui.analysis.control.vis.ClearingTimeVisualizer;
-import org.matsim.evacuationgui.analysis.control.vis.EvacuationTimeVisualizer;
-import org.matsim.evacuationgui.analysis.control.vis.UtilizationVisualizer;
+import org.matsim.evacuationgui.analysis.control.vis.ColorationCache;
 import org.matsim.evacuationgui.analysis.data.Cell;
+import org.matsim.evacuationgui.analysis.data.ClassificationMode;
 import org.matsim.evacuationgui.analysis.data.ColorationMode;
 import org.matsim.evacuationgui.analysis.data.EventData;
+import org.matsim.evacuationgui.analysis.data.IterationSummary;
+import org.matsim.evacuationgui.analysis.data.LinkAggregates;
+import org.matsim.evacuationgui.analysis.data.LinkEventStore;
+import org.matsim.evacuationgui.analysis.data.LinkTimeBins;
+import org.matsim.evacuationgui.analysis.data.QuantileSketch;
+import org.matsim.evacuationgui.model.Constants.Mode;
+import org.matsim.evacuationgui.utils.IdClassification;
 import org.matsim.core.events.algorithms.Vehicle2DriverEventHandler;
 import org.matsim.core.utils.collections.QuadTree;
 import org.matsim.core.utils.collections.QuadTree.Rect;
 import org.matsim.core.utils.collections.Tuple;
 
+/**
+ * collects per link aggregates while the events are read. the cell grid is
+ * derived from the aggregates on {@link #getData()}, so changing the grid
+ * size with {@link #setGridSize(double)} does not require to read the
+ * events again.
+ *
+ */
 public class EventHandler implements LinkEnterEventHandler, LinkLeaveEventHandler, PersonArrivalEventHandler, PersonDepartureEventHandler, 
 Runnable, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
 
@@ -66,14 +78,26 @@ Runnable, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
 
 	private LinkedList<Double> timeSteps;
 
-	private double lastTime = Double.NaN;
-
 	private Network network;
 
 	private double cellSize;
 	private QuadTree<Cell> cellTree;
+	private boolean gridChanged = true;
+	private boolean latticeChanged = true;
+
+	// regular cell lattice (column major), the cell tree is only used for
+	// rectangle queries
+	private Cell[] cells;
+	private double[] columnXs;
+	private double[] rowYs;
+
+	// cell index of each link, by link index
+	private int[] linkCellIndices;
+
+	// departure time and link index of each person, indexed by person id index
+	private double[] departureTimes = new double[1024];
+	private int[] departureLinkIndices = new int[1024];
 
-	private final Map<Id<Person>, Event> events = new HashMap<>();
 	private double timeSum;
 	private double maxCellTimeSum;
 	private int maxUtilization;
@@ -85,13 +109,55 @@ Runnable, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
 	private Rect boundingBox;
 	private String eventName;
 
-	private HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> linkEnterTimes;
-	private HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> linkLeaveTimes;
+	private IdClassification ids;
+	private IdClassification.Persons persons = new IdClassification.Persons();
+
+	private LinkEventStore linkEnterTimes;
+	private LinkEventStore linkLeaveTimes;
+	// arrivals by departure link, in order of arrival. kept while streaming
+	// as well, the arrival curve leaves out the exit cell of the grid.
+	private LinkEventStore arrivalsByDepartureLink;
+	private LinkAggregates linkAggregates;
 	private double maxClearingTime;
+	private boolean clearingTimesChanged;
+
+	// cells covered by the bounding box (extended by half a cell) of each
+	// link of the links list, as compressed rows: the cells of link i are
+	// linkCells[linkCellOffsets[i]] to linkCells[linkCellOffsets[i + 1] - 1]
+	private int[] linkCellOffsets;
+	private int[] linkCells;
+
+	// link x time bin counts and the derived per cell maximum occupancy
+	private LinkTimeBins linkTimeBins;
+	private int maxCellOccupancy;
+
+	// links within the exit cell of the current grid
+	private BitSet excludedLinks;
+	private int exitCellIndex;
 
 	private ColorationMode colorationMode = ColorationMode.GREEN_YELLOW_RED;
+	private ClassificationMode classificationMode = ClassificationMode.QUANTILE;
+	private ColorationCache colorationCache;
+
+	// the visual data of the data of the current grid is computed per mode,
+	// on the first request
+	private final EventData.VisualDataProvider visualDataProvider = new EventData.VisualDataProvider() {
+		@Override
+		public boolean computeVisualData(EventData eventData, Mode mode) {
+			return setVisualData(eventData, mode);
+		}
+	};
 	private float cellTransparency;
 
+	// snapshots of the data read so far, published from the handling thread
+	private SnapshotListener snapshotListener;
+	private long snapshotInterval;
+	private long lastSnapshot;
+	private int eventsSinceSnapshotCheck;
+
+	// the clock is only checked every so many events
+	private static final int SNAPSHOT_CHECK_EVENTS = 1 << 14;
+
 	private int k;
 	private int cellCount;
 	private boolean ignoreExitLink = true;
@@ -99,45 +165,96 @@ Runnable, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
 	private boolean useCellCount = true;
 	private double sampleSize = 0.1;
 
+	// if set, single events are not retained, only running aggregates
+	private boolean streaming = false;
+
 	private Vehicle2DriverEventHandler delegate = new Vehicle2DriverEventHandler();
 
 	public EventHandler(boolean useCellCount, String eventFilename, Scenario sc, double cellSize, Thread readerThread) {
+		this(useCellCount, false, eventFilename, sc, cellSize, readerThread);
+	}
+
+	/**
+	 * @param streaming
+	 *            if true, the events are analyzed in a single pass without
+	 *            retaining them. only the arrivals are kept (one entry per
+	 *            person), apart from that memory only depends on network and
+	 *            grid size. median arrival and clearing times are estimated
+	 *            (1% relative error)
+	 */
+	public EventHandler(boolean useCellCount, boolean streaming, String eventFilename, Scenario sc, double cellSize, Thread readerThread) {
 		this.useCellCount = useCellCount;
+		this.streaming = streaming;
 		
 		this.sampleSize = sc.getConfig().qsim().getFlowCapFactor();
 		
-		if (useCellCount)
-			this.cellCount = (int)cellSize;
-		else
-			this.cellSize = cellSize;
-		
 		this.eventName = eventFilename;
 		this.network = sc.getNetwork();
+		this.ids = IdClassification.get(sc);
 		this.arrivalTimes = new ArrayList<Tuple<Double, Integer>>();
 		init();
+		setGridSize(cellSize);
+	}
+
+	/**
+	 * publishes snapshots of the data while the events are still being read.
+	 * the listener is called from the thread handling the events, at most
+	 * once per interval.
+	 *
+	 * @param snapshotInterval
+	 *            minimum time between two snapshots (ms)
+	 */
+	public void setSnapshotListener(SnapshotListener snapshotListener, long snapshotInterval) {
+		this.snapshotListener = snapshotListener;
+		this.snapshotInterval = snapshotInterval;
+		this.lastSnapshot = System.currentTimeMillis();
 	}
 
 	public void setK(int k) {
 		this.k = k;
 	}
 
-	public void setIgnoreExitLink(boolean ignoreExitLink) {
+	public synchronized void setIgnoreExitLink(boolean ignoreExitLink) {
 		this.ignoreExitLink = ignoreExitLink;
+		this.gridChanged = true;
+		this.latticeChanged = true;
 	}
 
 	public boolean isIgnoreExitLink() {
 		return ignoreExitLink;
 	}
 
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * @param gridSize
+	 *            number of cells (horizontally) or cell size, depending on
+	 *            the useCellCount flag. the grid is derived from the link
+	 *            aggregates on the next call of {@link #getData()}. snapshots
+	 *            are derived on the reading thread, so the grid size should
+	 *            only be changed once the events have been read.
+	 */
+	public synchronized void setGridSize(double gridSize) {
+		if (useCellCount)
+			this.cellCount = (int) gridSize;
+		else
+			this.cellSize = gridSize;
+
+		this.gridChanged = true;
+		this.latticeChanged = true;
+	}
+
 	private void init() {
 
-		this.arrivals = 0;
-		this.timeSum = 0;
-		this.maxUtilization = 0;
-		this.maxClearingTime = Double.NEGATIVE_INFINITY;
-		this.maxCellTimeSum = Double.NEGATIVE_INFINITY;
-		this.linkEnterTimes = new HashMap<>();
-		this.linkLeaveTimes = new HashMap<>();
+		this.linkAggregates = new LinkAggregates(streaming);
+		this.linkTimeBins = new LinkTimeBins(LinkTimeBins.DEFAULT_BIN_SIZE);
+		this.arrivalsByDepartureLink = new LinkEventStore();
+		if (!streaming) {
+			this.linkEnterTimes = new LinkEventStore();
+			this.linkLeaveTimes = new LinkEventStore();
+		}
 
 		double minX = Double.POSITIVE_INFINITY;
 		double minY = Double.POSITIVE_INFINITY;
@@ -147,7 +264,7 @@ Runnable, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
 		this.links = new ArrayList<Link>();
 
 		for (Link link : this.network.getLinks().values()) {
-			if ((link.getId().toString().contains("el")) || (link.getId().toString().contains("en")))
+			if ((ids.isExitLink(link.getId())) || (ids.isExitNodeLink(link.getId())))
 				continue;
 
 			minX = Math.min(minX, Math.min(link.getFromNode().getCoord().getX(), link.getToNode().getCoord().getX()));
@@ -160,24 +277,228 @@ Runnable, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
 		}
 
 		this.boundingBox = new Rect(minX, minY, maxX, maxY);
+		this.colorationCache = new ColorationCache(this.links);
 
-		this.cellTree = new QuadTree<Cell>(minX, minY, maxX, maxY);
+	}
 
-		if ((useCellCount) && (cellCount>0))
-			cellSize = (maxX-minX)/cellCount;
-		
-		cellCount = 0;
-		
-		for (double x = minX; x <= maxX; x += cellSize) {
-			for (double y = minY; y <= maxY; y += cellSize) {
-				Cell cell = new Cell(new LinkedList<Event>());
+	/**
+	 * derives the cell grid from the link aggregates, in one pass over all
+	 * links (and all arrivals, if they are retained)
+	 */
+	private void buildGrid() {
+		if (latticeChanged)
+			buildLattice();
+
+		this.cellTree = new QuadTree<Cell>(boundingBox.minX, boundingBox.minY, boundingBox.maxX, boundingBox.maxY);
+
+		this.cells = new Cell[columnXs.length * rowYs.length];
+		int cellIndex = 0;
+		for (double x : columnXs) {
+			for (double y : rowYs) {
+				Cell cell = streaming ? new Cell(new QuantileSketch()) : new Cell();
 				cell.setCoord(new Coord(x, y));
 				this.cellTree.put(x, y, cell);
-				cellCount++;
+				this.cells[cellIndex++] = cell;
 			}
 
 		}
 
+		this.arrivals = 0;
+		this.timeSum = 0;
+		this.maxUtilization = 0;
+		this.maxClearingTime = Double.NEGATIVE_INFINITY;
+		this.maxCellTimeSum = Double.NEGATIVE_INFINITY;
+
+		for (Link link : this.network.getLinks().values()) {
+			int linkIndex = link.getId().index();
+			if (excludedLinks.get(linkIndex))
+				continue;
+
+			Cell cell = cells[linkCellIndices[linkIndex]];
+
+			// link enter / leave counts
+			cell.addLinkEnterCount(linkAggregates.getEnterCount(linkIndex));
+			cell.addLinkLeaveCount(linkAggregates.getLeaveCount(linkIndex));
+
+			// arrivals of persons departed from this link
+			int linkArrivals = linkAggregates.getArrivalCount(linkIndex);
+			double travelTimeSum = linkAggregates.getTravelTimeSum(linkIndex);
+			cell.setCount(cell.getCount() + linkArrivals);
+			cell.setTimeSum(cell.getTimeSum() + travelTimeSum);
+			this.arrivals += linkArrivals;
+			this.timeSum += travelTimeSum;
+
+			if ((streaming) && (linkAggregates.getArrivalTimes(linkIndex) != null))
+				cell.addArrivalTimes(linkAggregates.getArrivalTimes(linkIndex), linkAggregates.getArrivalTimeSum(linkIndex));
+		}
+
+		for (Cell cell : cells) {
+			this.maxCellTimeSum = Math.max(cell.getTimeSum(), this.maxCellTimeSum);
+			this.maxUtilization = Math.max(cell.getLinkEnterCount(), this.maxUtilization);
+		}
+
+		// global arrival times (and the cell ones, if they are not
+		// sketched), without persons departed within the exit cell
+		this.arrivalTimes = new ArrayList<Tuple<Double, Integer>>();
+		double lastArrivalTime = Double.NaN;
+		int arrivalNo = 0;
+
+		for (int i = 0; i < arrivalsByDepartureLink.size(); i++) {
+			cellIndex = linkCellIndices[arrivalsByDepartureLink.getLinkIndex(i)];
+			if (cellIndex == exitCellIndex)
+				continue;
+
+			arrivalNo++;
+			double time = arrivalsByDepartureLink.getTime(i);
+			if (lastArrivalTime != time) {
+				this.arrivalTimes.add(new Tuple<Double, Integer>(time, arrivalNo));
+				if (!streaming)
+					cells[cellIndex].addArrivalTime(time);
+				lastArrivalTime = time;
+			}
+		}
+
+		this.clearingTimesChanged = true;
+		this.linkCellOffsets = null;
+		this.linkCells = null;
+		buildTimeBins();
+		colorationCache.invalidate();
+
+		this.gridChanged = false;
+	}
+
+	/**
+	 * derives the lattice coordinates and the cell of each link. unlike the
+	 * cells, they only depend on the network and the grid size, so they are
+	 * kept while events are read.
+	 */
+	private void buildLattice() {
+		if ((useCellCount) && (cellCount>0))
+			cellSize = (boundingBox.maxX-boundingBox.minX)/cellCount;
+
+		this.columnXs = getLatticeCoords(boundingBox.minX, boundingBox.maxX);
+		this.rowYs = getLatticeCoords(boundingBox.minY, boundingBox.maxY);
+
+		// do not consider the exit link (located in the last cell)
+		this.exitCellIndex = ignoreExitLink ? columnXs.length * rowYs.length - 1 : -1;
+		this.excludedLinks = new BitSet();
+
+		this.linkCellIndices = new int[Id.getNumberOfIds(Link.class)];
+		Arrays.fill(this.linkCellIndices, -1);
+
+		for (Link link : this.network.getLinks().values()) {
+			int linkIndex = link.getId().index();
+			Coord c = link.getCoord();
+			int cellIndex = getCellIndex(c.getX(), c.getY());
+			linkCellIndices[linkIndex] = cellIndex;
+
+			if (cellIndex == exitCellIndex)
+				excludedLinks.set(linkIndex);
+		}
+
+		this.latticeChanged = false;
+	}
+
+	/**
+	 * sums up the link time bins per cell. occupancy and arrivals are
+	 * accumulated over time, departures are per bin. only the bins a cell
+	 * has events in are kept, so memory grows with the link time bin
+	 * entries and not with the number of cells times the number of bins.
+	 */
+	private void buildTimeBins() {
+		// entries sorted by cell (counting sort), and by bin within a cell
+		int[] offsets = new int[cells.length + 1];
+		for (int i = 0; i < linkTimeBins.size(); i++) {
+			int cellIndex = getTimeBinCell(linkTimeBins.getLinkIndex(i));
+			if (cellIndex >= 0)
+				offsets[cellIndex + 1]++;
+		}
+		for (int c = 0; c < cells.length; c++)
+			offsets[c + 1] += offsets[c];
+
+		// bin and entry index, packed to be sorted
+		long[] entries = new long[offsets[cells.length]];
+		int[] next = Arrays.copyOf(offsets, cells.length);
+		for (int i = 0; i < linkTimeBins.size(); i++) {
+			int cellIndex = getTimeBinCell(linkTimeBins.getLinkIndex(i));
+			if (cellIndex >= 0)
+				entries[next[cellIndex]++] = ((long) linkTimeBins.getBinOfEntry(i) << 32) | i;
+		}
+
+		this.maxCellOccupancy = 0;
+		for (int c = 0; c < cells.length; c++) {
+			Arrays.sort(entries, offsets[c], offsets[c + 1]);
+
+			int n = 0;
+			int[] bins = new int[offsets[c + 1] - offsets[c]];
+			int[] occupancy = new int[bins.length];
+			int[] departures = new int[bins.length];
+			int[] arrivals = new int[bins.length];
+			for (int k = offsets[c]; k < offsets[c + 1]; k++) {
+				int bin = (int) (entries[k] >>> 32);
+				int i = (int) entries[k];
+				if ((n == 0) || (bins[n - 1] != bin)) {
+					bins[n] = bin;
+					occupancy[n] = n > 0 ? occupancy[n - 1] : 0;
+					arrivals[n] = n > 0 ? arrivals[n - 1] : 0;
+					n++;
+				}
+				occupancy[n - 1] += linkTimeBins.getOccupancyChange(i);
+				departures[n - 1] += linkTimeBins.getDepartures(i);
+				arrivals[n - 1] += linkTimeBins.getArrivals(i);
+			}
+
+			for (int k = 0; k < n; k++)
+				this.maxCellOccupancy = Math.max(occupancy[k], this.maxCellOccupancy);
+
+			cells[c].setTimeBins(Arrays.copyOf(bins, n), Arrays.copyOf(occupancy, n), Arrays.copyOf(departures, n), Arrays.copyOf(arrivals, n));
+		}
+	}
+
+	/**
+	 * @return cell of the link, or -1 if the link is not part of the grid
+	 */
+	private int getTimeBinCell(int linkIndex) {
+		if (linkIndex >= linkCellIndices.length)
+			return -1;
+		int cellIndex = linkCellIndices[linkIndex];
+		return cellIndex == exitCellIndex ? -1 : cellIndex;
+	}
+
+	private double[] getLatticeCoords(double min, double max) {
+		int n = 0;
+		for (double v = min; v <= max; v += cellSize)
+			n++;
+
+		double[] coords = new double[n];
+		int i = 0;
+		for (double v = min; v <= max; v += cellSize)
+			coords[i++] = v;
+		return coords;
+	}
+
+	/**
+	 * @return index of the lattice cell closest to the given coordinate, ties
+	 *         go to the lower cell
+	 */
+	private int getCellIndex(double x, double y) {
+		return getClosest(columnXs, x) * rowYs.length + getClosest(rowYs, y);
+	}
+
+	/**
+	 * @return index of the lattice coordinate closest to v. the index is
+	 *         computed and then checked against its neighbors, as the
+	 *         coordinates are accumulated and may deviate slightly.
+	 */
+	private int getClosest(double[] coords, double v) {
+		int i = (int) Math.ceil((v - coords[0]) / cellSize - 0.5d);
+		i = Math.max(0, Math.min(coords.length - 1, i));
+
+		if ((i > 0) && (Math.abs(coords[i - 1] - v) <= Math.abs(coords[i] - v)))
+			i--;
+		else if ((i < coords.length - 1) && (Math.abs(coords[i + 1] - v) < Math.abs(coords[i] - v)))
+			i++;
+		return i;
 	}
 
 	public LinkedList<Double> getTimeSteps() {
@@ -203,63 +524,63 @@ Runnable, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
 
 	@Override
 	public void handleEvent(PersonDepartureEvent event) {
-		if (event.getPersonId().toString().contains("veh"))
-			return;
+		handleDeparture(event.getTime(), event.getPersonId(), event.getLinkId());
+	}
 
-		// just save departure event
-		this.events.put(event.getPersonId(), event);
+	/**
+	 * handles a departure without requiring an event object, e.g. when
+	 * replaying cached events
+	 */
+	public void handleDeparture(double eventTime, Id<Person> personId, Id<Link> linkId) {
+		if (persons.isVehicle(personId))
+			return;
 
-		// get cell from person id
-		PersonDepartureEvent departure = (PersonDepartureEvent) this.events.get(event.getPersonId());
-		Link link = this.network.getLinks().get(departure.getLinkId());
-		Coord c = link.getCoord();
-		Cell cell = this.cellTree.getClosest(c.getX(), c.getY());
+		// just save departure time and link
+		int personIndex = personId.index();
+		if (personIndex >= this.departureTimes.length) {
+			int newLength = Math.max(personIndex + 1, this.departureTimes.length * 2);
+			this.departureTimes = Arrays.copyOf(this.departureTimes, newLength);
+			this.departureLinkIndices = Arrays.copyOf(this.departureLinkIndices, newLength);
+		}
+		this.departureTimes[personIndex] = eventTime;
+		this.departureLinkIndices[personIndex] = linkId.index();
 
-		// get the cell data, store event to it
-		List<Event> cellEvents = cell.getData();
-		cellEvents.add(event);
+		linkAggregates.addDeparture(linkId.index());
+		linkTimeBins.addDeparture(linkId.index(), eventTime);
+		linkTimeBins.addOccupancyChange(linkId.index(), eventTime, 1);
 
+		this.gridChanged = true;
+		checkSnapshot();
 	}
 
 	@Override
 	public void handleEvent(PersonArrivalEvent event) {
+		handleArrival(event.getTime(), event.getPersonId(), event.getLinkId());
+	}
 
-		if (event.getPersonId().toString().contains("veh"))
-			return;
-
-		// get cell from person id
-		PersonDepartureEvent departure = (PersonDepartureEvent) this.events.get(event.getPersonId());
-		Link link = this.network.getLinks().get(departure.getLinkId());
-		Coord c = link.getCoord();
-		Cell cell = this.cellTree.getClosest(c.getX(), c.getY());
-
-		// get the cell data, store event to it
-		List<Event> cellEvents = cell.getData();
-		cellEvents.add(event);
+	/**
+	 * @see #handleDeparture(double, Id, Id)
+	 */
+	public void handleArrival(double eventTime, Id<Person> personId, Id<Link> linkId) {
 
-		// do not consider the exit link
-		if ((ignoreExitLink) && (cell.getId().toString().equals("" + Cell.getCurrentId())))
+		if (persons.isVehicle(personId))
 			return;
 
-		double time = event.getTime() - departure.getTime();
-
-		if (!cell.getId().toString().equals(cellCount)) {
-			cell.setTimeSum(cell.getTimeSum() + time);
-
-			// update max timesum of all cells
-			this.maxCellTimeSum = Math.max(cell.getTimeSum(), this.maxCellTimeSum);
-		}
+		// arrivals are counted at the departure link
+		int personIndex = personId.index();
+		int departureLinkIndex = this.departureLinkIndices[personIndex];
+		double time = eventTime - this.departureTimes[personIndex];
 
-		cell.incrementCount();
-		this.timeSum += time;
-		this.arrivals++;
+		linkAggregates.addArrival(departureLinkIndex, time);
+		linkTimeBins.addArrival(departureLinkIndex, eventTime);
+		linkTimeBins.addOccupancyChange(linkId.index(), eventTime, -1);
 
-		if (lastTime != event.getTime()) {
-			this.arrivalTimes.add(new Tuple<Double, Integer>(event.getTime(), this.arrivals));
-			cell.addArrivalTime(event.getTime());
-			lastTime = event.getTime();
-		}
+		if (streaming)
+			linkAggregates.addArrivalTime(departureLinkIndex, eventTime);
+		arrivalsByDepartureLink.add(departureLinkIndex, personIndex, eventTime);
 
+		this.gridChanged = true;
+		checkSnapshot();
 	}
 
 	@Override
@@ -269,80 +590,112 @@ Runnable, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
 
 	@Override
 	public void handleEvent(LinkEnterEvent event) {
-		Id<Person> personId = delegate.getDriverOfVehicle(event.getVehicleId());
-		
-		if (personId.toString().contains("veh"))
-			return;
-
-		// get link id
-		Id<Link> linkId = event.getLinkId();
-		
-		// get cell from person id
-		Link link = this.network.getLinks().get(linkId);
-		Coord c = link.getCoord();
-		Cell cell = this.cellTree.getClosest(c.getX(), c.getY());
+		handleLinkEnter(event.getTime(), event.getLinkId(), delegate.getDriverOfVehicle(event.getVehicleId()));
+	}
 
-		// do not consider the exit link
-		if ((ignoreExitLink) && (cell.getId().toString().equals("" + Cell.getCurrentId())))
+	/**
+	 * @param personId
+	 *            driver of the vehicle entering the link
+	 */
+	public void handleLinkEnter(double eventTime, Id<Link> linkId, Id<Person> personId) {
+		// vehicles without a registered driver are counted
+		if ((personId != null) && (persons.isVehicle(personId)))
 			return;
 
-		// update cell link enter time
-		cell.addLinkEnterTime(linkId, personId, event.getTime());
-
-		// check for highest global utilization of a single link
-		int enterCount = cell.getLinkEnterTimes().size();
-		maxUtilization = Math.max(maxUtilization, enterCount);
-
-		// update global link enter times
-		List<Tuple<Id<Person>, Double>> times;
-		if (linkEnterTimes.containsKey(linkId))
-			times = linkEnterTimes.get(linkId);
-		else
-			times = new LinkedList<Tuple<Id<Person>, Double>>();
-		times.add(new Tuple<Id<Person>, Double>(personId, event.getTime()));
-
-		linkEnterTimes.put(linkId, times);
+		// update global link enter counts / times
+		linkAggregates.addEnter(linkId.index());
+		linkTimeBins.addOccupancyChange(linkId.index(), eventTime, 1);
+		if (!streaming)
+			linkEnterTimes.add(linkId.index(), personId != null ? personId.index() : -1, eventTime);
 
+		this.gridChanged = true;
+		checkSnapshot();
 	}
 
 	@Override
 	public void handleEvent(LinkLeaveEvent event) {
+		handleLinkLeave(event.getTime(), event.getLinkId(), delegate.getDriverOfVehicle(event.getVehicleId()));
+	}
 
-		// get link id
-		Id<Link> linkId = event.getLinkId();
-		Id<Person> personId = delegate.getDriverOfVehicle(event.getVehicleId());
+	/**
+	 * @param personId
+	 *            driver of the vehicle leaving the link
+	 */
+	public void handleLinkLeave(double eventTime, Id<Link> linkId, Id<Person> personId) {
+
+		// update global link leave counts / times
+		linkAggregates.addLeave(linkId.index(), eventTime);
+		if ((personId == null) || (!persons.isVehicle(personId)))
+			linkTimeBins.addOccupancyChange(linkId.index(), eventTime, -1);
+		if (!streaming)
+			linkLeaveTimes.add(linkId.index(), personId != null ? personId.index() : -1, eventTime);
+
+		this.gridChanged = true;
+		checkSnapshot();
+	}
 
-		// get cell from person id
-		Link link = this.network.getLinks().get(linkId);
-		Coord c = link.getCoord();
-		Cell cell = this.cellTree.getClosest(c.getX(), c.getY());
+	private void checkSnapshot() {
+		if ((snapshotListener == null) || (++eventsSinceSnapshotCheck < SNAPSHOT_CHECK_EVENTS))
+			return;
 
-		// do not consider the exit link
-		if ((ignoreExitLink) && (cell.getId().toString().equals("" + Cell.getCurrentId())))
+		eventsSinceSnapshotCheck = 0;
+		if (System.currentTimeMillis() - lastSnapshot < snapshotInterval)
 			return;
 
-		// update cell link leave time
-		cell.addLinkLeaveTime(linkId, personId, event.getTime());
+		EventData snapshot = getSnapshot();
+		// measured from the end of the snapshot, so deriving it cannot take
+		// up all of the reading time
+		lastSnapshot = System.currentTimeMillis();
+		snapshotListener.snapshotAvailable(snapshot);
+	}
 
-		// update global link leave times
-		List<Tuple<Id<Person>, Double>> times;
-		if (linkLeaveTimes.containsKey(linkId))
-			times = linkLeaveTimes.get(linkId);
-		else
-			times = new LinkedList<>();
-		times.add(new Tuple<Id<Person>, Double>(personId, event.getTime()));
+	/**
+	 * derives the data of all events handled so far, with the visual data
+	 * of all modes. must be called from the thread handling the events: the
+	 * snapshot does not refer to the handler afterwards, so it can be shown
+	 * while further events are read. it keeps a copy of the per link counts
+	 * instead of the link stores, which grow (and are reallocated) while
+	 * events are read.
+	 */
+	public synchronized EventData getSnapshot() {
+		EventData snapshot = getData();
+
+		snapshot.setLinkAggregates(linkAggregates.copyCounts());
+		snapshot.setLinkEnterTimes(null);
+		snapshot.setLinkLeaveTimes(null);
+
+		for (Mode mode : Mode.values())
+			snapshot.prepare(mode);
+		snapshot.setVisualDataProvider(null);
+
+		return snapshot;
+	}
 
-		linkLeaveTimes.put(linkId, times);
+	public synchronized QuadTree<Cell> getCellTree() {
+		if (gridChanged)
+			buildGrid();
+		return cellTree;
+	}
 
+	/**
+	 * @return the cells of the grid (column major), with clearing times. the
+	 *         indices match for handlers on the same network and grid.
+	 */
+	public synchronized Cell[] getCells() {
+		if (gridChanged)
+			buildGrid();
+		updateClearingTimes();
+		return cells;
 	}
 
-	public QuadTree<Cell> getCellTree() {
-		return cellTree;
+	public LinkAggregates getLinkAggregates() {
+		return linkAggregates;
 	}
 
-	public EventData getData() {
+	public synchronized EventData getData() {
 
-		getClearingTimes();
+		if (gridChanged)
+			buildGrid();
 
 		EventData eventData = new EventData(eventName);
 
@@ -355,32 +708,134 @@ Runnable, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
 		eventData.setBoundingBox(boundingBox);
 		eventData.setLinkEnterTimes(linkEnterTimes);
 		eventData.setLinkLeaveTimes(linkLeaveTimes);
+		eventData.setLinkAggregates(linkAggregates);
+		eventData.setExcludedLinks(excludedLinks);
 		eventData.setMaxUtilization(maxUtilization);
-		eventData.setMaxClearingTime(maxClearingTime);
+		eventData.setTimeBins(linkTimeBins.getBinCount(), linkTimeBins.getBinSize());
+		eventData.setMaxCellOccupancy(maxCellOccupancy);
 		eventData.setSampleSize(sampleSize);
 
-		// set visualization attributes
-		setVisualData(eventData);
+		// visualization attributes are set on request
+		eventData.setVisualDataProvider(visualDataProvider);
 
 		return eventData;
 	}
 
-	private void setVisualData(EventData eventData) {
-		Clusterizer clusterizer = new Clusterizer();
+	/**
+	 * @return key figures of the events read, without deriving the visual
+	 *         data
+	 */
+	public synchronized IterationSummary getSummary(int iteration) {
+		if (gridChanged)
+			buildGrid();
+		updateClearingTimes();
+
+		double evacuationTime = arrivalTimes.isEmpty() ? 0d : arrivalTimes.get(arrivalTimes.size() - 1).getFirst();
+		return new IterationSummary(iteration, eventName, arrivals, evacuationTime, Math.max(0d, maxClearingTime), maxUtilization);
+	}
 
-		EvacuationTimeVisualizer eVis = new EvacuationTimeVisualizer(eventData, clusterizer, k, this.colorationMode, this.cellTransparency);
-		ClearingTimeVisualizer cVis = new ClearingTimeVisualizer(eventData, clusterizer, k, this.colorationMode, this.cellTransparency);
-		UtilizationVisualizer uVis = new UtilizationVisualizer(links, eventData, clusterizer, k, this.colorationMode, this.cellTransparency);
+	/**
+	 * @return false if the data belongs to an earlier grid: its cells no
+	 *         longer get clearing times and the coloration cache has been
+	 *         invalidated for the current grid
+	 */
+	private synchronized boolean setVisualData(EventData eventData, Mode mode) {
+		if (eventData.getCellTree() != cellTree)
+			return false;
+
+		if (mode.equals(Mode.CLEARING)) {
+			updateClearingTimes();
+			eventData.setMaxClearingTime(maxClearingTime);
+		}
 
-		eventData.setEvacuationTimeVisData(eVis.getColoration());
-		eventData.setClearingTimeVisData(cVis.getColoration());
-		eventData.setLinkUtilizationVisData(uVis.getColoration());
+		colorationCache.apply(eventData, mode, k, this.classificationMode, this.colorationMode, this.cellTransparency);
+		return true;
+	}
 
+	/**
+	 * derives the clearing times of the cells, if the grid has changed since
+	 * the last call. needs a cell query per link, so it is only done once
+	 * clearing times are requested.
+	 */
+	private void updateClearingTimes() {
+		if (clearingTimesChanged) {
+			getClearingTimes();
+			clearingTimesChanged = false;
+		}
 	}
 
 	private void getClearingTimes() {
+		if (linkCellOffsets == null)
+			buildLinkCells();
+
+		for (int i = 0; i < links.size(); i++) {
+			int linkIndex = links.get(i).getId().index();
+
+			if ((linkAggregates.getLeaveCount(linkIndex) > 0) && (!excludedLinks.get(linkIndex))) {
+				double latestTime = getLinkClearingTime(linkIndex);
+				maxClearingTime = Math.max(latestTime, maxClearingTime);
+
+				for (int k = linkCellOffsets[i]; k < linkCellOffsets[i + 1]; k++)
+					cells[linkCells[k]].updateClearanceTime(latestTime);
+			}
+		}
+	}
+
+	/**
+	 * @return time by which 95% of the vehicles have left the link, 0 if
+	 *         none has
+	 */
+	public double getLinkClearingTime(int linkIndex) {
+		int leaveCount = linkAggregates.getLeaveCount(linkIndex);
+		if (leaveCount <= 0)
+			return 0d;
+
+		// cut 5%
+		if (streaming)
+			return linkAggregates.getLeaveTimeQuantile(linkIndex, 0.95d);
+
+		int confidentElementNo = Math.max(0, (int) (leaveCount * 0.95d - 1));
+		return linkLeaveTimes.getTimeOfRank(linkIndex, confidentElementNo);
+	}
 
-		for (Link link : this.links) {
+	/**
+	 * @return median arrival time of the persons departed from the link, NaN
+	 *         if none has arrived
+	 */
+	public double getLinkMedianArrivalTime(int linkIndex) {
+		if (streaming) {
+			QuantileSketch arrivalTimes = linkAggregates.getArrivalTimes(linkIndex);
+			return arrivalTimes == null ? Double.NaN : arrivalTimes.getQuantile(0.5);
+		}
+
+		int n = arrivalsByDepartureLink.getCount(linkIndex);
+		if (n == 0)
+			return Double.NaN;
+		if (n % 2 == 1)
+			return arrivalsByDepartureLink.getTimeOfRank(linkIndex, n / 2);
+		return (arrivalsByDepartureLink.getTimeOfRank(linkIndex, n / 2 - 1) + arrivalsByDepartureLink.getTimeOfRank(linkIndex, n / 2)) / 2.0;
+	}
+
+	/**
+	 * @return the analyzed links (all but the exit links)
+	 */
+	public List<Link> getLinkList() {
+		return links;
+	}
+
+	/**
+	 * maps each link to the lattice cells within its bounding box, extended
+	 * by half a cell (bounds inclusive). the cells are found by binary search
+	 * on the lattice coordinates instead of a quad tree query per link.
+	 */
+	private void buildLinkCells() {
+		int n = links.size();
+		int[] columnRanges = new int[2 * n];
+		int[] rowRanges = new int[2 * n];
+		linkCellOffsets = new int[n + 1];
+
+		for (int i = 0; i < n; i++) {
+			Link link = links.get(i);
 			Coord fromNodeCoord = link.getFromNode().getCoord();
 			Coord toNodeCoord = link.getToNode().getCoord();
 
@@ -389,32 +844,74 @@ Runnable, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
 			double minY = Math.min(fromNodeCoord.getY(), toNodeCoord.getY()) - cellSize / 2d;
 			double maxY = Math.max(fromNodeCoord.getY(), toNodeCoord.getY()) + cellSize / 2d;
 
-			Rect boundary = new Rect(minX, minY, maxX, maxY);
-
-			// get all cells that are within the boundary from celltree
-			LinkedList<Cell> cells = new LinkedList<Cell>();
-			List<Tuple<Id<Person>, Double>> currentLinkLeaveTimes = linkLeaveTimes.get(link.getId());
-
-			if ((currentLinkLeaveTimes != null) && (currentLinkLeaveTimes.size() > 0)) {
-				// cut 5%
-				int confidentElementNo = Math.max(0, (int) (currentLinkLeaveTimes.size() * 0.95d - 1));
+			columnRanges[2 * i] = getFirstAtLeast(columnXs, minX);
+			columnRanges[2 * i + 1] = getFirstAbove(columnXs, maxX);
+			rowRanges[2 * i] = getFirstAtLeast(rowYs, minY);
+			rowRanges[2 * i + 1] = getFirstAbove(rowYs, maxY);
 
-				double latestTime = currentLinkLeaveTimes.get(confidentElementNo).getSecond();
-				maxClearingTime = Math.max(latestTime, maxClearingTime);
+			int columns = Math.max(0, columnRanges[2 * i + 1] - columnRanges[2 * i]);
+			int rows = Math.max(0, rowRanges[2 * i + 1] - rowRanges[2 * i]);
+			linkCellOffsets[i + 1] = linkCellOffsets[i] + columns * rows;
+		}
 
-				cellTree.getRectangle(boundary, cells);
+		linkCells = new int[linkCellOffsets[n]];
+		for (int i = 0; i < n; i++) {
+			int k = linkCellOffsets[i];
+			for (int column = columnRanges[2 * i]; column < columnRanges[2 * i + 1]; column++)
+				for (int row = rowRanges[2 * i]; row < rowRanges[2 * i + 1]; row++)
+					linkCells[k++] = column * rowYs.length + row;
+		}
+	}
 
-				for (Cell cell : cells)
-					cell.updateClearanceTime(latestTime);
-			}
+	/**
+	 * @return index of the first of the ascending coordinates that is greater
+	 *         than or equal to v (coords.length if there is none)
+	 */
+	private static int getFirstAtLeast(double[] coords, double v) {
+		int low = 0;
+		int high = coords.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (coords[mid] < v)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
 
+	/**
+	 * @return index of the first of the ascending coordinates that is greater
+	 *         than v (coords.length if there is none)
+	 */
+	private static int getFirstAbove(double[] coords, double v) {
+		int low = 0;
+		int high = coords.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (coords[mid] <= v)
+				low = mid + 1;
+			else
+				high = mid;
 		}
+		return low;
+	}
+
+	/**
+	 * receives snapshots of the data while events are read
+	 */
+	public interface SnapshotListener {
+		public void snapshotAvailable(EventData snapshot);
 	}
 
 	public void setColorationMode(ColorationMode colorationMode) {
 		this.colorationMode = colorationMode;
 	}
 
+	public void setClassificationMode(ClassificationMode classificationMode) {
+		this.classificationMode = classificationMode;
+	}
+
 	public void setTransparency(float cellTransparency) {
 		this.cellTransparency = cellTransparency;
 
@@ -0,0 +1,90 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventsCache.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+
+package org.matsim.evacuationgui.analysis.control;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * binary sidecar of an events file, written on the first read of the events
+ * file and replayed on later reads. layout (big endian):
+ * <ul>
+ * <li>header: magic, version, length and modification time of the events
+ * file, number of records, offset of the dictionaries</li>
+ * <li>records: type (byte), time (double), two ids (int each)</li>
+ * <li>dictionaries: link ids, person ids (count followed by the ids)</li>
+ * </ul>
+ * link events hold the driver instead of the vehicle, so vehicle events do
+ * not need to be stored.
+ *
+ */
+public final class EventsCache {
+
+	public static final String SUFFIX = ".evcache";
+
+	static final int MAGIC = 0x45564331;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 40;
+	static final int RECORD_SIZE = 17;
+
+	// record types: departure and arrival (person, link), link enter and
+	// link leave (link, driver)
+	static final byte DEPARTURE = 1;
+	static final byte ARRIVAL = 2;
+	static final byte LINK_ENTER = 3;
+	static final byte LINK_LEAVE = 4;
+
+	private EventsCache() {
+	}
+
+	public static File getCacheFile(File eventFile) {
+		return new File(eventFile.getPath() + SUFFIX);
+	}
+
+	/**
+	 * @return true if there is a complete cache file, written for the
+	 *         current version of the events file
+	 */
+	public static boolean isValid(File eventFile) {
+		File cacheFile = getCacheFile(eventFile);
+		if (!cacheFile.isFile())
+			return false;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile), HEADER_SIZE))) {
+			if ((in.readInt() != MAGIC) || (in.readInt() != VERSION) || (in.readLong() != eventFile.length())
+					|| (in.readLong() != eventFile.lastModified()))
+				return false;
+
+			// the records have to be followed by (at least the counts of)
+			// the dictionaries, otherwise the file has been cut off
+			long records = in.readLong();
+			long dictionaryOffset = in.readLong();
+			return (records >= 0) && (dictionaryOffset == HEADER_SIZE + records * RECORD_SIZE) && (cacheFile.length() >= dictionaryOffset + 8);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+}
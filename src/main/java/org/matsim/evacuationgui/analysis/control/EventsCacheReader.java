@@ -0,0 +1,148 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventsCacheReader.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+
+package org.matsim.evacuationgui.analysis.control;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+
+/**
+ * replays an {@link EventsCache} file into an {@link EventHandler}. the
+ * records are memory mapped in segments of up to 2 GB, ids are resolved
+ * through the dictionaries once per file.
+ *
+ */
+public class EventsCacheReader implements EventsFileReader {
+
+	// records between progress updates / cancel checks
+	private static final int STEP = 1 << 16;
+
+	private final File cacheFile;
+	private final EventHandler handler;
+
+	private ProgressListener progressListener;
+	private volatile boolean cancelled = false;
+
+	public EventsCacheReader(File cacheFile, EventHandler handler) {
+		this.cacheFile = cacheFile;
+		this.handler = handler;
+	}
+
+	@Override
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	@Override
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void run() {
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, EventsCache.HEADER_SIZE);
+			if ((header.getInt() != EventsCache.MAGIC) || (header.getInt() != EventsCache.VERSION))
+				throw new IOException("not an events cache file");
+			header.getLong();
+			header.getLong();
+			long records = header.getLong();
+			long dictionaryOffset = header.getLong();
+
+			// dictionaries
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(dictionaryOffset)), 1 << 16));
+			Id<Link>[] links = new Id[in.readInt()];
+			for (int i = 0; i < links.length; i++)
+				links[i] = Id.create(in.readUTF(), Link.class);
+			Id<Person>[] persons = new Id[in.readInt()];
+			for (int i = 0; i < persons.length; i++)
+				persons[i] = Id.create(in.readUTF(), Person.class);
+
+			// records
+			long segmentRecords = Integer.MAX_VALUE / EventsCache.RECORD_SIZE;
+			for (long first = 0; (first < records) && (!cancelled); first += segmentRecords) {
+				long n = Math.min(segmentRecords, records - first);
+				MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, EventsCache.HEADER_SIZE + first * EventsCache.RECORD_SIZE, n
+						* EventsCache.RECORD_SIZE);
+
+				for (int i = 0; i < n; i++) {
+					byte type = buffer.get();
+					double time = buffer.getDouble();
+					int a = buffer.getInt();
+					int b = buffer.getInt();
+
+					switch (type) {
+					case EventsCache.DEPARTURE:
+						handler.handleDeparture(time, persons[a], links[b]);
+						break;
+					case EventsCache.ARRIVAL:
+						handler.handleArrival(time, persons[a], links[b]);
+						break;
+					case EventsCache.LINK_ENTER:
+						handler.handleLinkEnter(time, links[a], b < 0 ? null : persons[b]);
+						break;
+					case EventsCache.LINK_LEAVE:
+						handler.handleLinkLeave(time, links[a], b < 0 ? null : persons[b]);
+						break;
+					default:
+						throw new IOException("unknown record type " + type);
+					}
+
+					if ((i % STEP) == 0) {
+						if (cancelled)
+							return;
+						fireProgress((first + i) / (double) records);
+					}
+				}
+			}
+
+			fireProgress(1d);
+
+		} catch (IOException e) {
+			throw new RuntimeException("could not read events cache " + cacheFile, e);
+		}
+	}
+
+	private void fireProgress(double progress) {
+		if (this.progressListener != null)
+			this.progressListener.progressChanged(progress);
+	}
+
+}
@@ -0,0 +1,239 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventsCacheWriter.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+
+package org.matsim.evacuationgui.analysis.control;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
+import org.matsim.api.core.v01.events.handler.PersonArrivalEventHandler;
+import org.matsim.api.core.v01.events.handler.PersonDepartureEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleLeavesTrafficEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.events.algorithms.Vehicle2DriverEventHandler;
+
+/**
+ * writes the events needed by the analysis to the {@link EventsCache} file
+ * of an events file. the records go to a temporary file of its own, which
+ * atomically replaces the cache file on {@link #finish()}, so several
+ * writers of the same cache do not interfere. the cache is optional, so write errors
+ * are logged and only disable the writer.
+ *
+ */
+public class EventsCacheWriter implements LinkEnterEventHandler, LinkLeaveEventHandler, PersonArrivalEventHandler, PersonDepartureEventHandler,
+		VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler {
+
+	private static final Logger log = Logger.getLogger(EventsCacheWriter.class);
+
+	private final File eventFile;
+	private final File cacheFile;
+	private File tempFile;
+
+	private DataOutputStream out;
+	private long records = 0;
+
+	// dictionary codes + 1, indexed by id index
+	private int[] linkCodes = new int[1024];
+	private int[] personCodes = new int[1024];
+	private final List<String> links = new ArrayList<String>();
+	private final List<String> persons = new ArrayList<String>();
+
+	private Vehicle2DriverEventHandler delegate = new Vehicle2DriverEventHandler();
+
+	public EventsCacheWriter(File eventFile) {
+		this.eventFile = eventFile;
+		this.cacheFile = EventsCache.getCacheFile(eventFile);
+
+		try {
+			this.tempFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+
+			// header, counts are set on finish
+			out.writeInt(EventsCache.MAGIC);
+			out.writeInt(EventsCache.VERSION);
+			out.writeLong(eventFile.length());
+			out.writeLong(eventFile.lastModified());
+			out.writeLong(-1);
+			out.writeLong(-1);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * writes the dictionaries and moves the cache file in place
+	 */
+	public synchronized void finish() {
+		if (out == null)
+			return;
+
+		try {
+			long dictionaryOffset = EventsCache.HEADER_SIZE + records * EventsCache.RECORD_SIZE;
+
+			out.writeInt(links.size());
+			for (String link : links)
+				out.writeUTF(link);
+			out.writeInt(persons.size());
+			for (String person : persons)
+				out.writeUTF(person);
+			out.close();
+			out = null;
+
+			try (RandomAccessFile file = new RandomAccessFile(tempFile, "rw")) {
+				file.seek(EventsCache.HEADER_SIZE - 16);
+				file.writeLong(records);
+				file.writeLong(dictionaryOffset);
+			}
+
+			try {
+				Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			log.info("wrote " + records + " cached events to " + cacheFile);
+
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * drops the temporary file, e.g. if reading the events file was cancelled
+	 */
+	public synchronized void discard() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// deleted anyway
+			}
+			out = null;
+		}
+		if (tempFile != null)
+			tempFile.delete();
+	}
+
+	@Override
+	public void reset(int iteration) {
+		delegate.reset(iteration);
+	}
+
+	@Override
+	public void handleEvent(PersonDepartureEvent event) {
+		write(EventsCache.DEPARTURE, event.getTime(), getPersonCode(event.getPersonId()), getLinkCode(event.getLinkId()));
+	}
+
+	@Override
+	public void handleEvent(PersonArrivalEvent event) {
+		write(EventsCache.ARRIVAL, event.getTime(), getPersonCode(event.getPersonId()), getLinkCode(event.getLinkId()));
+	}
+
+	@Override
+	public void handleEvent(LinkEnterEvent event) {
+		write(EventsCache.LINK_ENTER, event.getTime(), getLinkCode(event.getLinkId()), getPersonCode(delegate.getDriverOfVehicle(event.getVehicleId())));
+	}
+
+	@Override
+	public void handleEvent(LinkLeaveEvent event) {
+		write(EventsCache.LINK_LEAVE, event.getTime(), getLinkCode(event.getLinkId()), getPersonCode(delegate.getDriverOfVehicle(event.getVehicleId())));
+	}
+
+	@Override
+	public void handleEvent(VehicleEntersTrafficEvent event) {
+		delegate.handleEvent(event);
+	}
+
+	@Override
+	public void handleEvent(VehicleLeavesTrafficEvent event) {
+		delegate.handleEvent(event);
+	}
+
+	private synchronized void write(byte type, double time, int first, int second) {
+		if (out == null)
+			return;
+
+		try {
+			out.writeByte(type);
+			out.writeDouble(time);
+			out.writeInt(first);
+			out.writeInt(second);
+			records++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	private int getLinkCode(Id<Link> linkId) {
+		int index = linkId.index();
+		if (index >= linkCodes.length)
+			linkCodes = Arrays.copyOf(linkCodes, Math.max(index + 1, linkCodes.length * 2));
+
+		if (linkCodes[index] == 0) {
+			links.add(linkId.toString());
+			linkCodes[index] = links.size();
+		}
+		return linkCodes[index] - 1;
+	}
+
+	private int getPersonCode(Id<Person> personId) {
+		// unknown driver
+		if (personId == null)
+			return -1;
+
+		int index = personId.index();
+		if (index >= personCodes.length)
+			personCodes = Arrays.copyOf(personCodes, Math.max(index + 1, personCodes.length * 2));
+
+		if (personCodes[index] == 0) {
+			persons.add(personId.toString());
+			personCodes[index] = persons.size();
+		}
+		return personCodes[index] - 1;
+	}
+
+	private void fail(IOException e) {
+		log.warn("could not write events cache for " + eventFile + ", it will be read from xml next time", e);
+		discard();
+	}
+
+}
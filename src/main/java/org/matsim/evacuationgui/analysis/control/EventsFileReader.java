@@ -0,0 +1,49 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventsFileReader.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+
+package org.matsim.evacuationgui.analysis.control;
+
+/**
+ * reads events in the calling thread and passes them to the analysis. can be
+ * cancelled from any other thread.
+ *
+ */
+public interface EventsFileReader extends Runnable {
+
+	public interface ProgressListener {
+		/**
+		 * @param progress
+		 *            share of the file that has been read, between 0 and 1
+		 */
+		public void progressChanged(double progress);
+	}
+
+	public void setProgressListener(ProgressListener progressListener);
+
+	/**
+	 * stops reading. events that have already been handled are not
+	 * reverted.
+	 */
+	public void cancel();
+
+	public boolean isCancelled();
+
+}
@@ -0,0 +1,355 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PipelinedEventsReader.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.control;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsReaderXMLv1;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+
+/**
+ * reads an events file in three pipelined stages, each on its own thread:
+ * <ol>
+ * <li>decompression: inflates the (gzipped) file into chunks of bytes</li>
+ * <li>parsing: parses the chunks into typed events, collected in batches</li>
+ * <li>handling: passes the batches to the given events manager</li>
+ * </ol>
+ * the stages are connected by bounded queues, so a slow stage throttles the
+ * preceding ones. {@link #run()} returns once all events are handled, or the
+ * reader has been cancelled.
+ *
+ */
+public class PipelinedEventsReader implements EventsFileReader {
+
+	private static final Logger log = Logger.getLogger(PipelinedEventsReader.class);
+
+	private static final int CHUNK_SIZE = 1 << 16;
+	private static final int CHUNK_QUEUE_SIZE = 64;
+	private static final int BATCH_SIZE = 4096;
+	private static final int BATCH_QUEUE_SIZE = 16;
+
+	// end of stream markers
+	private static final byte[] LAST_CHUNK = new byte[0];
+	private static final List<Event> LAST_BATCH = new ArrayList<Event>(0);
+
+	private final String eventFile;
+	private final EventsManager events;
+
+	private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(CHUNK_QUEUE_SIZE);
+	private final BlockingQueue<List<Event>> batches = new ArrayBlockingQueue<List<Event>>(BATCH_QUEUE_SIZE);
+
+	private ProgressListener progressListener;
+	private volatile boolean cancelled = false;
+	private volatile Throwable error;
+
+	private Thread[] stages;
+
+	/**
+	 * @param events
+	 *            events manager the parsed events are passed to, the
+	 *            handlers are called from the handling thread
+	 */
+	public PipelinedEventsReader(String eventFile, EventsManager events) {
+		this.eventFile = eventFile;
+		this.events = events;
+	}
+
+	/**
+	 * progress is the share of the (compressed) file that has been read
+	 */
+	@Override
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	@Override
+	public synchronized void cancel() {
+		this.cancelled = true;
+		if (this.stages != null)
+			for (Thread stage : this.stages)
+				stage.interrupt();
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public void run() {
+		synchronized (this) {
+			if (cancelled)
+				return;
+
+			this.stages = new Thread[] { new Thread(new DecompressionStage(), "events-decompression"), new Thread(new ParsingStage(), "events-parsing"),
+					new Thread(new HandlingStage(), "events-handling") };
+
+			for (Thread stage : this.stages) {
+				stage.setDaemon(true);
+				stage.start();
+			}
+		}
+
+		try {
+			for (Thread stage : this.stages)
+				stage.join();
+		} catch (InterruptedException e) {
+			cancel();
+			Thread.currentThread().interrupt();
+		}
+
+		if (error != null)
+			throw new RuntimeException("could not read events file " + eventFile, error);
+	}
+
+	private synchronized void fail(Throwable t) {
+		// failures caused by cancelling are expected
+		if (cancelled)
+			return;
+
+		this.error = t;
+		cancel();
+		log.error("reading events file " + eventFile + " failed", t);
+	}
+
+	private void fireProgress(double progress) {
+		if (this.progressListener != null)
+			this.progressListener.progressChanged(progress);
+	}
+
+	private class DecompressionStage implements Runnable {
+
+		@Override
+		public void run() {
+			File file = new File(eventFile);
+			long length = Math.max(1, file.length());
+			int lastPercent = -1;
+
+			try (CountingInputStream counter = new CountingInputStream(new FileInputStream(file));
+					InputStream in = eventFile.endsWith(".gz") ? new GZIPInputStream(counter, CHUNK_SIZE) : new BufferedInputStream(counter, CHUNK_SIZE)) {
+
+				while (!cancelled) {
+					byte[] chunk = new byte[CHUNK_SIZE];
+					int n = 0;
+					int read;
+					while ((n < CHUNK_SIZE) && ((read = in.read(chunk, n, CHUNK_SIZE - n)) != -1))
+						n += read;
+
+					if (n == 0)
+						break;
+
+					chunks.put(n == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, n));
+
+					int percent = (int) (100 * counter.getCount() / length);
+					if (percent != lastPercent) {
+						lastPercent = percent;
+						fireProgress(percent / 100d);
+					}
+				}
+
+				chunks.put(LAST_CHUNK);
+
+			} catch (InterruptedException e) {
+				// cancelled
+			} catch (Throwable t) {
+				fail(t);
+			}
+		}
+
+	}
+
+	private class ParsingStage implements Runnable, BasicEventHandler {
+
+		private List<Event> batch = new ArrayList<Event>(BATCH_SIZE);
+
+		@Override
+		public void run() {
+			EventsManager parsedEvents = EventsUtils.createEventsManager();
+			parsedEvents.addHandler(this);
+
+			try {
+				parsedEvents.initProcessing();
+				new EventsReaderXMLv1(parsedEvents).parse(new ChunkInputStream());
+				parsedEvents.finishProcessing();
+
+				if (!cancelled) {
+					if (!batch.isEmpty())
+						batches.put(batch);
+					batches.put(LAST_BATCH);
+				}
+
+			} catch (InterruptedException e) {
+				// cancelled
+			} catch (Throwable t) {
+				fail(t);
+			}
+		}
+
+		@Override
+		public void handleEvent(Event event) {
+			batch.add(event);
+
+			if (batch.size() == BATCH_SIZE) {
+				try {
+					batches.put(batch);
+				} catch (InterruptedException e) {
+					throw new CancelledException();
+				}
+				batch = new ArrayList<Event>(BATCH_SIZE);
+			}
+		}
+
+		@Override
+		public void reset(int iteration) {
+		}
+
+	}
+
+	private class HandlingStage implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				events.initProcessing();
+
+				List<Event> batch;
+				while (((batch = batches.take()) != LAST_BATCH) && (!cancelled)) {
+					for (Event event : batch)
+						events.processEvent(event);
+				}
+
+				events.finishProcessing();
+
+			} catch (InterruptedException e) {
+				// cancelled
+			} catch (Throwable t) {
+				fail(t);
+			}
+		}
+
+	}
+
+	/**
+	 * input stream on top of the chunk queue, read by the xml parser
+	 */
+	private class ChunkInputStream extends InputStream {
+
+		private byte[] chunk = new byte[0];
+		private int position = 0;
+
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk())
+				return -1;
+			return chunk[position++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!nextChunk())
+				return -1;
+
+			int n = Math.min(len, chunk.length - position);
+			System.arraycopy(chunk, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		private boolean nextChunk() throws IOException {
+			if (chunk == LAST_CHUNK)
+				return false;
+
+			if (position < chunk.length)
+				return true;
+
+			try {
+				chunk = chunks.take();
+			} catch (InterruptedException e) {
+				throw new CancelledException();
+			}
+			position = 0;
+
+			return chunk != LAST_CHUNK;
+		}
+
+	}
+
+	/**
+	 * counts the bytes read from the underlying (compressed) file
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		private volatile long count = 0;
+
+		public CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				count += n;
+			return n;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+	}
+
+	/**
+	 * thrown from within the parser and handler callbacks to abort the
+	 * respective stage once the reader has been cancelled
+	 */
+	private static class CancelledException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+
+}
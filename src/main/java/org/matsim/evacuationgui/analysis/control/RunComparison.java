@@ -0,0 +1,174 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * RunComparison.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.control;
+
+import java.io.File;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.evacuationgui.analysis.data.Cell;
+import org.matsim.evacuationgui.analysis.data.ComparisonData;
+import org.matsim.evacuationgui.analysis.data.EventData;
+import org.matsim.evacuationgui.model.Constants.Mode;
+
+/**
+ * compares two runs of the same scenario, e.g. a baseline and a road
+ * closure variant. the variant events file is read by its own
+ * {@link EventHandler}; as both handlers use the network of the scenario
+ * and the same grid size, their cells match.
+ *
+ */
+public class RunComparison {
+
+	private static final Logger log = Logger.getLogger(RunComparison.class);
+
+	private final Scenario scenario;
+
+	private boolean useCellCount = true;
+	private double gridSize = 10;
+	private boolean streaming = false;
+
+	public RunComparison(Scenario scenario) {
+		this.scenario = scenario;
+	}
+
+	/**
+	 * @see EventHandler#setGridSize(double)
+	 */
+	public void setGridSize(boolean useCellCount, double gridSize) {
+		this.useCellCount = useCellCount;
+		this.gridSize = gridSize;
+	}
+
+	/**
+	 * @see EventHandler#isStreaming()
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * compares events read already (e.g. the ones shown) with the given
+	 * events file. the baseline handler has to use the grid size set here;
+	 * it is only queried, so its events file is not read again.
+	 */
+	public ComparisonData run(EventHandler baseline, File variantFile) {
+		return compare(baseline, read(variantFile));
+	}
+
+	private EventHandler read(File eventFile) {
+		log.info("reading " + eventFile);
+		EventHandler eventHandler = new EventHandler(useCellCount, streaming, eventFile.getName(), scenario, gridSize, null);
+		BatchAnalysis.readEvents(eventFile, eventHandler);
+		return eventHandler;
+	}
+
+	/**
+	 * @return the differences variant minus baseline. the handlers have to
+	 *         use the same network and grid size.
+	 */
+	public static ComparisonData compare(EventHandler baseline, EventHandler variant) {
+		EventData<?> baselineData = baseline.getData();
+		EventData<?> variantData = variant.getData();
+
+		// clearing times are derived along with the clearing mode
+		baselineData.prepare(Mode.CLEARING);
+		variantData.prepare(Mode.CLEARING);
+
+		if (baselineData.getCellSize() != variantData.getCellSize())
+			throw new IllegalArgumentException("the runs are not analyzed on the same grid");
+
+		ComparisonData comparison = new ComparisonData(baselineData, variantData);
+		compareCells(comparison, baseline.getCells(), variant.getCells());
+		compareLinks(comparison, baseline, variant);
+
+		return comparison;
+	}
+
+	/**
+	 * cells are paired by their index, as both grids are derived from the
+	 * same network and grid size
+	 */
+	private static void compareCells(ComparisonData comparison, Cell[] baselineCells, Cell[] variantCells) {
+		double maxEvacuation = 0;
+		double maxClearing = 0;
+		double maxUtilization = 0;
+
+		if (baselineCells.length != variantCells.length)
+			throw new IllegalArgumentException("the runs are not analyzed on the same grid");
+
+		for (int i = 0; i < baselineCells.length; i++) {
+			Cell cell = baselineCells[i];
+			Cell other = variantCells[i];
+			if ((other.getCoord().getX() != cell.getCoord().getX()) || (other.getCoord().getY() != cell.getCoord().getY()))
+				throw new IllegalArgumentException("the runs are not analyzed on the same grid");
+
+			// evacuation times only where persons departed in both runs
+			if ((cell.getCount() > 0) && (other.getCount() > 0)) {
+				double difference = other.getMedianArrivalTime() - cell.getMedianArrivalTime();
+				comparison.getCellDifferences(Mode.EVACUATION).setAttribute(cell.getId(), difference);
+				maxEvacuation = Math.max(maxEvacuation, Math.abs(difference));
+			}
+
+			if ((cell.getClearingTime() > 0) || (other.getClearingTime() > 0)) {
+				double difference = other.getClearingTime() - cell.getClearingTime();
+				comparison.getCellDifferences(Mode.CLEARING).setAttribute(cell.getId(), difference);
+				maxClearing = Math.max(maxClearing, Math.abs(difference));
+			}
+
+			if ((cell.getLinkEnterCount() > 0) || (other.getLinkEnterCount() > 0)) {
+				double difference = other.getLinkEnterCount() - cell.getLinkEnterCount();
+				comparison.getCellDifferences(Mode.UTILIZATION).setAttribute(cell.getId(), difference);
+				maxUtilization = Math.max(maxUtilization, Math.abs(difference));
+			}
+		}
+
+		comparison.setMaxCellDifference(Mode.EVACUATION, maxEvacuation);
+		comparison.setMaxCellDifference(Mode.CLEARING, maxClearing);
+		comparison.setMaxCellDifference(Mode.UTILIZATION, maxUtilization);
+	}
+
+	private static void compareLinks(ComparisonData comparison, EventHandler baseline, EventHandler variant) {
+		EventData<?> baselineData = comparison.getBaseline();
+		EventData<?> variantData = comparison.getVariant();
+
+		for (Link link : baseline.getLinkList()) {
+			Id<Link> linkId = link.getId();
+			int linkIndex = linkId.index();
+
+			double baselineMedian = baseline.getLinkMedianArrivalTime(linkIndex);
+			double variantMedian = variant.getLinkMedianArrivalTime(linkIndex);
+			if ((!Double.isNaN(baselineMedian)) && (!Double.isNaN(variantMedian)))
+				comparison.getLinkDifferences(Mode.EVACUATION).setAttribute(linkId, variantMedian - baselineMedian);
+
+			if ((baselineData.getLinkLeaveCount(linkId) > 0) || (variantData.getLinkLeaveCount(linkId) > 0))
+				comparison.getLinkDifferences(Mode.CLEARING).setAttribute(linkId, variant.getLinkClearingTime(linkIndex) - baseline.getLinkClearingTime(linkIndex));
+
+			int baselineEnterCount = baselineData.getLinkEnterCount(linkId);
+			int variantEnterCount = variantData.getLinkEnterCount(linkId);
+			if ((baselineEnterCount > 0) || (variantEnterCount > 0))
+				comparison.getLinkDifferences(Mode.UTILIZATION).setAttribute(linkId, (double) (variantEnterCount - baselineEnterCount));
+		}
+	}
+
+}
@@ -0,0 +1,275 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TilePyramidExporter.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.control;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.collections.QuadTree;
+import org.matsim.core.utils.collections.QuadTree.Rect;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.evacuationgui.analysis.data.Cell;
+import org.matsim.evacuationgui.analysis.data.Classification;
+import org.matsim.evacuationgui.analysis.data.EventData;
+import org.matsim.evacuationgui.model.Constants.Mode;
+
+/**
+ * writes the colorations of an analysis as a pyramid of png tiles
+ * (dir/mode/z/x/y.png), so a viewer only loads the tiles in view instead of
+ * drawing every cell. level 0 is a single tile covering the grid (as a
+ * square, in network coordinates), each level doubles the resolution. x
+ * grows to the east, y to the south, as for slippy map tiles. tiles without
+ * cells are not written. a metadata.json next to the modes describes the
+ * tile grid and the keys.
+ *
+ */
+public class TilePyramidExporter {
+
+	public static final int TILE_SIZE = 256;
+
+	private static final int MAX_ZOOM = 12;
+
+	// pixels per cell at the highest level, by default
+	private static final int PIXELS_PER_CELL = 16;
+
+	private final EventData<?> data;
+	private final Collection<? extends Link> links;
+	private final EventDataExporter renderer;
+
+	// upper left corner and edge length of level 0, in network coordinates
+	private final double originX;
+	private final double originY;
+	private final double extent;
+
+	private int maxZoom;
+
+	/**
+	 * @param links
+	 *            links drawn in utilization mode
+	 */
+	public TilePyramidExporter(EventData<?> data, Collection<? extends Link> links) {
+		this.data = data;
+		this.links = links;
+		this.renderer = new EventDataExporter(data, links);
+
+		double halfCell = data.getCellSize() / 2d;
+		Rect boundingBox = data.getBoundingBox();
+		this.originX = boundingBox.minX - halfCell;
+		this.originY = boundingBox.maxY + halfCell;
+		this.extent = Math.max(boundingBox.maxX - boundingBox.minX, boundingBox.maxY - boundingBox.minY) + 2 * halfCell;
+
+		setMaxZoom((int) Math.ceil(Math.log(extent * PIXELS_PER_CELL / (data.getCellSize() * TILE_SIZE)) / Math.log(2)));
+	}
+
+	/**
+	 * @param maxZoom
+	 *            highest level written, at most 12
+	 */
+	public void setMaxZoom(int maxZoom) {
+		this.maxZoom = Math.max(0, Math.min(MAX_ZOOM, maxZoom));
+	}
+
+	public int getMaxZoom() {
+		return maxZoom;
+	}
+
+	/**
+	 * @return pixel size of the given level, in network units
+	 */
+	public double getPixelSize(int zoom) {
+		return extent / ((double) TILE_SIZE * (1 << zoom));
+	}
+
+	/**
+	 * writes the tiles of all modes and the metadata
+	 */
+	public void writePyramid(File dir) {
+		for (Mode mode : Mode.values())
+			writeTiles(mode, new File(dir, getLayerName(mode)));
+		writeMetadata(new File(dir, "metadata.json").toString());
+	}
+
+	/**
+	 * writes the tiles of the given mode as dir/z/x/y.png
+	 *
+	 * @return number of tiles written
+	 */
+	public int writeTiles(Mode mode, File dir) {
+		data.prepare(mode);
+
+		QuadTree<Cell> cellTree = data.getCellTree();
+		double halfCell = data.getCellSize() / 2d;
+		int tiles = 0;
+
+		for (int z = 0; z <= maxZoom; z++) {
+			int n = 1 << z;
+			double tileExtent = extent / n;
+			double pixelSize = getPixelSize(z);
+			HashMap<Long, List<Link>> linksByTile = mode.equals(Mode.UTILIZATION) ? getLinksByTile(z) : null;
+
+			for (int x = 0; x < n; x++) {
+				for (int y = 0; y < n; y++) {
+					double tileMinX = originX + x * tileExtent;
+					double tileMaxY = originY - y * tileExtent;
+
+					List<Cell> cells = new ArrayList<Cell>();
+					cellTree.getRectangle(new Rect(tileMinX - halfCell, tileMaxY - tileExtent - halfCell, tileMinX + tileExtent + halfCell, tileMaxY + halfCell), cells);
+					if (cells.isEmpty())
+						continue;
+
+					List<Link> tileLinks = linksByTile != null ? linksByTile.get(getTileKey(x, y)) : null;
+					BufferedImage image = renderer.render(mode, tileMinX, tileMaxY, pixelSize, TILE_SIZE, TILE_SIZE, cells,
+							tileLinks != null ? tileLinks : Collections.<Link> emptyList());
+
+					File tileFile = new File(dir, z + File.separator + x + File.separator + y + ".png");
+					tileFile.getParentFile().mkdirs();
+					try {
+						ImageIO.write(image, "png", tileFile);
+					} catch (IOException e) {
+						throw new RuntimeException("could not write " + tileFile, e);
+					}
+					tiles++;
+				}
+			}
+		}
+
+		return tiles;
+	}
+
+	/**
+	 * @return the links by the tiles of the given level they (and their
+	 *         strokes, at most a quarter of a cell wide) overlap
+	 */
+	private HashMap<Long, List<Link>> getLinksByTile(int zoom) {
+		int n = 1 << zoom;
+		double tileExtent = extent / n;
+		double margin = data.getCellSize() / 8d;
+		HashMap<Long, List<Link>> linksByTile = new HashMap<Long, List<Link>>();
+
+		for (Link link : links) {
+			Coord from = link.getFromNode().getCoord();
+			Coord to = link.getToNode().getCoord();
+			int x1 = getTile(Math.min(from.getX(), to.getX()) - margin - originX, tileExtent, n);
+			int x2 = getTile(Math.max(from.getX(), to.getX()) + margin - originX, tileExtent, n);
+			int y1 = getTile(originY - Math.max(from.getY(), to.getY()) - margin, tileExtent, n);
+			int y2 = getTile(originY - Math.min(from.getY(), to.getY()) + margin, tileExtent, n);
+
+			for (int x = x1; x <= x2; x++) {
+				for (int y = y1; y <= y2; y++) {
+					Long key = getTileKey(x, y);
+					List<Link> tileLinks = linksByTile.get(key);
+					if (tileLinks == null) {
+						tileLinks = new ArrayList<Link>();
+						linksByTile.put(key, tileLinks);
+					}
+					tileLinks.add(link);
+				}
+			}
+		}
+
+		return linksByTile;
+	}
+
+	private static int getTile(double offset, double tileExtent, int n) {
+		return Math.max(0, Math.min(n - 1, (int) Math.floor(offset / tileExtent)));
+	}
+
+	private static Long getTileKey(int x, int y) {
+		return ((long) x << 32) | y;
+	}
+
+	/**
+	 * writes the tile grid (network coordinates) and the keys of all modes
+	 * as json
+	 */
+	public void writeMetadata(String filename) {
+		Rect boundingBox = data.getBoundingBox();
+
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(filename)) {
+			writer.write("{\n");
+			writer.write("  \"name\": \"" + data.getEventName().replace("\\", "\\\\").replace("\"", "\\\"") + "\",\n");
+			writer.write("  \"format\": \"png\",\n");
+			writer.write("  \"scheme\": \"xyz\",\n");
+			writer.write("  \"crs\": \"network\",\n");
+			writer.write("  \"tilesize\": " + TILE_SIZE + ",\n");
+			writer.write("  \"minzoom\": 0,\n");
+			writer.write("  \"maxzoom\": " + maxZoom + ",\n");
+			writer.write("  \"origin\": [" + originX + ", " + originY + "],\n");
+			writer.write("  \"extent\": " + extent + ",\n");
+			writer.write("  \"bounds\": [" + boundingBox.minX + ", " + boundingBox.minY + ", " + boundingBox.maxX + ", " + boundingBox.maxY + "],\n");
+			writer.write("  \"cellsize\": " + data.getCellSize() + ",\n");
+			writer.write("  \"layers\": {");
+
+			Mode[] modes = Mode.values();
+			for (int i = 0; i < modes.length; i++) {
+				String layer = getLayerName(modes[i]);
+				writer.write((i > 0 ? "," : "") + "\n    \"" + layer + "\": {\n");
+				writer.write("      \"tiles\": \"" + layer + "/{z}/{x}/{y}.png\",\n");
+				writer.write("      \"unit\": \"" + (modes[i].equals(Mode.UTILIZATION) ? "persons" : "s") + "\",\n");
+				writer.write("      \"key\": [" + getKey(modes[i]) + "]\n");
+				writer.write("    }");
+			}
+
+			writer.write("\n  }\n}\n");
+		} catch (IOException e) {
+			throw new RuntimeException("could not write " + filename, e);
+		}
+	}
+
+	/**
+	 * @return class breaks and colors, utilization scaled to the population
+	 *         as in the key panel
+	 */
+	private String getKey(Mode mode) {
+		Classification classification = data.getClusters(mode);
+		if (classification == null)
+			return "";
+
+		double scale = (mode.equals(Mode.UTILIZATION)) && (data.getSampleSize() > 0) ? 1d / data.getSampleSize() : 1d;
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < classification.size(); i++) {
+			if (i > 0)
+				key.append(", ");
+			key.append("{\"value\": " + classification.getBreaks()[i] * scale + ", \"color\": \"" + EventDataExporter.toHex(classification.getKeyColors()[i]) + "\"}");
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return directory name of the tiles of the mode
+	 */
+	public static String getLayerName(Mode mode) {
+		return mode.toString().toLowerCase(Locale.ROOT);
+	}
+
+}
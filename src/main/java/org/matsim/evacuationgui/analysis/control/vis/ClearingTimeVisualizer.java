@@ -21,83 +21,88 @@
 package org.matsim.evacuationgui.analysis.control.vis;
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.evacuationgui.analysis.control.Clusterizer;
 import org.matsim.evacuationgui.analysis.data.AttributeData;
 import org.matsim.evacuationgui.analysis.data.Cell;
+import org.matsim.evacuationgui.analysis.data.Classification;
 import org.matsim.evacuationgui.analysis.data.ColorationMode;
 import org.matsim.evacuationgui.analysis.data.EventData;
-import org.matsim.evacuationgui.model.Constants.Mode;
-import org.matsim.core.utils.collections.Tuple;
 
 public class ClearingTimeVisualizer {
 
 	private AttributeData<Color> coloration;
+	private Classification classification;
 	private EventData data;
+	private Clusterizer clusterizer;
 	private int k;
 	private ColorationMode colorationMode;
 	private float cellTransparency;
-	private Clusterizer clusterizer;
+
+	// class breaks and the class of each cell, independent of the colors
+	private List<Id<Cell>> cellIds;
+	private double[] breaks;
+	private int[] classes;
 
 	public ClearingTimeVisualizer(EventData eventData, Clusterizer clusterizer, int k, ColorationMode colorationMode, float cellTransparency) {
 		this.data = eventData;
-		this.colorationMode = colorationMode;
+		this.cellTransparency = cellTransparency;
 		this.clusterizer = clusterizer;
 		this.k = k;
-		this.cellTransparency = cellTransparency;
+		this.colorationMode = colorationMode;
+		classify();
 		processVisualData();
-
 	}
 
 	public void setColorationMode(ColorationMode colorationMode) {
 		this.colorationMode = colorationMode;
 	}
 
-	public void processVisualData() {
-		LinkedList<Tuple<Id<Cell>, Double>> cellIdsAndTimes = new LinkedList<>();
-		LinkedList<Double> cellTimes = new LinkedList<Double>();
+	public ColorationMode getColorationMode() {
+		return colorationMode;
+	}
+
+	public void setCellTransparency(float cellTransparency) {
+		this.cellTransparency = cellTransparency;
+	}
 
-		// create new coloration (id <-> color relation)
-		coloration = new AttributeData<Color>();
+	public float getCellTransparency() {
+		return cellTransparency;
+	}
 
-		// get cells
+	/**
+	 * classifies the clearing times of the cells
+	 */
+	private void classify() {
 		LinkedList<Cell> cells = data.getCells();
+		double[] times = new double[cells.size()];
+		this.cellIds = new ArrayList<Id<Cell>>(cells.size());
+		int i = 0;
 		for (Cell cell : cells) {
-			// System.out.println("cellid:" + cell.getId());
-			if (!cellTimes.contains(cell.getClearingTime())) {
-				cellTimes.add(cell.getClearingTime());
-				cellIdsAndTimes.add(new Tuple<Id<Cell>, Double>(cell.getId(), cell.getClearingTime()));
-			}
-
-			
+			times[i++] = cell.getClearingTime();
+			this.cellIds.add(cell.getId());
 		}
 
-	
-		// calculate data clusters
-
-		LinkedList<Tuple<Id<Cell>, Double>> clusters = this.clusterizer.getClusters(cellIdsAndTimes, k);
-		this.data.updateClusters(Mode.CLEARING, clusters);
-
+		// calculate data clusters, duplicate values are counted once
+		this.breaks = this.clusterizer.getBreaks(Clusterizer.getDistinctValues(times), k);
+		this.classes = Clusterizer.getClasses(times, breaks);
+	}
 
-		for (Cell cell : cells) {
-			double clearingTime = cell.getClearingTime();
-
-			if (clearingTime < clusters.get(0).getSecond()) {
-				coloration.setAttribute(cell.getId(), Coloration.getColor(0, colorationMode, cellTransparency));
-				continue;
-			}
-			for (int i = 1; i < k; i++) {
-				if ((clearingTime >= clusters.get(i - 1).getSecond()) && clearingTime < clusters.get(i).getSecond()) {
-					float ik = (float) i / (float) k;
-					coloration.setAttribute(cell.getId(), Coloration.getColor(ik, colorationMode, cellTransparency));
-					break;
-				}
-			}
-			if (clearingTime >= clusters.get(k - 1).getSecond())
-				coloration.setAttribute(cell.getId(), Coloration.getColor(1, colorationMode, cellTransparency));
+	/**
+	 * colors the classes with the current coloration mode and transparency
+	 */
+	public void processVisualData() {
+		Color[] classColors = Coloration.getClassColors(k, colorationMode, cellTransparency);
+		this.classification = new Classification(breaks, Coloration.getKeyColors(breaks, classColors));
 
+		this.coloration = new AttributeData<Color>();
+		for (int i = 0; i < classes.length; i++) {
+			if (classes[i] >= 0)
+				coloration.setAttribute(cellIds.get(i), classColors[classes[i]]);
 		}
 
 	}
@@ -106,4 +111,8 @@ public class ClearingTimeVisualizer {
 		return coloration;
 	}
 
+	public Classification getClassification() {
+		return classification;
+	}
+
 }
@@ -22,6 +22,7 @@ package org.matsim.evacuationgui.analysis.control.vis;
 
 import java.awt.Color;
 
+import org.matsim.evacuationgui.analysis.control.Clusterizer;
 import org.matsim.evacuationgui.analysis.data.ColorationMode;
 
 public class Coloration {
@@ -59,4 +60,44 @@ public class Coloration {
 		return color;
 	}
 
+	/**
+	 * diverging palette for differences: blue (-1, lower than the baseline)
+	 * over white (0) to red (1, higher than the baseline)
+	 */
+	public static Color getDivergingColor(double value, float alpha) {
+		double v = Math.max(-1d, Math.min(1d, value));
+		int alphaInt = (int) (255 * alpha);
+
+		if (v < 0) {
+			int c = (int) (255 * (1 + v));
+			return new Color(c, c, 255, alphaInt);
+		}
+
+		int c = (int) (255 * (1 - v));
+		return new Color(255, c, c, alphaInt);
+	}
+
+	/**
+	 * @return the colors of the classes 0 to k, for the relative values 0,
+	 *         1/k, ..., 1
+	 */
+	public static Color[] getClassColors(int k, ColorationMode mode, float alpha) {
+		Color[] colors = new Color[k + 1];
+		colors[0] = getColor(0, mode, alpha);
+		for (int i = 1; i < k; i++)
+			colors[i] = getColor((float) i / (float) k, mode, alpha);
+		colors[k] = getColor(1, mode, alpha);
+		return colors;
+	}
+
+	/**
+	 * @return the color of the class each break belongs to
+	 */
+	public static Color[] getKeyColors(double[] breaks, Color[] classColors) {
+		Color[] colors = new Color[breaks.length];
+		for (int i = 0; i < breaks.length; i++)
+			colors[i] = classColors[Clusterizer.getClassOf(breaks, breaks[i])];
+		return colors;
+	}
+
 }
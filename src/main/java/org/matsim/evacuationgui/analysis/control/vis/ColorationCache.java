@@ -0,0 +1,163 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ColorationCache.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.control.vis;
+
+import java.awt.Color;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.evacuationgui.analysis.control.Clusterizer;
+import org.matsim.evacuationgui.analysis.data.AttributeData;
+import org.matsim.evacuationgui.analysis.data.Classification;
+import org.matsim.evacuationgui.analysis.data.ClassificationMode;
+import org.matsim.evacuationgui.analysis.data.ColorationMode;
+import org.matsim.evacuationgui.analysis.data.EventData;
+import org.matsim.evacuationgui.model.Constants.Mode;
+import org.matsim.core.utils.collections.Tuple;
+
+/**
+ * colorations of one analysis snapshot (grid). the classes are kept per
+ * mode, number of classes and classification mode, the colors per
+ * coloration mode and transparency. a palette or transparency change only
+ * maps the classes to new colors, the values are not classified again.
+ * each mode is only classified once it is requested.
+ *
+ */
+public class ColorationCache {
+
+	private static final int MAX_PALETTES = 8;
+
+	private final List<Link> links;
+
+	// classification of the current snapshot
+	private int k = -1;
+	private ClassificationMode classificationMode;
+	private EvacuationTimeVisualizer evacuationTimeVisualizer;
+	private ClearingTimeVisualizer clearingTimeVisualizer;
+	private UtilizationVisualizer utilizationVisualizer;
+
+	// colors of the classes and keys, by mode, coloration mode and
+	// transparency
+	private final Map<String, Palette> palettes = new LinkedHashMap<String, Palette>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Palette> eldest) {
+			return size() > MAX_PALETTES * Mode.values().length;
+		}
+	};
+
+	/**
+	 * @param links
+	 *            links colored in utilization mode
+	 */
+	public ColorationCache(List<Link> links) {
+		this.links = links;
+	}
+
+	/**
+	 * drops all classes and colors, e.g. once the grid has changed
+	 */
+	public synchronized void invalidate() {
+		this.k = -1;
+		this.evacuationTimeVisualizer = null;
+		this.clearingTimeVisualizer = null;
+		this.utilizationVisualizer = null;
+		this.palettes.clear();
+	}
+
+	/**
+	 * sets the coloration and clusters of the given mode of the data. the
+	 * data has to belong to the snapshot the cache was last invalidated for.
+	 */
+	public synchronized void apply(EventData eventData, Mode mode, int k, ClassificationMode classificationMode, ColorationMode colorationMode, float transparency) {
+		if ((this.k != k) || (!classificationMode.equals(this.classificationMode))) {
+			invalidate();
+			this.k = k;
+			this.classificationMode = classificationMode;
+		}
+
+		String key = mode + ":" + colorationMode + ":" + transparency;
+		Palette palette = palettes.get(key);
+		if (palette == null) {
+			palette = getPalette(eventData, mode, colorationMode, transparency);
+			palettes.put(key, palette);
+		}
+
+		if (mode.equals(Mode.EVACUATION))
+			eventData.setEvacuationTimeVisData(palette.cellColoration);
+		else if (mode.equals(Mode.CLEARING))
+			eventData.setClearingTimeVisData(palette.cellColoration);
+		else
+			eventData.setLinkUtilizationVisData(palette.linkColoration);
+		eventData.updateClusters(mode, palette.classification);
+	}
+
+	private Palette getPalette(EventData eventData, Mode mode, ColorationMode colorationMode, float transparency) {
+		Palette palette = new Palette();
+
+		// visualizers that have just been created are colored already
+		if (mode.equals(Mode.EVACUATION)) {
+			if (evacuationTimeVisualizer == null)
+				evacuationTimeVisualizer = new EvacuationTimeVisualizer(eventData, new Clusterizer(classificationMode), k, colorationMode, transparency);
+			else if ((!colorationMode.equals(evacuationTimeVisualizer.getColorationMode())) || (transparency != evacuationTimeVisualizer.getCellTransparency())) {
+				evacuationTimeVisualizer.setColorationMode(colorationMode);
+				evacuationTimeVisualizer.setCellTransparency(transparency);
+				evacuationTimeVisualizer.processVisualData();
+			}
+			palette.cellColoration = evacuationTimeVisualizer.getColoration();
+			palette.classification = evacuationTimeVisualizer.getClassification();
+
+		} else if (mode.equals(Mode.CLEARING)) {
+			if (clearingTimeVisualizer == null)
+				clearingTimeVisualizer = new ClearingTimeVisualizer(eventData, new Clusterizer(classificationMode), k, colorationMode, transparency);
+			else if ((!colorationMode.equals(clearingTimeVisualizer.getColorationMode())) || (transparency != clearingTimeVisualizer.getCellTransparency())) {
+				clearingTimeVisualizer.setColorationMode(colorationMode);
+				clearingTimeVisualizer.setCellTransparency(transparency);
+				clearingTimeVisualizer.processVisualData();
+			}
+			palette.cellColoration = clearingTimeVisualizer.getColoration();
+			palette.classification = clearingTimeVisualizer.getClassification();
+
+		} else {
+			if (utilizationVisualizer == null)
+				utilizationVisualizer = new UtilizationVisualizer(links, eventData, new Clusterizer(classificationMode), k, colorationMode, transparency);
+			else if ((!colorationMode.equals(utilizationVisualizer.getColorationMode())) || (transparency != utilizationVisualizer.getCellTransparency())) {
+				utilizationVisualizer.setColorationMode(colorationMode);
+				utilizationVisualizer.setCellTransparency(transparency);
+				utilizationVisualizer.processVisualData();
+			}
+			palette.linkColoration = utilizationVisualizer.getColoration();
+			palette.classification = utilizationVisualizer.getClassification();
+		}
+
+		return palette;
+	}
+
+	private static class Palette {
+		private AttributeData<Color> cellColoration;
+		private AttributeData<Tuple<Float, Color>> linkColoration;
+		private Classification classification;
+	}
+
+}
@@ -0,0 +1,92 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * DifferenceVisualizer.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.control.vis;
+
+import java.awt.Color;
+import java.util.Map;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.evacuationgui.analysis.data.AttributeData;
+import org.matsim.evacuationgui.analysis.data.Classification;
+import org.matsim.evacuationgui.analysis.data.ComparisonData;
+import org.matsim.evacuationgui.model.Constants.Mode;
+import org.matsim.core.utils.collections.Tuple;
+
+/**
+ * colors the differences of a comparison with a diverging palette, scaled
+ * symmetrically by the largest absolute difference of each mode: cells and
+ * links with no change are white, lower values blue, higher values red.
+ *
+ */
+public class DifferenceVisualizer {
+
+	private final ComparisonData data;
+	private final int k;
+	private float cellTransparency;
+
+	public DifferenceVisualizer(ComparisonData data, int k, float cellTransparency) {
+		this.data = data;
+		this.k = Math.max(2, k);
+		this.cellTransparency = cellTransparency;
+		processVisualData();
+	}
+
+	public void setCellTransparency(float cellTransparency) {
+		this.cellTransparency = cellTransparency;
+	}
+
+	public void processVisualData() {
+		for (Mode mode : Mode.values()) {
+			double max = data.getMaxCellDifference(mode);
+
+			AttributeData<Color> coloration = new AttributeData<Color>();
+			for (Map.Entry<Id<?>, Double> difference : data.getCellDifferences(mode).getAttributeData().entrySet())
+				coloration.setAttribute(difference.getKey(), getColor(difference.getValue(), max));
+			data.setCellColoration(mode, coloration);
+
+			// k breaks from -max to max
+			double[] breaks = new double[k];
+			Color[] keyColors = new Color[k];
+			for (int i = 0; i < k; i++) {
+				breaks[i] = -max + 2 * max * i / (k - 1);
+				keyColors[i] = getColor(breaks[i], max);
+			}
+			data.setClassification(mode, new Classification(breaks, keyColors));
+		}
+
+		AttributeData<Double> linkDifferences = data.getLinkDifferences(Mode.UTILIZATION);
+		double max = 0;
+		for (double difference : linkDifferences.getAttributeData().values())
+			max = Math.max(max, Math.abs(difference));
+
+		AttributeData<Tuple<Float, Color>> linkColoration = new AttributeData<Tuple<Float, Color>>();
+		for (Map.Entry<Id<?>, Double> difference : linkDifferences.getAttributeData().entrySet()) {
+			float width = max > 0 ? (float) (Math.abs(difference.getValue()) / max) : 0f;
+			linkColoration.setAttribute(difference.getKey(), new Tuple<Float, Color>(width, getColor(difference.getValue(), max)));
+		}
+		data.setLinkColoration(linkColoration);
+	}
+
+	private Color getColor(double difference, double max) {
+		return Coloration.getDivergingColor(max > 0 ? difference / max : 0d, cellTransparency);
+	}
+
+}
@@ -21,29 +21,34 @@
 package org.matsim.evacuationgui.analysis.control.vis;
 
 import java.awt.Color;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.api.core.v01.population.Person;
 import org.matsim.evacuationgui.analysis.control.Clusterizer;
 import org.matsim.evacuationgui.analysis.data.AttributeData;
+import org.matsim.evacuationgui.analysis.data.Classification;
 import org.matsim.evacuationgui.analysis.data.ColorationMode;
 import org.matsim.evacuationgui.analysis.data.EventData;
-import org.matsim.evacuationgui.model.Constants.Mode;
 import org.matsim.core.utils.collections.Tuple;
 
 public class UtilizationVisualizer {
 
 	private AttributeData<Tuple<Float, Color>> coloration;
+	private Classification classification;
 	private final List<Link> links;
 	private final EventData data;
 	private final Clusterizer clusterizer;
 	private final int k;
 	private ColorationMode colorationMode;
-	private final float cellTransparency;
+	private float cellTransparency;
+
+	// class breaks and the class of each used link, independent of the colors
+	private List<Id<Link>> linkIds;
+	private double[] breaks;
+	private int[] classes;
 
 	public UtilizationVisualizer(List<Link> links, EventData eventData, Clusterizer clusterizer, int k, ColorationMode colorationMode, float cellTransparency) {
 		this.links = links;
@@ -52,6 +57,7 @@ public class UtilizationVisualizer {
 		this.k = k;
 		this.colorationMode = colorationMode;
 		this.cellTransparency = cellTransparency;
+		classify();
 		processVisualData();
 
 	}
@@ -60,60 +66,71 @@ public class UtilizationVisualizer {
 		this.colorationMode = colorationMode;
 	}
 
-	public void processVisualData() {
-		LinkedList<Tuple<Id<Link>, Double>> linkTimes = new LinkedList<>();
+	public ColorationMode getColorationMode() {
+		return colorationMode;
+	}
 
-		this.coloration = new AttributeData<Tuple<Float, Color>>();
+	public void setCellTransparency(float cellTransparency) {
+		this.cellTransparency = cellTransparency;
+	}
 
-		HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> linkLeaveTimes = this.data.getLinkLeaveTimes();
-		HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> linkEnterTimes = this.data.getLinkEnterTimes();
+	public float getCellTransparency() {
+		return cellTransparency;
+	}
 
+	/**
+	 * classifies the links by their leave counts
+	 */
+	private void classify() {
+		double[] leaveCounts = new double[this.links.size()];
+		double[] enterCounts = new double[this.links.size()];
+		this.linkIds = new ArrayList<Id<Link>>();
+		int n = 0;
+		int m = 0;
 		for (Link link : this.links) {
-			List<Tuple<Id<Person>, Double>> leaveTimes = linkLeaveTimes.get(link.getId());
-			List<Tuple<Id<Person>, Double>> enterTimes = linkEnterTimes.get(link.getId());
+			int leaveCount = this.data.getLinkLeaveCount(link.getId());
+			int enterCount = this.data.getLinkEnterCount(link.getId());
 
-			if ((enterTimes != null) && (enterTimes.size() > 0) && (leaveTimes != null)) {
-
-//				if (!linkTimes.contains(enterTimes.size())) {
-					linkTimes.add(new Tuple<Id<Link>, Double>(link.getId(), (double) leaveTimes.size()));
-//				}
+			if ((enterCount > 0) && (leaveCount > 0))
+				leaveCounts[n++] = leaveCount;
 
+			if (enterCount > 0) {
+				enterCounts[m++] = enterCount;
+				this.linkIds.add(link.getId());
 			}
 		}
 
-		LinkedList<Tuple<Id<Link>, Double>> clusters = this.clusterizer.getClusters(linkTimes, this.k);
-
 		// calculate data clusters
-		this.data.updateClusters(Mode.UTILIZATION, clusters);
+		this.breaks = this.clusterizer.getBreaks(Arrays.copyOf(leaveCounts, n), this.k);
+		this.classes = Clusterizer.getClasses(Arrays.copyOf(enterCounts, m), this.breaks);
+	}
 
+	/**
+	 * colors the classes with the current coloration mode and transparency
+	 */
+	public void processVisualData() {
+		Color[] classColors = Coloration.getClassColors(this.k, this.colorationMode, this.cellTransparency);
+		this.classification = new Classification(this.breaks, Coloration.getKeyColors(this.breaks, classColors));
 
-		// assign clusterized colors to all link ids
-		for (Link link : this.links) {
-			List<Tuple<Id<Person>, Double>> enterTimes = linkEnterTimes.get(link.getId());
-
-			if ((enterTimes != null) && (enterTimes.size() > 0)) {
-				double enterTime = enterTimes.size();
-
-				if (enterTime < clusters.get(0).getSecond()) {
-					this.coloration.setAttribute(link.getId(), new Tuple<Float, Color>(0f, Coloration.getColor(0, this.colorationMode, this.cellTransparency)));
-					continue;
-				}
-				for (int i = 1; i < this.k; i++) {
-					if ((enterTime >= clusters.get(i - 1).getSecond()) && enterTime < clusters.get(i).getSecond()) {
-						float ik = (float) i / (float) this.k;
-						this.coloration.setAttribute(link.getId(), new Tuple<Float, Color>(ik, Coloration.getColor(ik, this.colorationMode, this.cellTransparency)));
-						break;
-					}
-				}
-				if (enterTime >= clusters.get(this.k - 1).getSecond())
-					this.coloration.setAttribute(link.getId(), new Tuple<Float, Color>(1f, Coloration.getColor(1f, this.colorationMode, this.cellTransparency)));
-			}
+		List<Tuple<Float, Color>> classColorations = new ArrayList<Tuple<Float, Color>>();
+		for (int c = 0; c <= this.k; c++) {
+			float ik = c < this.k ? (float) c / (float) this.k : 1f;
+			classColorations.add(new Tuple<Float, Color>(ik, classColors[c]));
 		}
 
+		// assign clusterized colors to all used link ids
+		this.coloration = new AttributeData<Tuple<Float, Color>>();
+		for (int i = 0; i < this.classes.length; i++)
+			this.coloration.setAttribute(this.linkIds.get(i), classColorations.get(this.classes[i]));
+
 	}
 
 	public AttributeData<Tuple<Float, Color>> getColoration() {
 		return this.coloration;
 	}
 
+	public Classification getClassification() {
+		return classification;
+	}
+
 }
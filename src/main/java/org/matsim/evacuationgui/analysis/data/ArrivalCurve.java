@@ -0,0 +1,138 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ArrivalCurve.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import java.util.List;
+
+import org.matsim.core.utils.collections.Tuple;
+
+/**
+ * cumulative arrivals over time as primitive arrays. for display, the curve
+ * can be reduced to a given number of points with the largest triangle
+ * three buckets algorithm, which keeps the points that shape the curve
+ * (steps, plateaus) instead of every n-th one.
+ *
+ */
+public class ArrivalCurve {
+
+	private final double[] times;
+	private final double[] arrivals;
+
+	public ArrivalCurve(double[] times, double[] arrivals) {
+		this.times = times;
+		this.arrivals = arrivals;
+	}
+
+	/**
+	 * @param arrivalTimes
+	 *            (time, cumulative arrivals) tuples, ascending in time
+	 * @param sampleSize
+	 *            the arrivals are divided by
+	 */
+	public static ArrivalCurve create(List<Tuple<Double, Integer>> arrivalTimes, double sampleSize) {
+		int n = arrivalTimes.size();
+		double[] times = new double[n];
+		double[] arrivals = new double[n];
+
+		int i = 0;
+		for (Tuple<Double, Integer> arrival : arrivalTimes) {
+			times[i] = arrival.getFirst();
+			arrivals[i] = arrival.getSecond() / sampleSize;
+			i++;
+		}
+
+		return new ArrivalCurve(times, arrivals);
+	}
+
+	public int size() {
+		return times.length;
+	}
+
+	public double getTime(int i) {
+		return times[i];
+	}
+
+	public double getArrivals(int i) {
+		return arrivals[i];
+	}
+
+	/**
+	 * @return the curve reduced to at most maxPoints points (including the
+	 *         first and the last one), or this curve if it is small enough
+	 */
+	public ArrivalCurve getDownsampled(int maxPoints) {
+		int n = times.length;
+		if ((maxPoints >= n) || (maxPoints < 3))
+			return this;
+
+		double[] sampledTimes = new double[maxPoints];
+		double[] sampledArrivals = new double[maxPoints];
+
+		sampledTimes[0] = times[0];
+		sampledArrivals[0] = arrivals[0];
+
+		// the inner points are split into maxPoints - 2 buckets. from each
+		// bucket, the point spanning the largest triangle with the previously
+		// selected point and the mean of the next bucket is kept.
+		double bucketSize = (double) (n - 2) / (maxPoints - 2);
+		int selected = 0;
+
+		for (int b = 0; b < maxPoints - 2; b++) {
+			int from = (int) (b * bucketSize) + 1;
+			int to = (int) ((b + 1) * bucketSize) + 1;
+
+			int nextFrom = to;
+			int nextTo = Math.min(n, (int) ((b + 2) * bucketSize) + 1);
+			double meanTime = 0;
+			double meanArrivals = 0;
+			for (int i = nextFrom; i < nextTo; i++) {
+				meanTime += times[i];
+				meanArrivals += arrivals[i];
+			}
+			int nextCount = nextTo - nextFrom;
+			meanTime /= nextCount;
+			meanArrivals /= nextCount;
+
+			double selectedTime = times[selected];
+			double selectedArrivals = arrivals[selected];
+
+			double maxArea = -1;
+			int maxIndex = from;
+			for (int i = from; i < to; i++) {
+				double area = Math.abs((selectedTime - meanTime) * (arrivals[i] - selectedArrivals) - (selectedTime - times[i]) * (meanArrivals - selectedArrivals));
+				if (area > maxArea) {
+					maxArea = area;
+					maxIndex = i;
+				}
+			}
+
+			sampledTimes[b + 1] = times[maxIndex];
+			sampledArrivals[b + 1] = arrivals[maxIndex];
+			selected = maxIndex;
+		}
+
+		sampledTimes[maxPoints - 1] = times[n - 1];
+		sampledArrivals[maxPoints - 1] = arrivals[n - 1];
+
+		return new ArrivalCurve(sampledTimes, sampledArrivals);
+	}
+
+}
@@ -20,41 +20,77 @@
 
 package org.matsim.evacuationgui.analysis.data;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.Event;
-import org.matsim.api.core.v01.network.Link;
-import org.matsim.api.core.v01.population.Person;
-import org.matsim.core.utils.collections.Tuple;
 
 public class Cell {
 	private double timeSum;
 	private int count;
 	private List<Event> data;
-	private List<Double> arrivalTimes;
-	private List<Tuple<Tuple<Id<Link>, Id<Person>>, Double>> linkLeaveTimes;
-	private List<Tuple<Tuple<Id<Link>, Id<Person>>, Double>> linkEnterTimes;
+	// exact arrival times: the first arrivalTimeCount entries, ascending
+	// as long as arrivalTimesSorted is set (arrivals are usually added in
+	// time order)
+	private double[] arrivalTimes;
+	private boolean arrivalTimesSorted;
+	private QuantileSketch arrivalTimeSketch;
+	private double arrivalTimeSum;
+	private int arrivalTimeCount;
+	private double medianArrivalTime = Double.NaN;
+	private int linkLeaveCount;
+	private int linkEnterCount;
 	private Coord coord;
 	private double clearingTime;
 	private Id<Cell> id;
 
-	private static int currentId = 0;
+	// per time bin the cell has events in (ascending): vehicles on the
+	// links of the cell (at the end of the bin), departures within the bin
+	// and arrivals until the end of the bin. bins without events keep the
+	// values of the previous one and have no departures.
+	private int[] timeBins;
+	private int[] occupancyByTimeBin;
+	private int[] departuresByTimeBin;
+	private int[] arrivalsByTimeBin;
+
+	// grids are built by several threads at once (batch, comparison,
+	// snapshots), ids have to stay unique
+	private static final AtomicInteger currentId = new AtomicInteger();
 
 	public static String CELLSIZE = "cellsize";
 
 	public Cell(List<Event> data) {
 		this.data = data;
-		this.linkLeaveTimes = new ArrayList<>();
-		this.linkEnterTimes = new ArrayList<>();
-		this.arrivalTimes = new ArrayList<Double>();
+		this.arrivalTimes = new double[4];
+		this.arrivalTimesSorted = true;
+		this.clearingTime = 0d;
+
+		this.id = Id.create(currentId.incrementAndGet(), Cell.class);
+	}
+
+	/**
+	 * cell without event data, as derived from link aggregates
+	 */
+	public Cell() {
+		this.arrivalTimes = new double[4];
+		this.arrivalTimesSorted = true;
+		this.clearingTime = 0d;
+
+		this.id = Id.create(currentId.incrementAndGet(), Cell.class);
+	}
+
+	/**
+	 * cell for streaming analysis: single arrival times are not kept, they
+	 * are summarized in the given quantile sketch.
+	 */
+	public Cell(QuantileSketch arrivalTimeSketch) {
+		this.arrivalTimeSketch = arrivalTimeSketch;
 		this.clearingTime = 0d;
 
-		currentId++;
-		this.id = Id.create(currentId, Cell.class);
+		this.id = Id.create(currentId.incrementAndGet(), Cell.class);
 	}
 
 	public double getTimeSum() {
@@ -85,42 +121,53 @@ public class Cell {
 		this.data = data;
 	}
 
-	public void setArrivalTimes(List<Double> arrivalTimes) {
-		this.arrivalTimes = arrivalTimes;
-	}
+	public void setArrivalTimes(double[] arrivalTimes) {
+		this.arrivalTimes = Arrays.copyOf(arrivalTimes, Math.max(4, arrivalTimes.length));
+		this.arrivalTimeCount = arrivalTimes.length;
+		this.arrivalTimesSorted = false;
+		this.medianArrivalTime = Double.NaN;
 
-	public List<Double> getArrivalTimes() {
-		return arrivalTimes;
+		this.arrivalTimeSum = 0d;
+		for (double time : arrivalTimes)
+			this.arrivalTimeSum += time;
 	}
 
-	public List<Tuple<Tuple<Id<Link>, Id<Person>>, Double>> getLinkEnterTimes() {
-		return linkEnterTimes;
+	/**
+	 * @return copy of the exact arrival times, null for cells summarizing
+	 *         them in a quantile sketch
+	 */
+	public double[] getArrivalTimes() {
+		if (arrivalTimes == null)
+			return null;
+		return Arrays.copyOf(arrivalTimes, arrivalTimeCount);
 	}
 
-	public List<Tuple<Tuple<Id<Link>, Id<Person>>, Double>> getLinkLeaveTimes() {
-		return linkLeaveTimes;
+	public int getArrivalTimeCount() {
+		return arrivalTimeCount;
 	}
 
-	public void setLinkEnterTimes(List<Tuple<Tuple<Id<Link>, Id<Person>>, Double>> linkEnterTimes) {
-		this.linkEnterTimes = linkEnterTimes;
+	public int getLinkEnterCount() {
+		return linkEnterCount;
 	}
 
-	public void setLinkLeaveTimes(List<Tuple<Tuple<Id<Link>, Id<Person>>, Double>> linkLeaveTimes) {
-		this.linkLeaveTimes = linkLeaveTimes;
+	public int getLinkLeaveCount() {
+		return linkLeaveCount;
 	}
 
-	public void addLinkEnterTime(Id<Link> linkId, Id<Person> personId, Double time) {
-		if (this.linkEnterTimes == null)
-			this.linkEnterTimes = new ArrayList<>();
+	public void incrementLinkEnterCount() {
+		this.linkEnterCount++;
+	}
 
-		this.linkEnterTimes.add(new Tuple<Tuple<Id<Link>, Id<Person>>, Double>(new Tuple<Id<Link>, Id<Person>>(linkId, personId), time));
+	public void incrementLinkLeaveCount() {
+		this.linkLeaveCount++;
 	}
 
-	public void addLinkLeaveTime(Id<Link> linkId, Id<Person> personId, Double time) {
-		if (this.linkLeaveTimes == null)
-			this.linkLeaveTimes = new ArrayList<Tuple<Tuple<Id<Link>, Id<Person>>, Double>>();
+	public void addLinkEnterCount(int count) {
+		this.linkEnterCount += count;
+	}
 
-		this.linkLeaveTimes.add(new Tuple<Tuple<Id<Link>, Id<Person>>, Double>(new Tuple<Id<Link>, Id<Person>>(linkId, personId), time));
+	public void addLinkLeaveCount(int count) {
+		this.linkLeaveCount += count;
 	}
 
 	public void setCoord(Coord centroid) {
@@ -145,36 +192,168 @@ public class Cell {
 	}
 
 	public void addArrivalTime(double time) {
-		arrivalTimes.add(time);
+		if (arrivalTimes != null) {
+			if (arrivalTimeCount == arrivalTimes.length)
+				arrivalTimes = Arrays.copyOf(arrivalTimes, arrivalTimeCount * 2);
+			if ((arrivalTimeCount > 0) && (time < arrivalTimes[arrivalTimeCount - 1]))
+				arrivalTimesSorted = false;
+			arrivalTimes[arrivalTimeCount] = time;
+		} else
+			arrivalTimeSketch.add(time);
+
+		arrivalTimeSum += time;
+		arrivalTimeCount++;
+		medianArrivalTime = Double.NaN;
 	}
 
-	public double getMeanArrivalTime() {
-		double mean = 0d;
+	/**
+	 * adds summarized arrival times, e.g. of a single link. only available
+	 * for cells created with a quantile sketch.
+	 *
+	 * @param sum
+	 *            sum of the arrival times in the sketch
+	 */
+	public void addArrivalTimes(QuantileSketch arrivalTimes, double sum) {
+		arrivalTimeSum += sum;
+		arrivalTimeCount += arrivalTimes.getCount();
+		arrivalTimeSketch.merge(arrivalTimes);
+		medianArrivalTime = Double.NaN;
+	}
 
-		for (double time : this.arrivalTimes)
-			mean += time;
+	/**
+	 * adds counts, sums and arrival times of the other cell, e.g. when
+	 * coarsening the grid. both cells have to keep their arrival times the
+	 * same way (exact or in a quantile sketch). time bins are not merged.
+	 */
+	public void merge(Cell other) {
+		if ((arrivalTimes == null) != (other.arrivalTimes == null))
+			throw new IllegalArgumentException("cannot merge exact arrival times with a quantile sketch");
+
+		count += other.count;
+		timeSum += other.timeSum;
+		linkEnterCount += other.linkEnterCount;
+		linkLeaveCount += other.linkLeaveCount;
+		updateClearanceTime(other.clearingTime);
+
+		if (arrivalTimes != null)
+			mergeArrivalTimes(other);
+		else
+			arrivalTimeSketch.merge(other.arrivalTimeSketch);
+
+		arrivalTimeSum += other.arrivalTimeSum;
+		arrivalTimeCount += other.arrivalTimeCount;
+		medianArrivalTime = Double.NaN;
+	}
+
+	/**
+	 * merges two sorted runs in linear time, otherwise appends
+	 */
+	private void mergeArrivalTimes(Cell other) {
+		int n = arrivalTimeCount;
+		int m = other.arrivalTimeCount;
+		double[] merged = new double[Math.max(4, n + m)];
+
+		if ((arrivalTimesSorted) && (other.arrivalTimesSorted)) {
+			int i = 0;
+			int j = 0;
+			int k = 0;
+			while ((i < n) && (j < m))
+				merged[k++] = arrivalTimes[i] <= other.arrivalTimes[j] ? arrivalTimes[i++] : other.arrivalTimes[j++];
+			while (i < n)
+				merged[k++] = arrivalTimes[i++];
+			while (j < m)
+				merged[k++] = other.arrivalTimes[j++];
+		} else {
+			System.arraycopy(arrivalTimes, 0, merged, 0, n);
+			System.arraycopy(other.arrivalTimes, 0, merged, n, m);
+			arrivalTimesSorted = false;
+		}
 
-		return mean / this.arrivalTimes.size();
+		arrivalTimes = merged;
 	}
 
-	public double getMedianArrivalTime() {
-		if (this.arrivalTimes.size() < 1)
-			return 0d;
+	public double getMeanArrivalTime() {
+		return arrivalTimeSum / arrivalTimeCount;
+	}
 
-		Collections.sort(this.arrivalTimes);
+	/**
+	 * exact for cells keeping their arrival times (sorted at most once after
+	 * unordered additions), estimated otherwise. cached until the next
+	 * arrival time is added.
+	 */
+	public double getMedianArrivalTime() {
+		if (!Double.isNaN(medianArrivalTime))
+			return medianArrivalTime;
 
-		if (this.arrivalTimes.size() % 2 == 1)
-			return this.arrivalTimes.get((this.arrivalTimes.size() + 1) / 2 - 1);
+		if (arrivalTimes == null)
+			medianArrivalTime = arrivalTimeSketch.getQuantile(0.5);
+		else if (arrivalTimeCount < 1)
+			medianArrivalTime = 0d;
 		else {
-			double lower = this.arrivalTimes.get(this.arrivalTimes.size() / 2 - 1);
-			double upper = this.arrivalTimes.get(this.arrivalTimes.size() / 2);
-
-			return (lower + upper) / 2.0;
+			if (!arrivalTimesSorted) {
+				Arrays.sort(arrivalTimes, 0, arrivalTimeCount);
+				arrivalTimesSorted = true;
+			}
+
+			int n = arrivalTimeCount;
+			if (n % 2 == 1)
+				medianArrivalTime = arrivalTimes[(n + 1) / 2 - 1];
+			else
+				medianArrivalTime = (arrivalTimes[n / 2 - 1] + arrivalTimes[n / 2]) / 2.0;
 		}
+
+		return medianArrivalTime;
+	}
+
+	/**
+	 * @param timeBins
+	 *            the bins the cell has events in, ascending
+	 * @param occupancy
+	 *            vehicles on the links of the cell at the end of each bin
+	 * @param departures
+	 *            departures within each bin
+	 * @param arrivals
+	 *            arrivals of persons departed from the cell, until the end of
+	 *            each bin
+	 */
+	public void setTimeBins(int[] timeBins, int[] occupancy, int[] departures, int[] arrivals) {
+		this.timeBins = timeBins;
+		this.occupancyByTimeBin = occupancy;
+		this.departuresByTimeBin = departures;
+		this.arrivalsByTimeBin = arrivals;
+	}
+
+	public int getOccupancy(int timeBin) {
+		return getTimeBinValue(occupancyByTimeBin, timeBin, true);
+	}
+
+	public int getDepartures(int timeBin) {
+		return getTimeBinValue(departuresByTimeBin, timeBin, false);
+	}
+
+	/**
+	 * @return arrivals of persons departed from the cell, until the end of
+	 *         the given bin
+	 */
+	public int getArrivals(int timeBin) {
+		return getTimeBinValue(arrivalsByTimeBin, timeBin, true);
+	}
+
+	private int getTimeBinValue(int[] values, int timeBin, boolean cumulative) {
+		if ((timeBins == null) || (timeBin < 0))
+			return 0;
+
+		int i = Arrays.binarySearch(timeBins, timeBin);
+		if (i >= 0)
+			return values[i];
+
+		// the last bin with events before
+		i = -i - 2;
+		return (cumulative) && (i >= 0) ? values[i] : 0;
 	}
 
 	public static int getCurrentId() {
-		return currentId;
+		return currentId.get();
 	}
 
 }
@@ -0,0 +1,51 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * Classification.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import java.awt.Color;
+
+/**
+ * class breaks of a coloration and the color of each break, as shown by the
+ * key
+ */
+public class Classification {
+
+	private final double[] breaks;
+	private final Color[] keyColors;
+
+	public Classification(double[] breaks, Color[] keyColors) {
+		this.breaks = breaks;
+		this.keyColors = keyColors;
+	}
+
+	public double[] getBreaks() {
+		return breaks;
+	}
+
+	public Color[] getKeyColors() {
+		return keyColors;
+	}
+
+	public int size() {
+		return breaks.length;
+	}
+
+}
@@ -0,0 +1,31 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ClassificationMode.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+/**
+ * how the class breaks of the colorations are chosen: equal number of
+ * values per class, natural breaks (jenks) or equal value ranges
+ */
+public enum ClassificationMode {
+
+	QUANTILE, NATURAL_BREAKS, EQUAL_INTERVAL
+
+}
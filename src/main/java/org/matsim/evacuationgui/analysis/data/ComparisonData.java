@@ -0,0 +1,115 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ComparisonData.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import java.awt.Color;
+import java.util.HashMap;
+
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.evacuationgui.model.Constants.Mode;
+
+/**
+ * differences between two runs analyzed on the same grid (variant minus
+ * baseline), per mode: median evacuation time, clearing time and
+ * utilization (link enter counts). cell differences are keyed by the cell
+ * ids of the baseline, link differences by link id.
+ *
+ */
+public class ComparisonData {
+
+	private final EventData<?> baseline;
+	private final EventData<?> variant;
+
+	private final HashMap<Mode, AttributeData<Double>> cellDifferences = new HashMap<Mode, AttributeData<Double>>();
+	private final HashMap<Mode, AttributeData<Double>> linkDifferences = new HashMap<Mode, AttributeData<Double>>();
+	private final HashMap<Mode, Double> maxCellDifferences = new HashMap<Mode, Double>();
+
+	// visualization attributes
+	private final HashMap<Mode, AttributeData<Color>> cellColorations = new HashMap<Mode, AttributeData<Color>>();
+	private final HashMap<Mode, Classification> classifications = new HashMap<Mode, Classification>();
+	private AttributeData<Tuple<Float, Color>> linkColoration;
+
+	public ComparisonData(EventData<?> baseline, EventData<?> variant) {
+		this.baseline = baseline;
+		this.variant = variant;
+
+		for (Mode mode : Mode.values()) {
+			cellDifferences.put(mode, new AttributeData<Double>());
+			linkDifferences.put(mode, new AttributeData<Double>());
+			maxCellDifferences.put(mode, 0d);
+		}
+	}
+
+	public EventData<?> getBaseline() {
+		return baseline;
+	}
+
+	public EventData<?> getVariant() {
+		return variant;
+	}
+
+	public AttributeData<Double> getCellDifferences(Mode mode) {
+		return cellDifferences.get(mode);
+	}
+
+	public AttributeData<Double> getLinkDifferences(Mode mode) {
+		return linkDifferences.get(mode);
+	}
+
+	/**
+	 * @return largest absolute cell difference of the mode
+	 */
+	public double getMaxCellDifference(Mode mode) {
+		return maxCellDifferences.get(mode);
+	}
+
+	public void setMaxCellDifference(Mode mode, double maxCellDifference) {
+		maxCellDifferences.put(mode, maxCellDifference);
+	}
+
+	public AttributeData<Color> getCellColoration(Mode mode) {
+		return cellColorations.get(mode);
+	}
+
+	public void setCellColoration(Mode mode, AttributeData<Color> cellColoration) {
+		cellColorations.put(mode, cellColoration);
+	}
+
+	/**
+	 * @return utilization differences as relative width and color
+	 */
+	public AttributeData<Tuple<Float, Color>> getLinkColoration() {
+		return linkColoration;
+	}
+
+	public void setLinkColoration(AttributeData<Tuple<Float, Color>> linkColoration) {
+		this.linkColoration = linkColoration;
+	}
+
+	public Classification getClassification(Mode mode) {
+		return classifications.get(mode);
+	}
+
+	public void setClassification(Mode mode, Classification classification) {
+		classifications.put(mode, classification);
+	}
+
+}
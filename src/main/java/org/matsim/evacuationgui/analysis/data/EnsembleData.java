@@ -0,0 +1,284 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EnsembleData.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.matsim.core.utils.collections.QuadTree.Rect;
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.evacuationgui.model.Constants.Mode;
+
+/**
+ * results of an ensemble of runs (e.g. random seeds) on the same grid. per
+ * cell and per link, the value of every run (median evacuation time,
+ * clearing time) is added to a quantile sketch, so memory depends on grid
+ * and network size, not on the number of runs or events. the arrival
+ * curves are kept per run in time bins.
+ *
+ */
+public class EnsembleData {
+
+	private int runs;
+
+	// grid of the first run, all runs have to use the same one
+	private double[] cellXs;
+	private double[] cellYs;
+	private double cellSize;
+	private Rect boundingBox;
+	private double sampleSize;
+
+	// per cell index
+	private QuantileSketch[] cellEvacuationTimes;
+	private QuantileSketch[] cellClearingTimes;
+	private long[] cellCountSums;
+	private double[] cellTimeSums;
+
+	// per link index
+	private QuantileSketch[] linkEvacuationTimes = new QuantileSketch[1024];
+	private QuantileSketch[] linkClearingTimes = new QuantileSketch[1024];
+
+	// cumulative arrivals at the end of each time bin, per run
+	private final double arrivalTimeBinSize;
+	private final List<int[]> arrivalsByTimeBin = new ArrayList<int[]>();
+
+	/**
+	 * @param arrivalTimeBinSize
+	 *            resolution of the arrival curves (s)
+	 */
+	public EnsembleData(double arrivalTimeBinSize) {
+		this.arrivalTimeBinSize = arrivalTimeBinSize;
+	}
+
+	/**
+	 * sets the grid, if not set yet. otherwise, the grid has to match.
+	 */
+	public void setGrid(double[] cellXs, double[] cellYs, double cellSize, Rect boundingBox, double sampleSize) {
+		if (this.cellXs == null) {
+			this.cellXs = cellXs;
+			this.cellYs = cellYs;
+			this.cellSize = cellSize;
+			this.boundingBox = boundingBox;
+			this.sampleSize = sampleSize;
+			this.cellEvacuationTimes = new QuantileSketch[cellXs.length];
+			this.cellClearingTimes = new QuantileSketch[cellXs.length];
+			this.cellCountSums = new long[cellXs.length];
+			this.cellTimeSums = new double[cellXs.length];
+		} else if ((this.cellSize != cellSize) || (!Arrays.equals(this.cellXs, cellXs)) || (!Arrays.equals(this.cellYs, cellYs)))
+			throw new IllegalArgumentException("the runs are not analyzed on the same grid");
+	}
+
+	public void addRun() {
+		runs++;
+	}
+
+	/**
+	 * @param medianArrivalTime
+	 *            NaN if no person departed from the cell
+	 * @param clearingTime
+	 *            0 if no vehicle has left the links of the cell
+	 */
+	public void addCell(int cellIndex, int count, double timeSum, double medianArrivalTime, double clearingTime) {
+		cellCountSums[cellIndex] += count;
+		cellTimeSums[cellIndex] += timeSum;
+		if (!Double.isNaN(medianArrivalTime))
+			cellEvacuationTimes[cellIndex] = add(cellEvacuationTimes[cellIndex], medianArrivalTime);
+		if (clearingTime > 0)
+			cellClearingTimes[cellIndex] = add(cellClearingTimes[cellIndex], clearingTime);
+	}
+
+	/**
+	 * @see #addCell(int, int, double, double, double)
+	 */
+	public void addLink(int linkIndex, double medianArrivalTime, double clearingTime) {
+		if (linkIndex >= linkEvacuationTimes.length) {
+			int newLength = Math.max(linkIndex + 1, linkEvacuationTimes.length * 2);
+			linkEvacuationTimes = Arrays.copyOf(linkEvacuationTimes, newLength);
+			linkClearingTimes = Arrays.copyOf(linkClearingTimes, newLength);
+		}
+
+		if (!Double.isNaN(medianArrivalTime))
+			linkEvacuationTimes[linkIndex] = add(linkEvacuationTimes[linkIndex], medianArrivalTime);
+		if (clearingTime > 0)
+			linkClearingTimes[linkIndex] = add(linkClearingTimes[linkIndex], clearingTime);
+	}
+
+	/**
+	 * @param arrivalTimes
+	 *            (time, cumulative arrivals) of a run, ascending in time
+	 */
+	public void addArrivalTimes(List<Tuple<Double, Integer>> arrivalTimes) {
+		int bins = arrivalTimes.isEmpty() ? 0 : (int) (arrivalTimes.get(arrivalTimes.size() - 1).getFirst() / arrivalTimeBinSize) + 1;
+		int[] arrivals = new int[bins];
+		for (Tuple<Double, Integer> arrival : arrivalTimes) {
+			int bin = (int) (arrival.getFirst() / arrivalTimeBinSize);
+			arrivals[bin] = Math.max(arrivals[bin], arrival.getSecond());
+		}
+
+		// cumulative: bins without arrivals keep the previous value
+		for (int i = 1; i < bins; i++)
+			arrivals[i] = Math.max(arrivals[i], arrivals[i - 1]);
+
+		arrivalsByTimeBin.add(arrivals);
+	}
+
+	/**
+	 * adds the runs of the other ensemble, analyzed on the same grid
+	 */
+	public void merge(EnsembleData other) {
+		if (other.cellXs == null)
+			return;
+
+		setGrid(other.cellXs, other.cellYs, other.cellSize, other.boundingBox, other.sampleSize);
+		runs += other.runs;
+
+		for (int i = 0; i < cellXs.length; i++) {
+			cellCountSums[i] += other.cellCountSums[i];
+			cellTimeSums[i] += other.cellTimeSums[i];
+			cellEvacuationTimes[i] = merge(cellEvacuationTimes[i], other.cellEvacuationTimes[i]);
+			cellClearingTimes[i] = merge(cellClearingTimes[i], other.cellClearingTimes[i]);
+		}
+
+		for (int l = 0; l < other.linkEvacuationTimes.length; l++) {
+			if ((other.linkEvacuationTimes[l] == null) && (other.linkClearingTimes[l] == null))
+				continue;
+			addLink(l, Double.NaN, 0d);
+			linkEvacuationTimes[l] = merge(linkEvacuationTimes[l], other.linkEvacuationTimes[l]);
+			linkClearingTimes[l] = merge(linkClearingTimes[l], other.linkClearingTimes[l]);
+		}
+
+		arrivalsByTimeBin.addAll(other.arrivalsByTimeBin);
+	}
+
+	private static QuantileSketch add(QuantileSketch sketch, double value) {
+		if (sketch == null)
+			sketch = new QuantileSketch();
+		sketch.add(value);
+		return sketch;
+	}
+
+	private static QuantileSketch merge(QuantileSketch sketch, QuantileSketch other) {
+		if (other == null)
+			return sketch;
+		if (sketch == null)
+			sketch = new QuantileSketch(other.getRelativeAccuracy());
+		sketch.merge(other);
+		return sketch;
+	}
+
+	public int getRuns() {
+		return runs;
+	}
+
+	public int getCellCount() {
+		return cellXs == null ? 0 : cellXs.length;
+	}
+
+	public double getCellX(int cellIndex) {
+		return cellXs[cellIndex];
+	}
+
+	public double getCellY(int cellIndex) {
+		return cellYs[cellIndex];
+	}
+
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	public Rect getBoundingBox() {
+		return boundingBox;
+	}
+
+	public double getSampleSize() {
+		return sampleSize;
+	}
+
+	/**
+	 * @return mean number of persons departed from the cell per run
+	 */
+	public double getMeanCount(int cellIndex) {
+		return runs > 0 ? (double) cellCountSums[cellIndex] / runs : 0d;
+	}
+
+	/**
+	 * @return mean travel time sum of the cell per run
+	 */
+	public double getMeanTimeSum(int cellIndex) {
+		return runs > 0 ? cellTimeSums[cellIndex] / runs : 0d;
+	}
+
+	/**
+	 * @param mode
+	 *            evacuation (median arrival time) or clearing time
+	 * @param q
+	 *            quantile over the runs, between 0 and 1
+	 * @return NaN if no run has a value for the cell
+	 */
+	public double getCellQuantile(Mode mode, int cellIndex, double q) {
+		QuantileSketch sketch = mode.equals(Mode.CLEARING) ? cellClearingTimes[cellIndex] : cellEvacuationTimes[cellIndex];
+		return sketch == null ? Double.NaN : sketch.getQuantile(q);
+	}
+
+	/**
+	 * @see #getCellQuantile(Mode, int, double)
+	 */
+	public double getLinkQuantile(Mode mode, int linkIndex, double q) {
+		if (linkIndex >= linkEvacuationTimes.length)
+			return Double.NaN;
+		QuantileSketch sketch = mode.equals(Mode.CLEARING) ? linkClearingTimes[linkIndex] : linkEvacuationTimes[linkIndex];
+		return sketch == null ? Double.NaN : sketch.getQuantile(q);
+	}
+
+	/**
+	 * @param q
+	 *            share of the runs, between 0 and 1
+	 * @return per time bin, the arrivals reached by the given share of the
+	 *         runs (q = 0.9: 90% of the runs have evacuated at least as many
+	 *         persons by then), divided by the sample size
+	 */
+	public ArrivalCurve getArrivalCurve(double q) {
+		int bins = 0;
+		for (int[] arrivals : arrivalsByTimeBin)
+			bins = Math.max(bins, arrivals.length);
+
+		int n = arrivalsByTimeBin.size();
+		double[] times = new double[bins];
+		double[] curve = new double[bins];
+		int[] values = new int[n];
+		int rank = (int) ((1 - q) * (n - 1));
+
+		for (int b = 0; b < bins; b++) {
+			for (int r = 0; r < n; r++) {
+				int[] arrivals = arrivalsByTimeBin.get(r);
+				values[r] = arrivals.length == 0 ? 0 : arrivals[Math.min(b, arrivals.length - 1)];
+			}
+			Arrays.sort(values);
+
+			times[b] = (b + 1) * arrivalTimeBinSize;
+			curve[b] = values[rank] / (sampleSize > 0 ? sampleSize : 1d);
+		}
+
+		return new ArrivalCurve(times, curve);
+	}
+
+}
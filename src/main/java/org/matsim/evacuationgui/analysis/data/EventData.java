@@ -21,13 +21,15 @@
 package org.matsim.evacuationgui.analysis.data;
 
 import java.awt.Color;
+import java.util.BitSet;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.api.core.v01.population.Person;
 import org.matsim.evacuationgui.model.Constants.Mode;
 import org.matsim.core.utils.collections.QuadTree;
 import org.matsim.core.utils.collections.QuadTree.Rect;
@@ -46,17 +48,27 @@ public class EventData<C> {
 	private QuadTree<Cell> cellTree;
 	private List<Tuple<Double, Integer>> arrivalTimes;
 	private Rect boundingBox;
-	private HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> linkLeaveTimes;
-	private HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> linkEnterTimes;
+	private LinkEventStore linkLeaveTimes;
+	private LinkEventStore linkEnterTimes;
+	private LinkAggregates linkAggregates;
+	private BitSet excludedLinks;
 	private int maxUtilization;
 	private double maxClearingTime;
 	private double sampleSize;
+	private int timeBinCount;
+	private double timeBinSize = LinkTimeBins.DEFAULT_BIN_SIZE;
+	private int maxCellOccupancy;
+	private LinkedHashMap<String, ArrivalCurve> arrivalCurves;
 
 	private AttributeData<Color> evacuationTimeVisData;
 	private AttributeData<Color> clearingTimeVisData;
 	private AttributeData<Tuple<Float, Color>> linkUtilizationVisData;
 
-	private HashMap<Mode, LinkedList<Tuple<Id<C>, Double>>> clusters;
+	private HashMap<Mode, Classification> clusters;
+
+	// visual data is computed per mode on the first request
+	private VisualDataProvider visualDataProvider;
+	private final EnumSet<Mode> preparedModes = EnumSet.noneOf(Mode.class);
 
 	public EventData(String eventName, QuadTree<Cell> cellTree, double cellSize, double timeSum, double maxCellTimeSum, int arrivals, List<Tuple<Double, Integer>> arrivalTimes, Rect boundingBox) {
 		this.eventName = eventName;
@@ -137,22 +149,65 @@ public class EventData<C> {
 		this.boundingBox = boundingBox;
 	}
 
-	public void setLinkEnterTimes(HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> linkEnterTimes) {
+	public void setLinkEnterTimes(LinkEventStore linkEnterTimes) {
 		this.linkEnterTimes = linkEnterTimes;
 	}
 
-	public void setLinkLeaveTimes(HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> linkLeaveTimes) {
+	public void setLinkLeaveTimes(LinkEventStore linkLeaveTimes) {
 		this.linkLeaveTimes = linkLeaveTimes;
 	}
 
-	public HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> getLinkEnterTimes() {
+	public LinkEventStore getLinkEnterTimes() {
 		return linkEnterTimes;
 	}
 
-	public HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> getLinkLeaveTimes() {
+	public LinkEventStore getLinkLeaveTimes() {
 		return linkLeaveTimes;
 	}
 
+	public void setLinkAggregates(LinkAggregates linkAggregates) {
+		this.linkAggregates = linkAggregates;
+	}
+
+	public LinkAggregates getLinkAggregates() {
+		return linkAggregates;
+	}
+
+	/**
+	 * @param excludedLinks
+	 *            indices of links not considered in the analysis (within the
+	 *            exit cell)
+	 */
+	public void setExcludedLinks(BitSet excludedLinks) {
+		this.excludedLinks = excludedLinks;
+	}
+
+	public boolean isExcludedLink(Id<Link> linkId) {
+		return (excludedLinks != null) && (excludedLinks.get(linkId.index()));
+	}
+
+	/**
+	 * @return number of link enter events, available in streaming mode as well
+	 */
+	public int getLinkEnterCount(Id<Link> linkId) {
+		if (isExcludedLink(linkId))
+			return 0;
+		if (linkAggregates != null)
+			return linkAggregates.getEnterCount(linkId);
+		return linkEnterTimes != null ? linkEnterTimes.getCount(linkId) : 0;
+	}
+
+	/**
+	 * @return number of link leave events, available in streaming mode as well
+	 */
+	public int getLinkLeaveCount(Id<Link> linkId) {
+		if (isExcludedLink(linkId))
+			return 0;
+		if (linkAggregates != null)
+			return linkAggregates.getLeaveCount(linkId);
+		return linkLeaveTimes != null ? linkLeaveTimes.getCount(linkId) : 0;
+	}
+
 	public void setMaxUtilization(int maxUtilization) {
 		this.maxUtilization = maxUtilization;
 	}
@@ -165,32 +220,104 @@ public class EventData<C> {
 		this.maxClearingTime = maxClearingTime;
 	}
 
+	/**
+	 * computes the clearing times first, if not done yet
+	 */
 	public double getMaxClearingTime() {
-
+		prepare(Mode.CLEARING);
 		return this.maxClearingTime;
 	}
 
-	public AttributeData<Color> getEvacuationTimeVisData() {
+	/**
+	 * @param timeBinCount
+	 *            number of time bins of the cells
+	 * @param timeBinSize
+	 *            length of a time bin (s)
+	 */
+	public void setTimeBins(int timeBinCount, double timeBinSize) {
+		this.timeBinCount = timeBinCount;
+		this.timeBinSize = timeBinSize;
+	}
+
+	/**
+	 * @return number of time bins of the cells, 0 if there are none
+	 */
+	public int getTimeBinCount() {
+		return timeBinCount;
+	}
+
+	public double getTimeBinSize() {
+		return timeBinSize;
+	}
+
+	public void setMaxCellOccupancy(int maxCellOccupancy) {
+		this.maxCellOccupancy = maxCellOccupancy;
+	}
+
+	public int getMaxCellOccupancy() {
+		return maxCellOccupancy;
+	}
+
+	/**
+	 * @return named arrival curves shown instead of the arrival times (e.g.
+	 *         percentiles of several runs), null if not set
+	 */
+	public LinkedHashMap<String, ArrivalCurve> getArrivalCurves() {
+		return arrivalCurves;
+	}
+
+	public void setArrivalCurves(LinkedHashMap<String, ArrivalCurve> arrivalCurves) {
+		this.arrivalCurves = arrivalCurves;
+	}
+
+	/**
+	 * computes the visual data of the given mode (and the clearing times in
+	 * clearing mode), if not done yet. the mode stays unprepared if the
+	 * provider cannot compute it.
+	 */
+	public synchronized void prepare(Mode mode) {
+		if ((visualDataProvider != null) && (!preparedModes.contains(mode))) {
+			if (visualDataProvider.computeVisualData(this, mode))
+				preparedModes.add(mode);
+		}
+	}
+
+	public synchronized boolean isPrepared(Mode mode) {
+		return (visualDataProvider == null) || (preparedModes.contains(mode));
+	}
+
+	/**
+	 * @param visualDataProvider
+	 *            computes the visual data of a mode on its first request
+	 */
+	public void setVisualDataProvider(VisualDataProvider visualDataProvider) {
+		this.visualDataProvider = visualDataProvider;
+	}
+
+	public synchronized AttributeData<Color> getEvacuationTimeVisData() {
+		prepare(Mode.EVACUATION);
 		return evacuationTimeVisData;
 	}
 
-	public AttributeData<Color> getClearingTimeVisData() {
+	public synchronized AttributeData<Color> getClearingTimeVisData() {
+		prepare(Mode.CLEARING);
 		return clearingTimeVisData;
 	}
 
-	public AttributeData<Tuple<Float, Color>> getLinkUtilizationVisData() {
+	public synchronized AttributeData<Tuple<Float, Color>> getLinkUtilizationVisData() {
+		prepare(Mode.UTILIZATION);
 		return linkUtilizationVisData;
 	}
 
-	public void setEvacuationTimeVisData(AttributeData<Color> evacuationTimeVisData) {
+	public synchronized void setEvacuationTimeVisData(AttributeData<Color> evacuationTimeVisData) {
 		this.evacuationTimeVisData = evacuationTimeVisData;
 	}
 
-	public void setClearingTimeVisData(AttributeData<Color> clearingTimeVisData) {
+	public synchronized void setClearingTimeVisData(AttributeData<Color> clearingTimeVisData) {
 		this.clearingTimeVisData = clearingTimeVisData;
 	}
 
-	public void setLinkUtilizationVisData(AttributeData<Tuple<Float, Color>> linkUtilizationVisData) {
+	public synchronized void setLinkUtilizationVisData(AttributeData<Tuple<Float, Color>> linkUtilizationVisData) {
 		this.linkUtilizationVisData = linkUtilizationVisData;
 	}
 
@@ -200,7 +327,7 @@ public class EventData<C> {
 		return cells;
 	}
 
-	public void updateClusters(Mode mode, LinkedList<Tuple<Id<C>, Double>> clusters) {
+	public synchronized void updateClusters(Mode mode, Classification clusters) {
 		if (this.clusters == null)
 			this.clusters = new HashMap<>();
 
@@ -208,14 +335,17 @@ public class EventData<C> {
 
 	}
 
-	public LinkedList<Tuple<Id<C>, Double>> getClusters(Mode mode) {
+	public synchronized Classification getClusters(Mode mode) {
+		prepare(mode);
 		if (this.clusters != null)
 			return this.clusters.get(mode);
 		else
 			return null;
 	}
 
-	public HashMap<Mode, LinkedList<Tuple<Id<C>, Double>>> getClusters() {
+	public synchronized HashMap<Mode, Classification> getClusters() {
+		for (Mode mode : Mode.values())
+			prepare(mode);
 		return this.clusters;
 	}
 	
@@ -227,4 +357,16 @@ public class EventData<C> {
 		this.sampleSize = sampleSize;
 	}
 
+	/**
+	 * computes the visual data of one mode of an event data object
+	 */
+	public interface VisualDataProvider {
+
+		/**
+		 * @return false if the visual data cannot be computed (any more)
+		 */
+		public boolean computeVisualData(EventData eventData, Mode mode);
+
+	}
+
 }
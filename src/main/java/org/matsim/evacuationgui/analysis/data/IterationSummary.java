@@ -0,0 +1,76 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * IterationSummary.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+/**
+ * key figures of the analysis of a single events file (iteration)
+ *
+ */
+public class IterationSummary {
+
+	private final int iteration;
+	private final String eventFile;
+	private final int arrivals;
+	private final double evacuationTime;
+	private final double maxClearingTime;
+	private final int maxUtilization;
+
+	/**
+	 * @param evacuationTime
+	 *            time of the last arrival
+	 */
+	public IterationSummary(int iteration, String eventFile, int arrivals, double evacuationTime, double maxClearingTime, int maxUtilization) {
+		this.iteration = iteration;
+		this.eventFile = eventFile;
+		this.arrivals = arrivals;
+		this.evacuationTime = evacuationTime;
+		this.maxClearingTime = maxClearingTime;
+		this.maxUtilization = maxUtilization;
+	}
+
+	/**
+	 * @return iteration number, -1 if unknown
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	public String getEventFile() {
+		return eventFile;
+	}
+
+	public int getArrivals() {
+		return arrivals;
+	}
+
+	public double getEvacuationTime() {
+		return evacuationTime;
+	}
+
+	public double getMaxClearingTime() {
+		return maxClearingTime;
+	}
+
+	public int getMaxUtilization() {
+		return maxUtilization;
+	}
+
+}
@@ -0,0 +1,194 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * LinkAggregates.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import java.util.Arrays;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+/**
+ * running per link aggregates, indexed by {@link Id#index()}. memory grows
+ * with the network size only. arrivals are counted at the departure link of
+ * the person, so cell grids of any size can be derived from the aggregates.
+ *
+ * if times are sketched, arrival and leave times are kept in quantile
+ * sketches; the median arrival time and the clearing time are estimated
+ * from them.
+ *
+ */
+public class LinkAggregates {
+
+	private final boolean sketchTimes;
+
+	private int[] enterCounts = new int[1024];
+	private int[] leaveCounts = new int[1024];
+	private int[] departureCounts = new int[1024];
+	private int[] arrivalCounts = new int[1024];
+	private double[] travelTimeSums = new double[1024];
+
+	private QuantileSketch[] leaveTimes;
+	private QuantileSketch[] arrivalTimes;
+	private double[] arrivalTimeSums;
+
+	public LinkAggregates(boolean sketchTimes) {
+		this.sketchTimes = sketchTimes;
+		if (sketchTimes) {
+			this.leaveTimes = new QuantileSketch[1024];
+			this.arrivalTimes = new QuantileSketch[1024];
+			this.arrivalTimeSums = new double[1024];
+		}
+	}
+
+	public void addEnter(int linkIndex) {
+		ensureCapacity(linkIndex);
+		enterCounts[linkIndex]++;
+	}
+
+	public void addLeave(int linkIndex, double time) {
+		ensureCapacity(linkIndex);
+		leaveCounts[linkIndex]++;
+
+		if (sketchTimes) {
+			if (leaveTimes[linkIndex] == null)
+				leaveTimes[linkIndex] = new QuantileSketch();
+			leaveTimes[linkIndex].add(time);
+		}
+	}
+
+	public void addDeparture(int linkIndex) {
+		ensureCapacity(linkIndex);
+		departureCounts[linkIndex]++;
+	}
+
+	/**
+	 * @param departureLinkIndex
+	 *            link the arriving person departed from
+	 */
+	public void addArrival(int departureLinkIndex, double travelTime) {
+		ensureCapacity(departureLinkIndex);
+		arrivalCounts[departureLinkIndex]++;
+		travelTimeSums[departureLinkIndex] += travelTime;
+	}
+
+	/**
+	 * adds an arrival time to the sketch of the departure link, only used if
+	 * times are sketched
+	 */
+	public void addArrivalTime(int departureLinkIndex, double time) {
+		ensureCapacity(departureLinkIndex);
+		if (arrivalTimes[departureLinkIndex] == null)
+			arrivalTimes[departureLinkIndex] = new QuantileSketch();
+		arrivalTimes[departureLinkIndex].add(time);
+		arrivalTimeSums[departureLinkIndex] += time;
+	}
+
+	/**
+	 * @return a copy of the counts and travel time sums, without the
+	 *         sketched times. it does not change when further events are
+	 *         added to this one, so it can be handed to another thread.
+	 */
+	public LinkAggregates copyCounts() {
+		LinkAggregates copy = new LinkAggregates(false);
+		copy.enterCounts = enterCounts.clone();
+		copy.leaveCounts = leaveCounts.clone();
+		copy.departureCounts = departureCounts.clone();
+		copy.arrivalCounts = arrivalCounts.clone();
+		copy.travelTimeSums = travelTimeSums.clone();
+		return copy;
+	}
+
+	public int getEnterCount(int linkIndex) {
+		return linkIndex < enterCounts.length ? enterCounts[linkIndex] : 0;
+	}
+
+	public int getLeaveCount(int linkIndex) {
+		return linkIndex < leaveCounts.length ? leaveCounts[linkIndex] : 0;
+	}
+
+	public int getEnterCount(Id<Link> linkId) {
+		return getEnterCount(linkId.index());
+	}
+
+	public int getLeaveCount(Id<Link> linkId) {
+		return getLeaveCount(linkId.index());
+	}
+
+	public int getDepartureCount(int linkIndex) {
+		return linkIndex < departureCounts.length ? departureCounts[linkIndex] : 0;
+	}
+
+	public int getArrivalCount(int departureLinkIndex) {
+		return departureLinkIndex < arrivalCounts.length ? arrivalCounts[departureLinkIndex] : 0;
+	}
+
+	public double getTravelTimeSum(int departureLinkIndex) {
+		return departureLinkIndex < travelTimeSums.length ? travelTimeSums[departureLinkIndex] : 0d;
+	}
+
+	/**
+	 * @return the sketched arrival times of persons departed from the link,
+	 *         or null if there are none
+	 */
+	public QuantileSketch getArrivalTimes(int departureLinkIndex) {
+		if ((!sketchTimes) || (departureLinkIndex >= arrivalTimes.length))
+			return null;
+		return arrivalTimes[departureLinkIndex];
+	}
+
+	public double getArrivalTimeSum(int departureLinkIndex) {
+		if ((!sketchTimes) || (departureLinkIndex >= arrivalTimeSums.length))
+			return 0d;
+		return arrivalTimeSums[departureLinkIndex];
+	}
+
+	public boolean isSketchingTimes() {
+		return sketchTimes;
+	}
+
+	/**
+	 * @return the sketched leave time quantile of the link, or 0 if there
+	 *         are no (sketched) leave times
+	 */
+	public double getLeaveTimeQuantile(int linkIndex, double q) {
+		if ((!sketchTimes) || (linkIndex >= leaveTimes.length) || (leaveTimes[linkIndex] == null))
+			return 0d;
+		return leaveTimes[linkIndex].getQuantile(q);
+	}
+
+	private void ensureCapacity(int linkIndex) {
+		if (linkIndex < enterCounts.length)
+			return;
+
+		int newLength = Math.max(linkIndex + 1, enterCounts.length * 2);
+		enterCounts = Arrays.copyOf(enterCounts, newLength);
+		leaveCounts = Arrays.copyOf(leaveCounts, newLength);
+		departureCounts = Arrays.copyOf(departureCounts, newLength);
+		arrivalCounts = Arrays.copyOf(arrivalCounts, newLength);
+		travelTimeSums = Arrays.copyOf(travelTimeSums, newLength);
+		if (sketchTimes) {
+			leaveTimes = Arrays.copyOf(leaveTimes, newLength);
+			arrivalTimes = Arrays.copyOf(arrivalTimes, newLength);
+			arrivalTimeSums = Arrays.copyOf(arrivalTimeSums, newLength);
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * LinkEventStore.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import java.util.Arrays;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+/**
+ * columnar store for link events (link index, person index, time). the
+ * columns are kept in growable chunks of primitive arrays, so each event
+ * costs twelve bytes instead of a tuple object graph. link and person
+ * indices are the ones delivered by {@link Id#index()}.
+ *
+ * events of a single link can be accessed in insertion order (which is
+ * chronological for events files) through {@link #getTime(int, int)}, or
+ * by the rank of their time through {@link #getTimeOfRank(int, int)}.
+ *
+ */
+public class LinkEventStore {
+
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private int[][] linkIndices = new int[16][];
+	private int[][] personIndices = new int[16][];
+	private float[][] times = new float[16][];
+	private int size = 0;
+
+	// cleared as soon as an event is added before the previous one
+	private boolean chronological = true;
+
+	private int[] linkCounts = new int[1024];
+
+	// per link lookup table (compressed rows), built on demand
+	private int[] linkOffsets;
+	private int[] eventsByLink;
+	private int indexedSize = -1;
+
+	public void add(int linkIndex, int personIndex, double time) {
+		int chunk = size >>> CHUNK_SHIFT;
+		int offset = size & CHUNK_MASK;
+
+		if (offset == 0) {
+			if (chunk == linkIndices.length) {
+				linkIndices = Arrays.copyOf(linkIndices, chunk * 2);
+				personIndices = Arrays.copyOf(personIndices, chunk * 2);
+				times = Arrays.copyOf(times, chunk * 2);
+			}
+			linkIndices[chunk] = new int[CHUNK_SIZE];
+			personIndices[chunk] = new int[CHUNK_SIZE];
+			times[chunk] = new float[CHUNK_SIZE];
+		}
+
+		if ((size > 0) && (time < times[(size - 1) >>> CHUNK_SHIFT][(size - 1) & CHUNK_MASK]))
+			chronological = false;
+
+		linkIndices[chunk][offset] = linkIndex;
+		personIndices[chunk][offset] = personIndex;
+		times[chunk][offset] = (float) time;
+		size++;
+
+		if (linkIndex >= linkCounts.length)
+			linkCounts = Arrays.copyOf(linkCounts, Math.max(linkIndex + 1, linkCounts.length * 2));
+		linkCounts[linkIndex]++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getLinkIndex(int i) {
+		return linkIndices[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+	}
+
+	public int getPersonIndex(int i) {
+		return personIndices[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+	}
+
+	public double getTime(int i) {
+		return times[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+	}
+
+	/**
+	 * @return number of events stored for the given link index
+	 */
+	public int getCount(int linkIndex) {
+		if (linkIndex >= linkCounts.length)
+			return 0;
+		return linkCounts[linkIndex];
+	}
+
+	public int getCount(Id<Link> linkId) {
+		return getCount(linkId.index());
+	}
+
+	/**
+	 * @return time of the n-th event (insertion order) of the given link
+	 */
+	public synchronized double getTime(int linkIndex, int n) {
+		if (indexedSize != size)
+			buildLinkIndex();
+
+		return getTime(eventsByLink[linkOffsets[linkIndex] + n]);
+	}
+
+	/**
+	 * @return the n-th smallest event time (starting at 0) of the given link.
+	 *         positional if events have been added in chronological order,
+	 *         selected from a copy of the link's times otherwise.
+	 */
+	public synchronized double getTimeOfRank(int linkIndex, int n) {
+		if (chronological)
+			return getTime(linkIndex, n);
+
+		if (indexedSize != size)
+			buildLinkIndex();
+
+		int from = linkOffsets[linkIndex];
+		int count = linkOffsets[linkIndex + 1] - from;
+		float[] linkTimes = new float[count];
+		for (int i = 0; i < count; i++)
+			linkTimes[i] = times[eventsByLink[from + i] >>> CHUNK_SHIFT][eventsByLink[from + i] & CHUNK_MASK];
+
+		return select(linkTimes, n);
+	}
+
+	public boolean isChronological() {
+		return chronological;
+	}
+
+	/**
+	 * quickselect, partially reorders the array
+	 */
+	private static float select(float[] a, int k) {
+		int low = 0;
+		int high = a.length - 1;
+
+		while (high > low) {
+			float pivot = a[(low + high) >>> 1];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (a[i] < pivot)
+					i++;
+				while (a[j] > pivot)
+					j--;
+				if (i <= j) {
+					float tmp = a[i];
+					a[i] = a[j];
+					a[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+
+			if (k <= j)
+				high = j;
+			else if (k >= i)
+				low = i;
+			else
+				break;
+		}
+		return a[k];
+	}
+
+	private void buildLinkIndex() {
+		linkOffsets = new int[linkCounts.length + 1];
+		for (int l = 0; l < linkCounts.length; l++)
+			linkOffsets[l + 1] = linkOffsets[l] + linkCounts[l];
+
+		int[] fill = Arrays.copyOf(linkOffsets, linkCounts.length);
+		eventsByLink = new int[size];
+		for (int i = 0; i < size; i++)
+			eventsByLink[fill[getLinkIndex(i)]++] = i;
+
+		indexedSize = size;
+	}
+
+}
@@ -0,0 +1,171 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * LinkTimeBins.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import java.util.Arrays;
+
+/**
+ * sparse link x time bin counts: occupancy changes (vehicles entering minus
+ * leaving the link), departures and arrivals (counted at the departure
+ * link). there is one entry per link and time bin with any event, kept in
+ * chunked primitive columns, so memory grows with the activity and not
+ * with the number of links times the number of bins.
+ *
+ * events are expected in chronological order. an event of an earlier bin
+ * adds another entry for that bin, entries are to be summed up.
+ *
+ */
+public class LinkTimeBins {
+
+	public static final double DEFAULT_BIN_SIZE = 60;
+
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final double binSize;
+
+	private int[][] bins = new int[16][];
+	private int[][] linkIndices = new int[16][];
+	private int[][] occupancyChanges = new int[16][];
+	private int[][] departures = new int[16][];
+	private int[][] arrivals = new int[16][];
+	private int size = 0;
+	private int binCount = 0;
+
+	// entries of the current bin (entry index + 1), by link index
+	private int currentBin = -1;
+	private int[] currentEntries = new int[1024];
+	private int[] touchedLinks = new int[1024];
+	private int touchedCount = 0;
+
+	public LinkTimeBins(double binSize) {
+		this.binSize = binSize;
+	}
+
+	public void addOccupancyChange(int linkIndex, double time, int change) {
+		int i = getEntry(linkIndex, time);
+		occupancyChanges[i >>> CHUNK_SHIFT][i & CHUNK_MASK] += change;
+	}
+
+	public void addDeparture(int linkIndex, double time) {
+		int i = getEntry(linkIndex, time);
+		departures[i >>> CHUNK_SHIFT][i & CHUNK_MASK]++;
+	}
+
+	public void addArrival(int departureLinkIndex, double time) {
+		int i = getEntry(departureLinkIndex, time);
+		arrivals[i >>> CHUNK_SHIFT][i & CHUNK_MASK]++;
+	}
+
+	public double getBinSize() {
+		return binSize;
+	}
+
+	/**
+	 * @return number of bins, from time 0 to the last event
+	 */
+	public int getBinCount() {
+		return binCount;
+	}
+
+	public int getBin(double time) {
+		return Math.max(0, (int) (time / binSize));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getBinOfEntry(int i) {
+		return bins[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+	}
+
+	public int getLinkIndex(int i) {
+		return linkIndices[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+	}
+
+	public int getOccupancyChange(int i) {
+		return occupancyChanges[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+	}
+
+	public int getDepartures(int i) {
+		return departures[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+	}
+
+	public int getArrivals(int i) {
+		return arrivals[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+	}
+
+	private int getEntry(int linkIndex, double time) {
+		int bin = getBin(time);
+
+		if (bin > currentBin) {
+			for (int t = 0; t < touchedCount; t++)
+				currentEntries[touchedLinks[t]] = 0;
+			touchedCount = 0;
+			currentBin = bin;
+		}
+
+		if (bin < currentBin)
+			return addEntry(linkIndex, bin);
+
+		if (linkIndex >= currentEntries.length)
+			currentEntries = Arrays.copyOf(currentEntries, Math.max(linkIndex + 1, currentEntries.length * 2));
+
+		if (currentEntries[linkIndex] == 0) {
+			currentEntries[linkIndex] = addEntry(linkIndex, bin) + 1;
+
+			if (touchedCount == touchedLinks.length)
+				touchedLinks = Arrays.copyOf(touchedLinks, touchedCount * 2);
+			touchedLinks[touchedCount++] = linkIndex;
+		}
+
+		return currentEntries[linkIndex] - 1;
+	}
+
+	private int addEntry(int linkIndex, int bin) {
+		int chunk = size >>> CHUNK_SHIFT;
+		int offset = size & CHUNK_MASK;
+
+		if (offset == 0) {
+			if (chunk == bins.length) {
+				bins = Arrays.copyOf(bins, chunk * 2);
+				linkIndices = Arrays.copyOf(linkIndices, chunk * 2);
+				occupancyChanges = Arrays.copyOf(occupancyChanges, chunk * 2);
+				departures = Arrays.copyOf(departures, chunk * 2);
+				arrivals = Arrays.copyOf(arrivals, chunk * 2);
+			}
+			bins[chunk] = new int[CHUNK_SIZE];
+			linkIndices[chunk] = new int[CHUNK_SIZE];
+			occupancyChanges[chunk] = new int[CHUNK_SIZE];
+			departures[chunk] = new int[CHUNK_SIZE];
+			arrivals[chunk] = new int[CHUNK_SIZE];
+		}
+
+		bins[chunk][offset] = bin;
+		linkIndices[chunk][offset] = linkIndex;
+		binCount = Math.max(binCount, bin + 1);
+
+		return size++;
+	}
+
+}
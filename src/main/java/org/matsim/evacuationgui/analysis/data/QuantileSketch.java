@@ -0,0 +1,162 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QuantileSketch.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import java.util.Arrays;
+
+/**
+ * mergeable quantile sketch for non-negative values (times in seconds).
+ * values are counted in logarithmic buckets, which bounds the relative
+ * error of every quantile by the given accuracy (1% by default). memory
+ * only depends on the value range, not on the number of values.
+ *
+ */
+public class QuantileSketch {
+
+	public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+	// values below are counted as zero
+	private static final double MIN_VALUE = 1e-3;
+
+	private final double relativeAccuracy;
+	private final double gamma;
+	private final double logGamma;
+
+	private int[] counts;
+	private int offset;
+	private long zeroCount;
+	private long count;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public QuantileSketch() {
+		this(DEFAULT_RELATIVE_ACCURACY);
+	}
+
+	public QuantileSketch(double relativeAccuracy) {
+		this.relativeAccuracy = relativeAccuracy;
+		this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+		this.logGamma = Math.log(gamma);
+	}
+
+	public void add(double value) {
+		add(value, 1);
+	}
+
+	public void add(double value, int n) {
+		if (n <= 0)
+			return;
+
+		if (value < MIN_VALUE)
+			zeroCount += n;
+		else {
+			int bucket = (int) Math.ceil(Math.log(value) / logGamma);
+			ensureBucket(bucket);
+			counts[bucket - offset] += n;
+		}
+
+		count += n;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * adds all values of the other sketch to this one
+	 */
+	public void merge(QuantileSketch other) {
+		if (other.relativeAccuracy != relativeAccuracy)
+			throw new IllegalArgumentException("cannot merge sketches of different accuracy");
+
+		if (other.count == 0)
+			return;
+
+		if (other.counts != null) {
+			ensureBucket(other.offset);
+			ensureBucket(other.offset + other.counts.length - 1);
+			for (int i = 0; i < other.counts.length; i++)
+				counts[other.offset + i - offset] += other.counts[i];
+		}
+
+		zeroCount += other.zeroCount;
+		count += other.count;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * @param q quantile, between 0 and 1
+	 * @return estimated value of the quantile, 0 if the sketch is empty
+	 */
+	public double getQuantile(double q) {
+		if (count == 0)
+			return 0d;
+
+		long rank = (long) (q * (count - 1));
+
+		if (rank < zeroCount)
+			return Math.max(min, 0d);
+
+		long seen = zeroCount;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen > rank) {
+				double value = 2 * Math.pow(gamma, offset + i) / (gamma + 1);
+				return Math.max(min, Math.min(max, value));
+			}
+		}
+
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	public double getRelativeAccuracy() {
+		return relativeAccuracy;
+	}
+
+	private void ensureBucket(int bucket) {
+		if (counts == null) {
+			counts = new int[8];
+			offset = bucket - 4;
+			return;
+		}
+
+		if (bucket < offset) {
+			int grow = Math.max(offset - bucket, counts.length / 2);
+			int[] newCounts = new int[counts.length + grow];
+			System.arraycopy(counts, 0, newCounts, grow, counts.length);
+			counts = newCounts;
+			offset -= grow;
+		} else if (bucket >= offset + counts.length)
+			counts = Arrays.copyOf(counts, Math.max(bucket - offset + 1, counts.length + counts.length / 2));
+	}
+
+}
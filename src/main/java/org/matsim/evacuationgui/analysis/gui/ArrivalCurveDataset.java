@@ -0,0 +1,103 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ArrivalCurveDataset.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.gui;
+
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.matsim.evacuationgui.analysis.data.ArrivalCurve;
+
+/**
+ * dataset reading from one or more arrival curves, one series each. x
+ * values are milliseconds (for a date axis), starting at the given offset.
+ *
+ */
+public class ArrivalCurveDataset extends AbstractXYDataset {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String seriesKey;
+	private final double timeOffset;
+	private String[] seriesKeys = new String[0];
+	private ArrivalCurve[] curves = new ArrivalCurve[0];
+
+	public ArrivalCurveDataset(String seriesKey, double timeOffset) {
+		this.seriesKey = seriesKey;
+		this.timeOffset = timeOffset;
+	}
+
+	/**
+	 * replaces the curve and notifies the listeners (e.g. the plot)
+	 */
+	public void setCurve(ArrivalCurve curve) {
+		setCurves(new String[] { seriesKey }, new ArrivalCurve[] { curve });
+	}
+
+	/**
+	 * replaces all series (e.g. percentiles of several runs) and notifies the
+	 * listeners
+	 */
+	public void setCurves(String[] seriesKeys, ArrivalCurve[] curves) {
+		this.seriesKeys = seriesKeys;
+		this.curves = curves;
+		fireDatasetChanged();
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return curves.length;
+	}
+
+	@Override
+	public Comparable getSeriesKey(int series) {
+		return seriesKeys[series];
+	}
+
+	@Override
+	public DomainOrder getDomainOrder() {
+		return DomainOrder.ASCENDING;
+	}
+
+	@Override
+	public int getItemCount(int series) {
+		return curves[series] == null ? 0 : curves[series].size();
+	}
+
+	@Override
+	public Number getX(int series, int item) {
+		return getXValue(series, item);
+	}
+
+	@Override
+	public double getXValue(int series, int item) {
+		return timeOffset + curves[series].getTime(item) * 1000;
+	}
+
+	@Override
+	public Number getY(int series, int item) {
+		return getYValue(series, item);
+	}
+
+	@Override
+	public double getYValue(int series, int item) {
+		return curves[series].getArrivals(item);
+	}
+
+}
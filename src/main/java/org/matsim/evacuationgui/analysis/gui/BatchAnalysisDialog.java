@@ -0,0 +1,80 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * BatchAnalysisDialog.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.gui;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.util.List;
+
+import javax.swing.JDialog;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+
+import org.jfree.chart.ChartPanel;
+import org.matsim.evacuationgui.analysis.control.BatchAnalysis;
+import org.matsim.evacuationgui.analysis.data.IterationSummary;
+import org.matsim.evacuationgui.model.Constants.Unit;
+
+/**
+ * shows the per iteration summary table and the convergence chart of a
+ * batch analysis
+ *
+ */
+public class BatchAnalysisDialog extends JDialog {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String[] COLUMNS = { "iteration", "arrivals", "evacuation time", "max clearing time", "max utilization" };
+
+	public BatchAnalysisDialog(Component parent, List<IterationSummary> summaries) {
+		super(SwingUtilities.getWindowAncestor(parent), "evacuation analysis: all iterations");
+
+		DefaultTableModel model = new DefaultTableModel(COLUMNS, 0) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean isCellEditable(int row, int column) {
+				return false;
+			}
+		};
+
+		for (IterationSummary summary : summaries) {
+			model.addRow(new Object[] { summary.getIteration(), summary.getArrivals(), KeyPanel.getReadableTime(summary.getEvacuationTime(), Unit.TIME),
+					KeyPanel.getReadableTime(summary.getMaxClearingTime(), Unit.TIME), summary.getMaxUtilization() });
+		}
+
+		JScrollPane tablePane = new JScrollPane(new JTable(model));
+		tablePane.setPreferredSize(new Dimension(600, 160));
+
+		ChartPanel chartPanel = new ChartPanel(BatchAnalysis.getConvergenceChart(summaries).getChart());
+		chartPanel.setPreferredSize(new Dimension(600, 320));
+
+		this.setLayout(new BorderLayout());
+		this.add(tablePane, BorderLayout.NORTH);
+		this.add(chartPanel, BorderLayout.CENTER);
+		this.pack();
+		this.setLocationRelativeTo(parent);
+	}
+
+}
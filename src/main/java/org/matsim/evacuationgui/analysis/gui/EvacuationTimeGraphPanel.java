@@ -22,23 +22,28 @@ package org.matsim.evacuationgui.analysis.gui;
 
 import java.awt.Dimension;
 import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.plot.XYPlot;
-import org.jfree.data.time.Second;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
-import org.matsim.core.utils.collections.Tuple;
+import org.matsim.evacuationgui.analysis.data.ArrivalCurve;
 
 public class EvacuationTimeGraphPanel extends AbstractDataPanel {
 
 	private static final long serialVersionUID = 1L;
 	private ChartPanel chartPanel;
+	private ArrivalCurveDataset dataset;
+	private JFreeChart freeChart;
+
+	// time 0 is displayed as 00:00:00
+	private static final double TIME_OFFSET = 1000 * 60 * 60 * 23;
+
+	// the curve is reduced to this many points per pixel of panel width
+	private static final int POINTS_PER_PIXEL = 2;
 
 	// TODO: GRAPH graph;
 
@@ -47,42 +52,26 @@ public class EvacuationTimeGraphPanel extends AbstractDataPanel {
 		drawDataPanel();
 	}
 
+	/**
+	 * the chart is created once, further updates only replace the
+	 * (downsampled) curve of its dataset
+	 */
 	@Override
 	public void drawDataPanel() {
 		// if data is not set yet: do nothing
 		if (data == null)
 			return;
 
-		List<Tuple<Double, Integer>> arrivalTimes = data.getArrivalTimes(); 
-		int arrivalTimeCount = arrivalTimes.size(); 
-													
-
-		double[] xs = new double[arrivalTimeCount];
-		double[] ys = new double[arrivalTimeCount];
+		if (chartPanel == null) {
+			dataset = new ArrivalCurveDataset("evacuation time", TIME_OFFSET);
 
-		TimeSeriesCollection dataset = new TimeSeriesCollection();
-		TimeSeries timeSeries = new TimeSeries("evacuation time");
-
-		for (int i = 0; i < arrivalTimeCount; i++) {
-			xs[i] = 1000 * 60 * 60 * 23 + arrivalTimes.get(i).getFirst() * 1000;
-			ys[i] = arrivalTimes.get(i).getSecond()/data.getSampleSize();
-			timeSeries.add(new Second(new Date((long) xs[i])), ys[i]);
-		}
+			freeChart = ChartFactory.createTimeSeriesChart("evacuation time", "time (hh:mm:ss)", "agents", dataset, true, false, false);
 
-		dataset.addSeries(timeSeries);
+			XYPlot plot = (XYPlot) freeChart.getPlot();
+			((DateAxis) (plot.getDomainAxis())).setDateFormatOverride(new SimpleDateFormat("HH:mm:ss"));
 
-		JFreeChart freeChart = ChartFactory.createTimeSeriesChart("evacuation time", "time (hh:mm:ss)", "agents", dataset, false, false, false);
+			freeChart.setAntiAlias(true);
 
-		XYPlot plot = (XYPlot) freeChart.getPlot();
-		((DateAxis) (plot.getDomainAxis())).setDateFormatOverride(new SimpleDateFormat("HH:mm:ss"));
-
-		freeChart.setAntiAlias(true);
-
-		if (chartPanel != null) {
-			chartPanel.setChart(freeChart);
-			chartPanel.repaint();
-			return;
-		} else {
 			chartPanel = new ChartPanel(freeChart);
 			chartPanel.setPreferredSize(new Dimension(this.width, this.height));
 
@@ -91,6 +80,25 @@ public class EvacuationTimeGraphPanel extends AbstractDataPanel {
 			this.setSize(this.width, this.height);
 		}
 
+		int maxPoints = Math.max(3, POINTS_PER_PIXEL * this.width);
+		LinkedHashMap<String, ArrivalCurve> curves = data.getArrivalCurves();
+
+		// several curves (e.g. percentiles of an ensemble) are told apart by
+		// the legend
+		freeChart.getLegend().setVisible(curves != null);
+
+		if (curves == null)
+			dataset.setCurve(ArrivalCurve.create(data.getArrivalTimes(), data.getSampleSize()).getDownsampled(maxPoints));
+		else {
+			String[] keys = new String[curves.size()];
+			ArrivalCurve[] downsampled = new ArrivalCurve[curves.size()];
+			int i = 0;
+			for (Map.Entry<String, ArrivalCurve> curve : curves.entrySet()) {
+				keys[i] = curve.getKey();
+				downsampled[i++] = curve.getValue().getDownsampled(maxPoints);
+			}
+			dataset.setCurves(keys, downsampled);
+		}
 	}
 
 }
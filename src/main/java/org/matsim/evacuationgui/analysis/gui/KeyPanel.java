@@ -24,17 +24,16 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
-import java.util.LinkedList;
 
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 
-import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.network.Link;
+import org.matsim.evacuationgui.analysis.EAToolBox;
+import org.matsim.evacuationgui.analysis.data.Classification;
+import org.matsim.evacuationgui.analysis.data.ComparisonData;
 import org.matsim.evacuationgui.model.Constants.Mode;
 import org.matsim.evacuationgui.model.Constants.Unit;
-import org.matsim.core.utils.collections.Tuple;
 
 public class KeyPanel extends AbstractDataPanel
 {
@@ -45,6 +44,9 @@ public class KeyPanel extends AbstractDataPanel
 	private static final long serialVersionUID = 1L;
 	private Mode mode;
 
+	// if set, the key of the differences is shown
+	private ComparisonData comparison;
+
 	public KeyPanel(Mode mode, int width, int height)
 	{
 		this.setPanelSize(width, height);
@@ -57,12 +59,13 @@ public class KeyPanel extends AbstractDataPanel
 	public void drawDataPanel()
 	{
 
-		if (this.data == null)
+		if ((this.data == null) && (this.comparison == null))
 			return;
 		else
 			this.removeAll();
 
-		LinkedList<Tuple<Id<Link>, Double>> clusters = this.data.getClusters(mode);
+		Classification clusters = comparison != null ? comparison.getClassification(mode) : this.data.getClusters(mode);
+		double[] breaks = clusters.getBreaks();
 		int k = clusters.size();
 
 		String[] classVal = new String[k];
@@ -73,23 +76,14 @@ public class KeyPanel extends AbstractDataPanel
 
 		for (int i = 0; i < k; i++)
 		{
-			if (mode.equals(Mode.EVACUATION))
-			{
-				classColor[i] = this.data.getEvacuationTimeVisData().getAttribute(clusters.get(i).getFirst());
-				classVal[i] = getReadableTime(clusters.get(i).getSecond(), Unit.TIME);
-				
-			}
-			else if (mode.equals(Mode.CLEARING))
-			{
-				classColor[i] = this.data.getClearingTimeVisData().getAttribute(clusters.get(i).getFirst());
-				classVal[i] = getReadableTime(clusters.get(i).getSecond(), Unit.TIME);
-				
-			}
+			classColor[i] = clusters.getKeyColors()[i];
+			if (comparison != null)
+				classVal[i] = EAToolBox.getReadableDifference(mode.equals(Mode.UTILIZATION) ? breaks[i] / comparison.getBaseline().getSampleSize() : breaks[i],
+						mode.equals(Mode.UTILIZATION) ? Unit.PEOPLE : Unit.TIME);
+			else if (mode.equals(Mode.UTILIZATION))
+				classVal[i] = getReadableTime(breaks[i] / data.getSampleSize(), Unit.PEOPLE);
 			else
-			{
-				classColor[i] = this.data.getLinkUtilizationVisData().getAttribute(clusters.get(i).getFirst()).getSecond();
-				classVal[i] = getReadableTime(clusters.get(i).getSecond()/data.getSampleSize(), Unit.PEOPLE);
-			}
+				classVal[i] = getReadableTime(breaks[i], Unit.TIME);
 
 		}
 
@@ -124,7 +118,7 @@ public class KeyPanel extends AbstractDataPanel
 			keyPanel.add(valueLabels[i], c);
 		}
 
-		this.add(new JLabel("" + mode));
+		this.add(new JLabel(comparison != null ? mode + " (difference)" : "" + mode));
 		this.add(keyPanel);
 		this.validate();
 		this.setSize(this.width, this.height);
@@ -164,6 +158,17 @@ public class KeyPanel extends AbstractDataPanel
 		}
 	}
 
+	/**
+	 * @param comparison
+	 *            differences of two runs, null to show the key of the data
+	 *            again
+	 */
+	public void setComparisonData(ComparisonData comparison)
+	{
+		this.comparison = comparison;
+		drawDataPanel();
+	}
+
 	public void setMode(Mode mode)
 	{
 		this.mode = mode;
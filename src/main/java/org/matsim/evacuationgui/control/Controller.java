@@ -48,6 +48,7 @@ import org.matsim.evacuationgui.model.shape.PolygonShape;
 import org.matsim.evacuationgui.model.shape.Shape;
 import org.matsim.evacuationgui.model.shape.ShapeStyle;
 import org.matsim.evacuationgui.populationselector.PopAreaSelector;
+import org.matsim.evacuationgui.utils.IdClassification;
 import org.matsim.evacuationgui.view.DefaultOpenDialog;
 import org.matsim.evacuationgui.view.DefaultRenderPanel;
 import org.matsim.evacuationgui.view.DefaultWindow;
@@ -144,6 +145,13 @@ public class Controller {
 	private String wms;
 	private String layer;
 
+	// map tiles: source (directory or url template), store, offline use and
+	// prefetching of the scenario
+	private String tiles;
+	private String tileStore;
+	private boolean offline;
+	private boolean prefetchTiles;
+
 	private ModuleChain moduleChain;
 
 	public Controller() {
@@ -161,18 +169,24 @@ public class Controller {
 		this();
 		this.wms = null;
 		this.layer = null;
-		if (args.length == 4) {
-			for (int i = 0; i < 4; i += 2) {
-				if (args[i].equalsIgnoreCase("-wms")) {
-					this.wms = args[i + 1];
-				}
-				if (args[i].equalsIgnoreCase("-layer")) {
-					this.layer = args[i + 1];
-				}
+		for (int i = 0; i < args.length; i++) {
+			boolean hasValue = i + 1 < args.length;
+			if (args[i].equalsIgnoreCase("-wms") && hasValue) {
+				this.wms = args[++i];
+			} else if (args[i].equalsIgnoreCase("-layer") && hasValue) {
+				this.layer = args[++i];
+			} else if (args[i].equalsIgnoreCase("-tiles") && hasValue) {
+				this.tiles = args[++i];
+			} else if (args[i].equalsIgnoreCase("-tilestore") && hasValue) {
+				this.tileStore = args[++i];
+			} else if (args[i].equalsIgnoreCase("-offline")) {
+				this.offline = true;
+			} else if (args[i].equalsIgnoreCase("-prefetch")) {
+				this.prefetchTiles = true;
+			} else {
+				printUsage();
+				System.exit(-1);
 			}
-		} else if (args.length != 0) {
-			printUsage();
-			System.exit(-1);
 		}
 	}
 
@@ -278,11 +292,36 @@ public class Controller {
 
 	public void paintLayers() {
 
+		if (this.visualizer != null)
+			this.visualizer.setDirty();
+		repaintLayers();
+
+	}
+
+	/**
+	 * paints the given layer again, the other layers are composed from their
+	 * surfaces
+	 */
+	public void paintLayer(AbstractRenderLayer layer) {
+		if (layer != null)
+			layer.setDirty();
+		repaintLayers();
+	}
+
+	/**
+	 * paints the given region (image coordinates) of the layer again
+	 */
+	public void paintLayer(AbstractRenderLayer layer, Rectangle region) {
+		if (layer != null)
+			layer.setDirty(region);
+		repaintLayers();
+	}
+
+	private void repaintLayers() {
 		if (this.parentComponent != null)
 			this.parentComponent.repaint();
 		else
 			this.visualizer.paintLayers();
-
 	}
 
 	public Component getParentComponent() {
@@ -558,11 +597,13 @@ public class Controller {
 	}
 
 	private void processNetwork(boolean processLinks) {
+		IdClassification ids = IdClassification.get(this.scenario);
+
 		// fill envelope with collected roads (links)
 		Envelope e = new Envelope();
 		for (Node node : this.scenario.getNetwork().getNodes().values()) {
 			// ignore end nodes
-			if (node.getId().toString().contains("en")) {
+			if (ids.isExitNode(node.getId())) {
 				continue;
 			}
 
@@ -581,7 +622,7 @@ public class Controller {
 			Network net = (Network) this.scenario.getNetwork();
 			for (Link link : net.getLinks().values()) {
 				// ignore end links
-				if (link.getId().toString().contains("el")) {
+				if (ids.isExitLink(link.getId())) {
 					continue;
 				}
 				this.links.put(link);
@@ -1195,6 +1236,29 @@ public class Controller {
 		return this.layer;
 	}
 
+	/**
+	 * @return local z/x/y tile directory or url template of a tile server,
+	 *         null for openstreetmap
+	 */
+	public String getTiles() {
+		return this.tiles;
+	}
+
+	/**
+	 * @return directory of the tile store, null for the default one
+	 */
+	public String getTileStore() {
+		return this.tileStore;
+	}
+
+	public boolean isOffline() {
+		return this.offline;
+	}
+
+	public boolean isPrefetchTiles() {
+		return this.prefetchTiles;
+	}
+
 	public ModuleChain getModuleChain() {
 		return this.moduleChain;
 	}
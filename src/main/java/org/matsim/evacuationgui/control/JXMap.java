@@ -106,7 +106,12 @@ public class JXMap extends JXMapViewer
 			super.repaint();
 			
 			if (controller != null)
+			{
+				// loaded tiles or a moved map, the other layers are kept
+				if ((controller.getVisualizer() != null) && (controller.getVisualizer().getActiveMapRenderLayer() != null))
+					controller.getVisualizer().getActiveMapRenderLayer().setDirty();
 				controller.repaintParent();
+			}
 		}
 	}
 	
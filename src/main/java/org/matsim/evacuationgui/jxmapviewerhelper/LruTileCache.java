@@ -0,0 +1,116 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * LruTileCache.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.jxmapviewerhelper;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.apache.log4j.Logger;
+import org.jxmapviewer.viewer.TileCache;
+
+/**
+ * memory cache of the decoded tiles, bounded to the least recently used
+ * ones. with a tile store, downloaded tiles are written to the store and
+ * stored tiles are read from it instead of being downloaded again.
+ */
+class LruTileCache extends TileCache {
+
+	private static final Logger log = Logger.getLogger(LruTileCache.class);
+
+	private final Map<URI, BufferedImage> images;
+	private final TileSource source;
+	private final TileStore store;
+
+	/**
+	 * @param store
+	 *            null to keep the tiles in memory only
+	 */
+	LruTileCache(final int maxTiles, TileSource source, TileStore store) {
+		this.source = source;
+		this.store = store;
+		this.images = new LinkedHashMap<URI, BufferedImage>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<URI, BufferedImage> eldest) {
+				return size() > maxTiles;
+			}
+		};
+	}
+
+	@Override
+	public void put(URI uri, byte[] bimg, BufferedImage img) {
+		synchronized (images) {
+			images.put(uri, img);
+		}
+
+		int[] tile = getStoredTile(uri);
+		if ((tile == null) || (bimg == null) || (store.contains(source, tile[0], tile[1], tile[2])))
+			return;
+
+		try {
+			store.put(source, tile[0], tile[1], tile[2], bimg);
+		} catch (IOException e) {
+			log.warn("could not store tile " + uri + ": " + e.getMessage());
+		}
+	}
+
+	@Override
+	public BufferedImage get(URI uri) throws IOException {
+		synchronized (images) {
+			BufferedImage img = images.get(uri);
+			if (img != null)
+				return img;
+		}
+
+		// not in memory, but maybe in the store
+		int[] tile = getStoredTile(uri);
+		if (tile == null)
+			return null;
+		File file = store.getFile(source, tile[0], tile[1], tile[2]);
+		if (!file.isFile())
+			return null;
+
+		BufferedImage img = ImageIO.read(file);
+		if (img != null) {
+			synchronized (images) {
+				images.put(uri, img);
+			}
+		}
+		return img;
+	}
+
+	/**
+	 * @return zoom, x, y of the tile, null if it is not kept in the store
+	 */
+	private int[] getStoredTile(URI uri) {
+		if ((store == null) || (source.isLocal()))
+			return null;
+		return source.getTile(uri.toString());
+	}
+
+}
@@ -28,22 +28,39 @@ import org.jxmapviewer.viewer.wms.WMSService;
 
 public abstract class TileFactoryBuilder {
 	
+	// decoded tiles kept in memory, about 64 mb
+	public static final int MEMORY_TILES = 256;
 	
 	public static TileFactory getOsmTileFactory() {
-		final int max=17;
-		TileFactoryInfo info = new TileFactoryInfo(0, 17, 17,
+		return getTileFactory(TileSource.getOsmTileSource(), null, false);
+	}
+	
+	/**
+	 * @param store
+	 *            persistent store of the downloaded tiles, null for none
+	 * @param offline
+	 *            only the tiles of the store (or of a local source) are
+	 *            shown, nothing is downloaded
+	 */
+	public static TileFactory getTileFactory(final TileSource source, final TileStore store, final boolean offline) {
+		final int max = TileSource.MAX_ZOOM;
+		final boolean fromStore = offline && (store != null) && (!source.isLocal());
+		
+		TileFactoryInfo info = new TileFactoryInfo(0, max, max,
 				256, true, true,
-				"http://tile.openstreetmap.org",
+				source.getTemplate(),
 				"x","y","z") {
 			@Override
 			public String getTileUrl(int x, int y, int zoom) {
 				zoom = max-zoom;
-				String url = this.baseURL +"/"+zoom+"/"+x+"/"+y+".png";
-				return url;
+				if (fromStore)
+					return store.getFile(source, zoom, x, y).toURI().toString();
+				return source.getTileUrl(x, y, zoom);
 			}
 
 		};
-		TileFactory tf = new DefaultTileFactory(info);
+		DefaultTileFactory tf = new DefaultTileFactory(info);
+		tf.setTileCache(new LruTileCache(MEMORY_TILES, source, store));
 		return tf;
 	}
 	
@@ -51,7 +68,9 @@ public abstract class TileFactoryBuilder {
 		
 		WMSService service = new WMSService(baseURL, layer);
 		
-		return new WMSTileFactory(service,17);
+		WMSTileFactory tf = new WMSTileFactory(service,17);
+		tf.setTileCache(new LruTileCache(MEMORY_TILES, null, null));
+		return tf;
 		
 	}
 
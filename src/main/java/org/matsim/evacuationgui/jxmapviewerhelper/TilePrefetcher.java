@@ -0,0 +1,138 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TilePrefetcher.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.jxmapviewerhelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * downloads the tiles of a bounding box into the tile store, so the map of
+ * the scenario can be shown offline afterwards. the tiles are fetched from
+ * the coarsest to the finest zoom level, at most MAX_TILES.
+ */
+public class TilePrefetcher implements Runnable {
+
+	private static final Logger log = Logger.getLogger(TilePrefetcher.class);
+
+	public static final int MAX_TILES = 2000;
+
+	private final TileSource source;
+	private final TileStore store;
+	private final List<int[]> tiles;
+
+	/**
+	 * prefetches the tiles of the bounding box (wgs84) between the given osm
+	 * zoom levels
+	 */
+	public TilePrefetcher(TileSource source, TileStore store, double minLon, double minLat, double maxLon,
+			double maxLat, int minZoom, int maxZoom) {
+		this.source = source;
+		this.store = store;
+		this.tiles = getTiles(minLon, minLat, maxLon, maxLat, minZoom, maxZoom, MAX_TILES);
+	}
+
+	/**
+	 * @return zoom, x and y of the tiles covering the bounding box, coarse
+	 *         zoom levels first. a zoom level exceeding the maximum number of
+	 *         tiles is left out with all finer ones.
+	 */
+	public static List<int[]> getTiles(double minLon, double minLat, double maxLon, double maxLat, int minZoom,
+			int maxZoom, int maxTiles) {
+		List<int[]> tiles = new ArrayList<int[]>();
+		for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+			int x1 = TileSource.getTileX(minLon, zoom);
+			int x2 = TileSource.getTileX(maxLon, zoom);
+			// tile rows count from the north
+			int y1 = TileSource.getTileY(maxLat, zoom);
+			int y2 = TileSource.getTileY(minLat, zoom);
+
+			if (tiles.size() + (long) (x2 - x1 + 1) * (y2 - y1 + 1) > maxTiles)
+				break;
+
+			for (int x = x1; x <= x2; x++)
+				for (int y = y1; y <= y2; y++)
+					tiles.add(new int[] { zoom, x, y });
+		}
+		return tiles;
+	}
+
+	public List<int[]> getTiles() {
+		return tiles;
+	}
+
+	/**
+	 * prefetches in a background thread
+	 */
+	public Thread start() {
+		Thread thread = new Thread(this, "tile prefetcher");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	@Override
+	public void run() {
+		int fetched = 0;
+		int failed = 0;
+
+		for (int[] tile : tiles) {
+			if (Thread.currentThread().isInterrupted())
+				break;
+			if (store.contains(source, tile[0], tile[1], tile[2]))
+				continue;
+
+			try {
+				store.put(source, tile[0], tile[1], tile[2], download(source.getTileUrl(tile[1], tile[2], tile[0])));
+				fetched++;
+			} catch (IOException e) {
+				log.warn("could not prefetch tile " + tile[0] + "/" + tile[1] + "/" + tile[2] + ": " + e.getMessage());
+				failed++;
+			}
+		}
+
+		log.info("prefetched " + fetched + " tiles of " + source.getName() + " (" + failed + " failed, "
+				+ tiles.size() + " in the bounding box)");
+	}
+
+	private byte[] download(String url) throws IOException {
+		URLConnection connection = new URL(url).openConnection();
+		connection.setRequestProperty("User-Agent", "matsim-evacuationgui");
+
+		InputStream in = connection.getInputStream();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+				out.write(buffer, 0, n);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+}
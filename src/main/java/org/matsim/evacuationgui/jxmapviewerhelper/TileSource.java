@@ -0,0 +1,168 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TileSource.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.jxmapviewerhelper;
+
+import java.io.File;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * source of slippy map tiles. a url template with {z}, {x} and {y} in osm
+ * zoom levels (0 shows the whole world): an online tile server, a local
+ * tile server or a local z/x/y directory.
+ */
+public class TileSource {
+
+	public static final String OSM = "http://tile.openstreetmap.org/{z}/{x}/{y}.png";
+	public static final int MAX_ZOOM = 17;
+
+	private final String name;
+	private final String template;
+	private final Pattern pattern;
+
+	/**
+	 * @param name
+	 *            name of the tiles of this source in the tile store
+	 */
+	public TileSource(String name, String template) {
+		this.name = name;
+		this.template = template;
+
+		// the tile urls of the template, to find the tile of a url
+		String regex = Pattern.quote(template).replace("{z}", "\\E(\\d+)\\Q").replace("{x}", "\\E(\\d+)\\Q")
+				.replace("{y}", "\\E(\\d+)\\Q");
+		this.pattern = Pattern.compile(regex);
+	}
+
+	public static TileSource getOsmTileSource() {
+		return new TileSource("osm", OSM);
+	}
+
+	/**
+	 * @return tiles of a local z/x/y directory
+	 */
+	public static TileSource getDirectoryTileSource(File directory) {
+		String base = directory.getAbsoluteFile().toURI().toString();
+		if (!base.endsWith("/"))
+			base += "/";
+		return new TileSource(directory.getName(), base + "{z}/{x}/{y}.png");
+	}
+
+	/**
+	 * @param source
+	 *            a local z/x/y directory or the url template of a tile server
+	 */
+	public static TileSource getTileSource(String source) {
+		if (new File(source).isDirectory())
+			return getDirectoryTileSource(new File(source));
+
+		// host (and port) of the server
+		String host = source.replaceFirst("^[a-zA-Z]+://", "");
+		if (host.indexOf('/') >= 0)
+			host = host.substring(0, host.indexOf('/'));
+		return new TileSource(host.replaceAll("[^a-zA-Z0-9.-]", "_"), source);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getTemplate() {
+		return template;
+	}
+
+	/**
+	 * @return true if the tiles are read from local files
+	 */
+	public boolean isLocal() {
+		return template.startsWith("file:");
+	}
+
+	public String getTileUrl(int x, int y, int zoom) {
+		return template.replace("{z}", Integer.toString(zoom)).replace("{x}", Integer.toString(x))
+				.replace("{y}", Integer.toString(y));
+	}
+
+	/**
+	 * @return file extension of the tiles (with the dot)
+	 */
+	public String getExtension() {
+		String path = template.indexOf('?') >= 0 ? template.substring(0, template.indexOf('?')) : template;
+		int dot = path.lastIndexOf('.');
+		if ((dot > path.lastIndexOf('}')) && (dot > path.lastIndexOf('/')))
+			return path.substring(dot);
+		return ".png";
+	}
+
+	/**
+	 * @return zoom, x and y of the tile url, null if the url is not a tile of
+	 *         this source
+	 */
+	public int[] getTile(String url) {
+		Matcher matcher = pattern.matcher(url);
+		if ((!matcher.matches()) || (matcher.groupCount() != 3))
+			return null;
+
+		// the placeholders in the order of the template
+		int[] tile = new int[3];
+		int[] order = getPlaceholderOrder();
+		for (int i = 0; i < 3; i++)
+			tile[order[i]] = Integer.parseInt(matcher.group(i + 1));
+		return tile;
+	}
+
+	/**
+	 * @return for each group of the pattern, whether it holds zoom (0), x
+	 *         (1) or y (2)
+	 */
+	private int[] getPlaceholderOrder() {
+		final String[] placeholders = { "{z}", "{x}", "{y}" };
+		int[] order = new int[3];
+		for (int i = 0; i < 3; i++) {
+			int rank = 0;
+			for (int j = 0; j < 3; j++)
+				if (template.indexOf(placeholders[j]) < template.indexOf(placeholders[i]))
+					rank++;
+			order[rank] = i;
+		}
+		return order;
+	}
+
+	/**
+	 * @return x of the tile containing the given longitude
+	 */
+	public static int getTileX(double lon, int zoom) {
+		int n = 1 << zoom;
+		int x = (int) Math.floor((lon + 180d) / 360d * n);
+		return Math.max(0, Math.min(n - 1, x));
+	}
+
+	/**
+	 * @return y of the tile containing the given latitude
+	 */
+	public static int getTileY(double lat, int zoom) {
+		int n = 1 << zoom;
+		double rad = Math.toRadians(lat);
+		int y = (int) Math.floor((1d - Math.log(Math.tan(rad) + 1d / Math.cos(rad)) / Math.PI) / 2d * n);
+		return Math.max(0, Math.min(n - 1, y));
+	}
+
+}
@@ -0,0 +1,93 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TileStore.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.jxmapviewerhelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * persistent store of map tiles, in a z/x/y directory per tile source. the
+ * directory of a source can be used as a local tile source for offline use.
+ */
+public class TileStore {
+
+	private final File directory;
+
+	public TileStore(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return store in the home directory of the user
+	 */
+	public static TileStore getDefaultTileStore() {
+		return new TileStore(new File(System.getProperty("user.home"), ".evacuationgui" + File.separator + "tiles"));
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return z/x/y directory of the tiles of the source
+	 */
+	public File getDirectory(TileSource source) {
+		return new File(directory, source.getName());
+	}
+
+	/**
+	 * @return file of the tile, whether it is stored or not
+	 */
+	public File getFile(TileSource source, int zoom, int x, int y) {
+		return new File(getDirectory(source), zoom + File.separator + x + File.separator + y + source.getExtension());
+	}
+
+	public boolean contains(TileSource source, int zoom, int x, int y) {
+		return getFile(source, zoom, x, y).isFile();
+	}
+
+	/**
+	 * stores the encoded tile. the file is written under a temporary name
+	 * first, so a concurrent reader never sees a partial tile.
+	 */
+	public void put(TileSource source, int zoom, int x, int y, byte[] data) throws IOException {
+		File file = getFile(source, zoom, x, y);
+		File dir = file.getParentFile();
+		if ((!dir.isDirectory()) && (!dir.mkdirs()) && (!dir.isDirectory()))
+			throw new IOException("could not create tile directory " + dir);
+
+		File tmp = File.createTempFile("tile", ".tmp", dir);
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+
+		if ((!tmp.renameTo(file)) && ((!file.delete()) || (!tmp.renameTo(file)))) {
+			tmp.delete();
+			throw new IOException("could not store tile " + file);
+		}
+	}
+
+}
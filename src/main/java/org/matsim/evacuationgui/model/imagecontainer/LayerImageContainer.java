@@ -0,0 +1,103 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * LayerImageContainer.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.model.imagecontainer;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * image container of a single render layer. draws into an own transparent
+ * image of the size of the main image container, the visualizer composes
+ * the images of all layers.
+ */
+public class LayerImageContainer extends BufferedImageContainer
+{
+	private final ImageContainerInterface target;
+	
+	public LayerImageContainer(ImageContainerInterface target)
+	{
+		super(new BufferedImage(Math.max(1, target.getWidth()), Math.max(1, target.getHeight()), BufferedImage.TYPE_INT_ARGB), target.getBorderWidth());
+		this.target = target;
+	}
+	
+	// the layers size their contents by the main image container
+	
+	@Override
+	public int getWidth()
+	{
+		return target.getWidth();
+	}
+	
+	@Override
+	public int getHeight()
+	{
+		return target.getHeight();
+	}
+	
+	@Override
+	public int getBorderWidth()
+	{
+		return target.getBorderWidth();
+	}
+	
+	/**
+	 * replaces the image if the main image container has been resized
+	 * 
+	 * @return true if the image has been replaced
+	 */
+	public boolean fitToTarget()
+	{
+		int width = Math.max(1, target.getWidth());
+		int height = Math.max(1, target.getHeight());
+		
+		if ((image.getWidth() == width) && (image.getHeight() == height))
+			return false;
+		
+		this.imageGraphics.dispose();
+		setImage(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+		return true;
+	}
+	
+	/**
+	 * clears the given region (the whole image if null) and restricts
+	 * drawing to it until {@link #endPaint()}
+	 */
+	public void beginPaint(Rectangle region)
+	{
+		if (region == null)
+			region = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+		
+		this.imageGraphics.setClip(region);
+		
+		Composite composite = this.imageGraphics.getComposite();
+		this.imageGraphics.setComposite(AlphaComposite.Clear);
+		this.imageGraphics.fillRect(region.x, region.y, region.width, region.height);
+		this.imageGraphics.setComposite(composite);
+	}
+	
+	public void endPaint()
+	{
+		this.imageGraphics.setClip(null);
+	}
+	
+}
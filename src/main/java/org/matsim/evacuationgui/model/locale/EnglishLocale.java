@@ -65,7 +65,13 @@ public class EnglishLocale implements Locale {
 			+ "usage 2: "
 			+ "currentmodule.java"
 			+ " -wms <url> -layer <layer name>\n"
-			+ "         starts the editor and uses the given wms server to load a backgorund layer\n\n";
+			+ "         starts the editor and uses the given wms server to load a backgorund layer\n\n"
+			+ "usage 3: "
+			+ "currentmodule.java"
+			+ " [-tiles <directory or url template>] [-tilestore <directory>] [-offline] [-prefetch]\n"
+			+ "         uses the tiles of a local z/x/y directory or tile server (url with {z}, {x} and {y}),\n"
+			+ "         keeps downloaded tiles in the tile store (default: ~/.evacuationgui/tiles),\n"
+			+ "         shows stored tiles only (-offline) or downloads the tiles of the scenario (-prefetch)\n\n";
 
 	private String labelSelection = "Selection mode";
 
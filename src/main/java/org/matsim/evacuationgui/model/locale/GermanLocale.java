@@ -65,7 +65,13 @@ public class GermanLocale implements Locale {
 			+ "usage 2: "
 			+ "currentmodule.java"
 			+ " -wms <url> -layer <layer name>\n"
-			+ "         startet das module und verwendet den über den Parameter angegebenen WMS-Layer\n\n";
+			+ "         startet das module und verwendet den über den Parameter angegebenen WMS-Layer\n\n"
+			+ "usage 3: "
+			+ "currentmodule.java"
+			+ " [-tiles <Verzeichnis oder URL-Vorlage>] [-tilestore <Verzeichnis>] [-offline] [-prefetch]\n"
+			+ "         verwendet die Kacheln eines lokalen z/x/y-Verzeichnisses oder Kachel-Servers (URL mit {z}, {x} und {y}),\n"
+			+ "         speichert geladene Kacheln im Kachelspeicher (Standard: ~/.evacuationgui/tiles),\n"
+			+ "         zeigt nur gespeicherte Kacheln (-offline) oder lädt die Kacheln des Szenarios vorab (-prefetch)\n\n";
 
 	private String labelSelection = "Auswahlmodus";
 
@@ -68,7 +68,7 @@ class PopEventListener extends AbstractListener {
 
 			// drawing a circle (goal is not achieved yet), repaint and fix view
 			controller.getActiveToolBox().setGoalAchieved(false);
-			controller.paintLayers();
+			controller.paintLayer(this.controller.getVisualizer().getPrimaryShapeRenderLayer());
 			this.fixed = true;
 
 		}
@@ -84,11 +84,13 @@ class PopEventListener extends AbstractListener {
 
 			// update circle
 			CircleShape circle = (CircleShape) controller.getShapeById(this.currentCircleId);
+			Rectangle region = getImageBounds(circle);
 			circle.setDestination(this.controller.c1);
 			this.controller.getVisualizer().getPrimaryShapeRenderLayer().updatePixelCoordinates(circle);
 
-			// repaint
-			controller.paintLayers();
+			// repaint the old and the new area of the circle only
+			region.add(getImageBounds(circle));
+			controller.paintLayer(this.controller.getVisualizer().getPrimaryShapeRenderLayer(), region);
 		}
 
 		super.mouseDragged(e);
@@ -108,7 +110,7 @@ class PopEventListener extends AbstractListener {
 					this.controller.getActiveToolBox().updateMask();
 					this.controller.getVisualizer().getPrimaryShapeRenderLayer().updatePixelCoordinates(polygon);
 					controller.getActiveToolBox().setGoalAchieved(true);
-					controller.paintLayers();
+					controller.paintLayer(this.controller.getVisualizer().getPrimaryShapeRenderLayer());
 				} else
 					this.controller.removeShape(circle.getId());
 			}
@@ -122,6 +124,19 @@ class PopEventListener extends AbstractListener {
 		return new Point(mousePoint.x + viewPortBounds.x - offsetX, mousePoint.y + viewPortBounds.y - offsetY);
 	}
 
+	/**
+	 * @return area of the image covered by the circle and its contour
+	 */
+	private Rectangle getImageBounds(CircleShape circle) {
+		viewPortBounds = this.controller.getViewportBounds();
+		Point origin = circle.getPixelOrigin();
+		int radius = circle.getPixelRadius();
+		int margin = (int) Math.ceil(circle.getThickness()) + 1;
+
+		return new Rectangle(origin.x - radius / 2 - viewPortBounds.x - margin, origin.y - radius / 2 - viewPortBounds.y - margin,
+				radius + 2 * margin, radius + 2 * margin);
+	}
+
 	public void setPopCircle(Point2D c0, Point2D c1) {
 		String popAreaID = controller.getLocale().popArea() + " " + (++currentPopAreaID);
 		CircleShape popCircle = ShapeFactory.getPopShape(popAreaID, controller.getVisualizer().getPrimaryShapeRenderLayer().getId(), c0, c1);
@@ -0,0 +1,88 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EvacuationAnalysisBatch.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.run;
+
+import java.io.File;
+import java.util.List;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.evacuationgui.analysis.control.BatchAnalysis;
+import org.matsim.evacuationgui.analysis.data.IterationSummary;
+
+/**
+ * headless entry point of the evacuation analysis. analyzes the events
+ * files of all iterations of a simulation run and writes a summary table
+ * and a convergence chart to the output directory.
+ *
+ */
+public class EvacuationAnalysisBatch {
+
+	public static final String SUMMARY_FILE = "evacuation_analysis.txt";
+	public static final String CHART_FILE = "evacuation_analysis.png";
+
+	public static void main(String[] args) {
+		if ((args.length < 1) || (args.length > 3)) {
+			printUsage();
+			System.exit(-1);
+		}
+
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 3);
+		boolean streaming = false;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-streaming"))
+				streaming = true;
+			else
+				threads = Integer.parseInt(args[i]);
+		}
+
+		Config config = ConfigUtils.loadConfig(args[0]);
+		Scenario scenario = ScenarioUtils.loadScenario(config);
+		String outputDir = config.controler().getOutputDirectory();
+
+		BatchAnalysis batchAnalysis = new BatchAnalysis(scenario, threads);
+		batchAnalysis.setStreaming(streaming);
+		List<IterationSummary> summaries = batchAnalysis.run(BatchAnalysis.getEventFiles(outputDir));
+
+		BatchAnalysis.writeSummaries(summaries, new File(outputDir, SUMMARY_FILE).toString());
+		BatchAnalysis.getConvergenceChart(summaries).saveAsPng(new File(outputDir, CHART_FILE).toString(), 800, 600);
+	}
+
+	protected static void printUsage() {
+		System.out.println();
+		System.out.println("EvacuationAnalysisBatch");
+		System.out.println("Analyzes the events files of all iterations of an evacuation simulation run.");
+		System.out.println();
+		System.out.println("usage : EvacuationAnalysisBatch config-file [number-of-threads] [-streaming]");
+		System.out.println();
+		System.out.println("config-file:        The MATSim config file of the simulation run. The summary (" + SUMMARY_FILE + ") and the");
+		System.out.println("                    convergence chart (" + CHART_FILE + ") are written to its output directory.");
+		System.out.println("number-of-threads:  Number of events files analyzed in parallel (default: number of cores / 3).");
+		System.out.println("-streaming:         Do not keep single events in memory, clearing times are estimated.");
+		System.out.println();
+		System.out.println("---------------------");
+		System.out.println("2011, 2012, matsim.org");
+		System.out.println();
+	}
+
+}
@@ -0,0 +1,124 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EvacuationAnalysisExport.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.run;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.evacuationgui.analysis.control.BatchAnalysis;
+import org.matsim.evacuationgui.analysis.control.EventDataExporter;
+import org.matsim.evacuationgui.analysis.control.EventHandler;
+import org.matsim.evacuationgui.analysis.control.TilePyramidExporter;
+import org.matsim.evacuationgui.analysis.data.EventData;
+import org.matsim.evacuationgui.model.Constants.Mode;
+import org.matsim.evacuationgui.utils.IdClassification;
+
+/**
+ * headless entry point of the evacuation analysis of a single events file.
+ * writes the evacuation time, clearing time and utilization colorations as
+ * georeferenced png images and the cell and link values as csv files,
+ * optionally as tile pyramid as well.
+ *
+ */
+public class EvacuationAnalysisExport {
+
+	public static void main(String[] args) {
+		if ((args.length < 3) || (args.length > 6)) {
+			printUsage();
+			System.exit(-1);
+		}
+
+		// no display on batch nodes
+		if (System.getProperty("java.awt.headless") == null)
+			System.setProperty("java.awt.headless", "true");
+
+		int cellCount = 10;
+		boolean streaming = false;
+		boolean tiles = false;
+		for (int i = 3; i < args.length; i++) {
+			if (args[i].equals("-streaming"))
+				streaming = true;
+			else if (args[i].equals("-tiles"))
+				tiles = true;
+			else
+				cellCount = Integer.parseInt(args[i]);
+		}
+
+		Config config = ConfigUtils.loadConfig(args[0]);
+		Scenario scenario = ScenarioUtils.loadScenario(config);
+		File eventFile = new File(args[1]);
+		File outputDir = new File(args[2]);
+		outputDir.mkdirs();
+
+		EventHandler eventHandler = new EventHandler(true, streaming, eventFile.getName(), scenario, cellCount, null);
+		eventHandler.setK(5);
+		// opaque colors
+		eventHandler.setTransparency(1f);
+		BatchAnalysis.readEvents(eventFile, eventHandler);
+		EventData data = eventHandler.getData();
+
+		// links as shown by the gui, without exit links
+		IdClassification ids = IdClassification.get(scenario);
+		List<Link> links = new ArrayList<Link>();
+		for (Link link : scenario.getNetwork().getLinks().values()) {
+			if (!ids.isExitLink(link.getId()))
+				links.add(link);
+		}
+
+		EventDataExporter exporter = new EventDataExporter(data, links);
+		exporter.writeImage(Mode.EVACUATION, new File(outputDir, "evacuation_time.png").toString());
+		exporter.writeImage(Mode.CLEARING, new File(outputDir, "clearing_time.png").toString());
+		exporter.writeImage(Mode.UTILIZATION, new File(outputDir, "utilization.png").toString());
+		exporter.writeCells(new File(outputDir, "cells.csv").toString());
+		exporter.writeLinks(new File(outputDir, "links.csv").toString());
+
+		if (tiles)
+			new TilePyramidExporter(data, links).writePyramid(new File(outputDir, "tiles"));
+	}
+
+	protected static void printUsage() {
+		System.out.println();
+		System.out.println("EvacuationAnalysisExport");
+		System.out.println("Analyzes an events file of an evacuation simulation run without starting the gui.");
+		System.out.println();
+		System.out.println("usage : EvacuationAnalysisExport config-file events-file output-dir [number-of-cells] [-streaming] [-tiles]");
+		System.out.println();
+		System.out.println("config-file:      The MATSim config file of the simulation run.");
+		System.out.println("events-file:      The events file to analyze.");
+		System.out.println("output-dir:       Directory the images (png with world file, in the network coordinate system)");
+		System.out.println("                  and csv files are written to.");
+		System.out.println("number-of-cells:  Number of grid cells (horizontally), default: 10.");
+		System.out.println("-streaming:       Do not keep single events in memory, median and clearing times are estimated.");
+		System.out.println("-tiles:           Also write the colorations as pyramid of 256x256 png tiles (tiles/<mode>/z/x/y.png,");
+		System.out.println("                  in the network coordinate system) with a metadata.json, for viewing without the gui.");
+		System.out.println();
+		System.out.println("---------------------");
+		System.out.println("2011, 2012, matsim.org");
+		System.out.println();
+	}
+
+}
@@ -0,0 +1,135 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * IdClassification.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.utils;
+
+import java.util.BitSet;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+
+/**
+ * classifies the ids of an evacuation scenario by their naming convention,
+ * so the classification can be tested by {@link Id#index()} instead of
+ * scanning the id strings:
+ * <ul>
+ * <li>exit links, named "el..."</li>
+ * <li>links named "en..." (after the exit node they lead to)</li>
+ * <li>exit nodes, named "en..."</li>
+ * <li>vehicle pseudo persons, named "...veh..." (see {@link Persons})</li>
+ * </ul>
+ * links and nodes are classified once per network state, see
+ * {@link #get(Scenario)}. the classification does not change afterwards,
+ * so it can be shared by several threads.
+ *
+ */
+public class IdClassification {
+
+	private static final String ELEMENT_NAME = "evacuationgui.idClassification";
+
+	private final BitSet exitLinks = new BitSet();
+	private final BitSet exitNodeLinks = new BitSet();
+	private final BitSet exitNodes = new BitSet();
+
+	// network state the ids were classified for
+	private final Network network;
+	private final int linkCount;
+	private final int nodeCount;
+
+	/**
+	 * @return the classification of the network of the scenario, kept as
+	 *         scenario element. it is created again if the network has been
+	 *         replaced or links or nodes have been added or removed since
+	 *         (e.g. by the scenario generator).
+	 */
+	public static IdClassification get(Scenario sc) {
+		synchronized (sc) {
+			IdClassification ids = (IdClassification) sc.getScenarioElement(ELEMENT_NAME);
+			if ((ids == null) || (!ids.isClassified(sc.getNetwork()))) {
+				ids = new IdClassification(sc.getNetwork());
+				sc.removeScenarioElement(ELEMENT_NAME);
+				sc.addScenarioElement(ELEMENT_NAME, ids);
+			}
+			return ids;
+		}
+	}
+
+	public IdClassification(Network network) {
+		this.network = network;
+		this.linkCount = network.getLinks().size();
+		this.nodeCount = network.getNodes().size();
+
+		for (Link link : network.getLinks().values()) {
+			String id = link.getId().toString();
+			if (id.contains("el"))
+				exitLinks.set(link.getId().index());
+			if (id.contains("en"))
+				exitNodeLinks.set(link.getId().index());
+		}
+
+		for (Node node : network.getNodes().values()) {
+			if (node.getId().toString().contains("en"))
+				exitNodes.set(node.getId().index());
+		}
+	}
+
+	private boolean isClassified(Network network) {
+		return (network == this.network) && (network.getLinks().size() == linkCount) && (network.getNodes().size() == nodeCount);
+	}
+
+	public boolean isExitLink(Id<Link> linkId) {
+		return exitLinks.get(linkId.index());
+	}
+
+	public boolean isExitNodeLink(Id<Link> linkId) {
+		return exitNodeLinks.get(linkId.index());
+	}
+
+	public boolean isExitNode(Id<Node> nodeId) {
+		return exitNodes.get(nodeId.index());
+	}
+
+	/**
+	 * classifies person ids when they are tested for the first time (they
+	 * are usually only known once the events are read). not thread safe,
+	 * each event handler keeps its own.
+	 */
+	public static class Persons {
+
+		private final BitSet vehicles = new BitSet();
+		private final BitSet classifiedPersons = new BitSet();
+
+		public boolean isVehicle(Id<Person> personId) {
+			int index = personId.index();
+			if (!classifiedPersons.get(index)) {
+				classifiedPersons.set(index);
+				if (personId.toString().contains("veh"))
+					vehicles.set(index);
+			}
+			return vehicles.get(index);
+		}
+
+	}
+
+}
@@ -20,6 +20,9 @@
 
 package org.matsim.evacuationgui.view;
 
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 
@@ -41,6 +44,10 @@ public class Visualizer
 	private ShapeRenderer secondaryShapeRenderLayer;
 	private boolean painting = false;
 	
+	// view of the last composition, panning or zooming moves all layers
+	private Rectangle viewport;
+	private int zoom;
+	
 	public Visualizer(Controller controller)
 	{
 		this.controller = controller;
@@ -72,6 +79,16 @@ public class Visualizer
 		return false;		
 	}
 	
+	public GridRenderer getGridRenderLayer()
+	{
+		for (AbstractRenderLayer layer : this.getRenderLayers())
+		{
+			if (layer instanceof GridRenderer)
+				return (GridRenderer)layer;
+		}
+		return null;
+	}
+	
 	public boolean hasShapeRenderer()
 	{
 		// shape renderer is at hand
@@ -146,12 +163,44 @@ public class Visualizer
 		
 		painting = true;
 		
+		if (this.activeMapRenderLayer != null)
+		{
+			Rectangle viewport = this.activeMapRenderLayer.getViewportBounds();
+			int zoom = this.activeMapRenderLayer.getZoom();
+			
+			if ((!viewport.equals(this.viewport)) || (zoom != this.zoom))
+			{
+				setDirty();
+				this.viewport = new Rectangle(viewport);
+				this.zoom = zoom;
+			}
+		}
+		
+		// compose the surfaces of the layers, only the dirty ones are
+		// painted again
+		BufferedImage image = getBufferedImage();
+		Graphics2D g = image.createGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, image.getWidth(), image.getHeight());
+		g.setComposite(AlphaComposite.SrcOver);
+		
 		for (AbstractRenderLayer layer : renderLayers)
-			layer.paintLayer();
+			g.drawImage(layer.paintSurface(), 0, 0, null);
+		
+		g.dispose();
 		
 		painting = false;
 	}
 	
+	/**
+	 * all layers are painted again on the next composition
+	 */
+	public void setDirty()
+	{
+		for (AbstractRenderLayer layer : renderLayers)
+			layer.setDirty();
+	}
+	
 	public BufferedImage getBufferedImage()
 	{
 		return controller.getImageContainer().getImage();
@@ -20,8 +20,13 @@
 
 package org.matsim.evacuationgui.view.renderer;
 
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
 import org.matsim.evacuationgui.control.Controller;
 import org.matsim.evacuationgui.model.imagecontainer.ImageContainerInterface;
+import org.matsim.evacuationgui.model.imagecontainer.LayerImageContainer;
 
 /**
  * abstrat class defining render layer basics
@@ -36,12 +41,19 @@ public abstract class AbstractRenderLayer
 	protected final ImageContainerInterface imageContainer;
 	protected boolean enabled = false;
 	
+	// the layer paints into its own surface, which is only painted again if
+	// the layer (or a region of it) is dirty
+	private final LayerImageContainer surface;
+	private boolean dirty = true;
+	private Rectangle dirtyRegion;
+	
 	protected static int currentId = -1;
 	
 	public AbstractRenderLayer(Controller controller)
 	{
 		this.controller = controller;
-		this.imageContainer = controller.getImageContainer();
+		this.surface = new LayerImageContainer(controller.getImageContainer());
+		this.imageContainer = this.surface;
 		this.id = ++currentId;
 	}
 	
@@ -76,4 +88,63 @@ public abstract class AbstractRenderLayer
 	}
 
 	public synchronized void paintLayer() {}
+	
+	/**
+	 * the whole layer is painted again on the next composition
+	 */
+	public synchronized void setDirty()
+	{
+		this.dirty = true;
+		this.dirtyRegion = null;
+	}
+	
+	/**
+	 * only the given region (image coordinates) is painted again on the
+	 * next composition
+	 */
+	public synchronized void setDirty(Rectangle region)
+	{
+		// already dirty as a whole
+		if ((this.dirty) && (this.dirtyRegion == null))
+			return;
+		
+		this.dirtyRegion = this.dirty ? this.dirtyRegion.union(region) : new Rectangle(region);
+		this.dirty = true;
+	}
+	
+	public synchronized boolean isDirty()
+	{
+		return dirty;
+	}
+	
+	/**
+	 * @return graphics of the surface, for layers painting swing components
+	 */
+	protected Graphics2D getSurfaceGraphics()
+	{
+		return this.surface.getImageGraphics();
+	}
+	
+	/**
+	 * paints the dirty region of the layer into its surface
+	 * 
+	 * @return the surface to compose
+	 */
+	public synchronized BufferedImage paintSurface()
+	{
+		boolean resized = this.surface.fitToTarget();
+		
+		if ((this.dirty) || (resized))
+		{
+			Rectangle region = resized ? null : this.dirtyRegion;
+			this.dirty = false;
+			this.dirtyRegion = null;
+			
+			this.surface.beginPaint(region);
+			paintLayer();
+			this.surface.endPaint();
+		}
+		
+		return this.surface.getImage();
+	}
 }
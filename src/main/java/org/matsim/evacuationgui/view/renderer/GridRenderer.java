@@ -20,45 +20,61 @@
 
 package org.matsim.evacuationgui.view.renderer;
 
-import org.matsim.api.core.v01.Coord;
-import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.api.core.v01.population.Person;
 import org.matsim.evacuationgui.analysis.EAToolBox;
+import org.matsim.evacuationgui.analysis.control.vis.Coloration;
 import org.matsim.evacuationgui.analysis.data.AttributeData;
 import org.matsim.evacuationgui.analysis.data.Cell;
+import org.matsim.evacuationgui.analysis.data.ColorationMode;
+import org.matsim.evacuationgui.analysis.data.ComparisonData;
 import org.matsim.evacuationgui.analysis.data.EventData;
 import org.matsim.evacuationgui.control.Controller;
 import org.matsim.evacuationgui.model.Constants.Mode;
 import org.matsim.evacuationgui.model.Constants.Unit;
 import org.matsim.evacuationgui.model.config.ToolConfig;
+import org.matsim.evacuationgui.model.imagecontainer.BufferedImageContainer;
+import org.matsim.evacuationgui.model.imagecontainer.ImageContainerInterface;
 import org.matsim.core.utils.collections.QuadTree;
-import org.matsim.core.utils.collections.QuadTree.Rect;
 import org.matsim.core.utils.collections.Tuple;
-import org.matsim.core.utils.geometry.CoordinateTransformation;
 
 import java.awt.*;
-import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
 public class GridRenderer extends AbstractRenderLayer {
 
 	private Mode mode = Mode.EVACUATION;
 	private float transparency;
+	private ColorationMode colorationMode = ColorationMode.GREEN_YELLOW_RED;
 	private QuadTree<Cell> cellTree;
 
+	// time bin shown, -1 for the end of the run
+	private int timeBin = -1;
+
 	private Cell selectedCell;
-	private CoordinateTransformation ctInverse;
 	private EventData data;
 	private ArrayList<Link> links;
 
+	// pixel geometry of the current zoom level, panning only moves the
+	// viewport
+	private final PixelGeometryCache geometry;
+	private Rectangle viewport;
+
+	// the grid and the utilization of the viewport, rendered off-screen and
+	// only again if one of the values or objects of the view state changes
+	private BufferedImage raster;
+	private Object[] rasterValues;
+	private Object[] rasterObjects;
+
+	// if set, the differences to the baseline are shown instead of the data
+	// of the controller
+	private ComparisonData comparison;
+
 	public GridRenderer(Controller controller) {
 		super(controller);
 
-		this.ctInverse = this.controller.getCtTarget2Osm();
+		this.geometry = new PixelGeometryCache(controller);
 	}
 
 	public float getTransparency() {
@@ -69,9 +85,39 @@ public class GridRenderer extends AbstractRenderLayer {
 		this.transparency = transparency;
 	}
 
+	public void setColorationMode(ColorationMode colorationMode) {
+		this.colorationMode = colorationMode;
+	}
+
+	public int getTimeBin() {
+		return timeBin;
+	}
+
+	/**
+	 * shows the state at the end of the given time bin (-1: end of the run).
+	 * the cells keep their values per time bin, nothing is recalculated.
+	 */
+	public void setTimeBin(int timeBin) {
+		this.timeBin = timeBin;
+		this.controller.paintLayers();
+	}
+
+	public ComparisonData getComparisonData() {
+		return comparison;
+	}
+
+	/**
+	 * shows the differences of two runs on the grid of the baseline (null
+	 * to show the data of the controller again)
+	 */
+	public void setComparisonData(ComparisonData comparison) {
+		this.comparison = comparison;
+		this.controller.paintLayers();
+	}
+
 	@Override
 	public synchronized void paintLayer() {
-		data = this.controller.getEventData();
+		data = comparison != null ? comparison.getBaseline() : this.controller.getEventData();
 		links = this.controller.getLinkList();
 
 		if (data == null)
@@ -80,50 +126,129 @@ public class GridRenderer extends AbstractRenderLayer {
 			this.cellTree = data.getCellTree();
 
 		// viewport
-		this.imageContainer.translate(-controller.getViewportBounds().x,
-				-controller.getViewportBounds().y);
+		this.viewport = controller.getViewportBounds();
+
+		// pixel coordinates of the cells and links, projected once per zoom
+		// level
+		int zoom = this.controller.getZoom();
+		this.geometry.updateCells(zoom, cellTree, data.getCellSize());
+		if (mode.equals(Mode.UTILIZATION) && (links != null))
+			this.geometry.updateLinks(zoom, links);
+
+		// the grid and the utilization only change with the view state, the
+		// mouse only moves the hover overlay
+		if (!isRasterValid(zoom))
+			renderRaster(zoom);
+		this.imageContainer.drawBufferedImage(0, 0, this.raster);
+
+		this.imageContainer.translate(-viewport.x, -viewport.y);
+
+		// draw the hovered cell and its tooltip
+		drawHover(mode);
+
+		// viewport
+		this.imageContainer.translate(viewport.x, viewport.y);
+	}
+
+	/**
+	 * forces the grid to be rendered again on the next paint
+	 */
+	public synchronized void invalidate() {
+		this.rasterValues = null;
+		this.rasterObjects = null;
+	}
+
+	/**
+	 * @return the objects whose replacement changes the picture, compared by
+	 *         identity
+	 */
+	private Object[] getRasterObjects() {
+		Object visData = null;
+		if (mode.equals(Mode.EVACUATION))
+			visData = data.getEvacuationTimeVisData();
+		else if (mode.equals(Mode.CLEARING))
+			visData = data.getClearingTimeVisData();
+		else if (mode.equals(Mode.UTILIZATION))
+			visData = data.getLinkUtilizationVisData();
+
+		Object cellColoration = comparison != null ? comparison.getCellColoration(mode) : null;
+		Object linkColoration = comparison != null ? comparison.getLinkColoration() : null;
+
+		return new Object[] { data, cellTree, links, visData, comparison, cellColoration, linkColoration };
+	}
+
+	/**
+	 * @return the settings which change the picture, compared by value
+	 */
+	private Object[] getRasterValues(int zoom) {
+		return new Object[] { new Rectangle(viewport), zoom, mode, transparency, colorationMode, timeBin };
+	}
+
+	private boolean isRasterValid(int zoom) {
+		if ((raster == null) || (rasterObjects == null)
+				|| (!Arrays.equals(rasterValues, getRasterValues(zoom))))
+			return false;
+
+		Object[] objects = getRasterObjects();
+		for (int i = 0; i < objects.length; i++)
+			if (objects[i] != rasterObjects[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * renders the grid (and the utilization) of the viewport into the
+	 * off-screen raster
+	 */
+	private void renderRaster(int zoom) {
+		int width = Math.max(1, viewport.width);
+		int height = Math.max(1, viewport.height);
+
+		if ((raster == null) || (raster.getWidth() != width) || (raster.getHeight() != height))
+			this.raster = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+		BufferedImageContainer canvas = new BufferedImageContainer(raster, 0);
+		Graphics2D g = canvas.getImageGraphics();
+		g.setComposite(AlphaComposite.Clear);
+		g.fillRect(0, 0, width, height);
+		g.setComposite(AlphaComposite.SrcOver);
+
+		canvas.translate(-viewport.x, -viewport.y);
 
 		// draw the grid
-		drawGrid(mode, true);
+		drawGrid(canvas, mode);
 
 		// draw utilization
 		if (mode.equals(Mode.UTILIZATION))
-			drawUtilization();
+			drawUtilization(canvas);
 
-		// viewport
-		this.imageContainer.translate(controller.getViewportBounds().x,
-				controller.getViewportBounds().y);
+		g.dispose();
+
+		this.rasterValues = getRasterValues(zoom);
+		this.rasterObjects = getRasterObjects();
 	}
 
-	private void drawUtilization() {
+	private void drawUtilization(ImageContainerInterface canvas) {
 		if ((links == null) || (links.size() == 0))
 			return;
 
-		HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> linkLeaveTimes = data
-				.getLinkLeaveTimes();
-		HashMap<Id<Link>, List<Tuple<Id<Person>, Double>>> linkEnterTimes = data
-				.getLinkEnterTimes();
+		int zoom = this.controller.getZoom();
 
-		for (Link link : this.links) {
-			List<Tuple<Id<Person>, Double>> leaveTimes = linkLeaveTimes.get(link
-					.getId());
-			List<Tuple<Id<Person>, Double>> enterTimes = linkEnterTimes.get(link
-					.getId());
+		// the widest stroke sticks out of the bounding box of a link
+		int margin = (int) Math.ceil(35f / (float) Math.pow(2, zoom)) + 1;
 
-			if ((enterTimes != null) && (enterTimes.size() > 0)
-					&& (leaveTimes != null)) {
+		for (int i : this.geometry.getLinks(this.viewport, margin)) {
+			Link link = this.geometry.getLink(i);
 
-				Coord fromCoord = this.controller.getCtTarget2Osm().transform(
-						new Coord(link.getFromNode().getCoord().getX(), link.getFromNode().getCoord().getY()));
-				Point2D fromP2D = this.controller
-						.geoToPixel(new Point2D.Double(fromCoord.getY(),
-								fromCoord.getX()));
+			if (comparison != null) {
+				Tuple<Float, Color> coloration = comparison.getLinkColoration().getAttribute(link.getId());
+				if (coloration != null)
+					drawLink(canvas, i, (coloration.getFirst() * 35f) / (float) Math.pow(2, zoom), coloration.getSecond());
+				continue;
+			}
 
-				Coord toCoord = this.controller.getCtTarget2Osm().transform(
-						new Coord(link.getToNode().getCoord().getX(), link
-								.getToNode().getCoord().getY()));
-				Point2D toP2D = this.controller.geoToPixel(new Point2D.Double(
-						toCoord.getY(), toCoord.getX()));
+			if ((data.getLinkEnterCount(link.getId()) > 0)
+					&& (data.getLinkLeaveCount(link.getId()) > 0)) {
 
 				float strokeWidth = 1;
 				Color linkColor = Color.BLUE;
@@ -135,190 +260,238 @@ public class GridRenderer extends AbstractRenderLayer {
 								.getLinkUtilizationVisData().getAttribute(
 										link.getId());
 						strokeWidth = ((currentColoration.getFirst() * 35f) / (float) Math
-								.pow(2, this.controller.getZoom()));
+								.pow(2, zoom));
 						linkColor = currentColoration.getSecond();
 					}
 				}
 
-				this.imageContainer.setLineThickness(strokeWidth);
-
-				this.imageContainer.setColor(linkColor);
-				// g.setColor(Color.RED);
-				this.imageContainer.drawLine((int) fromP2D.getX(),
-						(int) fromP2D.getY(), (int) toP2D.getX(),
-						(int) toP2D.getY());
+				drawLink(canvas, i, strokeWidth, linkColor);
 			}
 
 		}
 	}
 
+	/**
+	 * draws the link with the given index of the pixel geometry
+	 */
+	private void drawLink(ImageContainerInterface canvas, int i, float strokeWidth, Color linkColor) {
+		int[] lines = this.geometry.getLinkLines();
+
+		canvas.setLineThickness(strokeWidth);
+
+		canvas.setColor(linkColor);
+		canvas.drawLine(lines[4 * i], lines[4 * i + 1],
+				lines[4 * i + 2], lines[4 * i + 3]);
+	}
+
 	/**
 	 * draw the grid
-	 * 
-	 * @param drawToolTip
-	 * 
 	 */
-	private void drawGrid(Mode mode, boolean drawToolTip) {
-		Point currentMousePosition = this.controller.getMousePosition();
-		double gridSize = this.data.getCellSize();
-
-		if (this.data != null) {
-			this.imageContainer.setColor(Color.BLACK);
-			this.imageContainer.setLineThickness(1);
-
-			// get all cells from celltree
-			LinkedList<Cell> cells = new LinkedList<Cell>();
-			cellTree.getRectangle(new Rect(Double.NEGATIVE_INFINITY,
-					Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
-					Double.POSITIVE_INFINITY), cells);
-
-			this.selectedCell = null;
-
-			for (Cell cell : cells) {
-
-				// get cell coordinate (+ gridsize) and transform into pixel
-				// coordinates
-				Coord cellCoord = cell.getCoord();
-				Coord transformedCoord = this.ctInverse
-						.transform(new Coord(cellCoord.getX() - gridSize
-								/ 2, cellCoord.getY() - gridSize / 2));
-				Point2D cellCoordP2D = this.controller
-						.geoToPixel(new Point2D.Double(transformedCoord.getY(),
-								transformedCoord.getX()));
-				Coord cellPlusGridCoord = this.ctInverse
-						.transform(new Coord(cellCoord.getX() + gridSize
-								/ 2, cellCoord.getY() + gridSize / 2));
-				Point2D cellPlusGridCoordP2D = this.controller
-						.geoToPixel(new Point2D.Double(
-								cellPlusGridCoord.getY(), cellPlusGridCoord
-										.getX()));
-
-				// adjust coordinates using the viewport
-				int gridX1 = (int) cellCoordP2D.getX();
-				int gridY1 = (int) cellCoordP2D.getY();
-				int gridX2 = (int) cellPlusGridCoordP2D.getX();
-				int gridY2 = (int) cellPlusGridCoordP2D.getY();
-
-				// make sure the first values are the smaller ones, if not: swap
-				if (gridX1 > gridX2) {
-					int temp = gridX2;
-					gridX2 = gridX1;
-					gridX1 = temp;
-				}
-				if (gridY1 > gridY2) {
-					int temp = gridY2;
-					gridY2 = gridY1;
-					gridY1 = temp;
+	private void drawGrid(ImageContainerInterface canvas, Mode mode) {
+		canvas.setColor(Color.BLACK);
+		canvas.setLineThickness(1);
+
+		int[] rects = this.geometry.getCellRects();
+
+		// only the cells within the viewport
+		for (int i : this.geometry.getCells(this.viewport)) {
+			Cell cell = this.geometry.getCell(i);
+
+			int gridX1 = rects[4 * i];
+			int gridY1 = rects[4 * i + 1];
+			int gridX2 = rects[4 * i + 2];
+			int gridY2 = rects[4 * i + 3];
+
+			canvas.setLineThickness(1);
+
+			// color grid (if mode equals evacuation or clearing time)
+			if ((mode.equals(Mode.EVACUATION))
+					|| (mode.equals(Mode.CLEARING))) {
+				AttributeData<Color> visData;
+
+				// colorize cell depending on the picked colorization, cell
+				// data and the relative travel or clearance time
+				canvas.setColor(ToolConfig.COLOR_DISABLED_TRANSPARENT); // default
+
+				if (comparison != null) {
+					Color color = getDifferenceColor(cell, mode);
+					if (color != null)
+						canvas.setColor(color);
+
+				} else if (isTimeBinShown()) {
+					Color color = getTimeBinColor(cell, mode);
+					if (color != null)
+						canvas.setColor(color);
+
+				} else if (mode.equals(Mode.EVACUATION)) {
+					visData = data
+							.getEvacuationTimeVisData();
+					if ((cell.getCount() > 0) && (visData != null))
+						canvas.setColor(visData
+								.getAttribute(cell.getId()));
+
+				} else if (mode.equals(Mode.CLEARING)) {
+					visData = data
+							.getClearingTimeVisData();
+					if ((cell.getClearingTime() > 0) && (visData != null))
+						canvas.setColor(visData
+								.getAttribute(cell.getId()));
 				}
 
-				this.imageContainer.setLineThickness(1);
-
-				// color grid (if mode equals evacuation or clearing time)
-				if ((mode.equals(Mode.EVACUATION))
-						|| (mode.equals(Mode.CLEARING))) {
-					AttributeData<Color> visData;
-
-					// colorize cell depending on the picked colorization, cell
-					// data and the relative travel or clearance time
-					this.imageContainer
-							.setColor(ToolConfig.COLOR_DISABLED_TRANSPARENT); // default
-
-					if (mode.equals(Mode.EVACUATION)) {
-						visData = data
-								.getEvacuationTimeVisData();
-						if ((cell.getCount() > 0))
-							this.imageContainer.setColor(visData
-									.getAttribute(cell.getId()));
-
-					} else if (mode.equals(Mode.CLEARING)) {
-						visData = data
-								.getClearingTimeVisData();
-						if (cell.getClearingTime() > 0)
-							this.imageContainer.setColor(visData
-									.getAttribute(cell.getId()));
-					}
+				canvas.fillRect(gridX1, gridY1, gridX2
+						- gridX1, gridY2 - gridY1);
+			}
 
-					this.imageContainer.fillRect(gridX1, gridY1, gridX2
-							- gridX1, gridY2 - gridY1);
-				}
+			// draw grid
+			if (mode.equals(Mode.UTILIZATION)) {
+				canvas.setColor(ToolConfig.COLOR_GRID_UTILIZATION);
+				canvas.setLineThickness(2);
+				canvas.drawRect(gridX1, gridY1, gridX2
+						- gridX1, gridY2 - gridY1);
+				Color color = comparison != null ? getDifferenceColor(cell, mode) : null;
+				canvas.setColor(color != null ? color : ToolConfig.COLOR_CELL);
+				canvas.fillRect(gridX1, gridY1, gridX2
+						- gridX1, gridY2 - gridY1);
+			} else {
+				canvas.setColor(ToolConfig.COLOR_GRID);
+				canvas.setLineThickness(1);
+				canvas.drawRect(gridX1, gridY1, gridX2
+						- gridX1, gridY2 - gridY1);
+
+			}
+		}
+	}
 
-				// draw grid
-				if (mode.equals(Mode.UTILIZATION)) {
-					this.imageContainer
-							.setColor(ToolConfig.COLOR_GRID_UTILIZATION);
-					this.imageContainer.setLineThickness(2);
-					this.imageContainer.drawRect(gridX1, gridY1, gridX2
-							- gridX1, gridY2 - gridY1);
-					this.imageContainer.setColor(ToolConfig.COLOR_CELL);
-					this.imageContainer.fillRect(gridX1, gridY1, gridX2
-							- gridX1, gridY2 - gridY1);
-				} else {
-					this.imageContainer.setColor(ToolConfig.COLOR_GRID);
-					this.imageContainer.setLineThickness(1);
-					this.imageContainer.drawRect(gridX1, gridY1, gridX2
-							- gridX1, gridY2 - gridY1);
+	/**
+	 * draws the highlight and the tooltip of the cell under the mouse on top
+	 * of the raster
+	 */
+	private void drawHover(Mode mode) {
+		Point mp = this.controller.getMousePosition();
 
-				}
+		this.selectedCell = null;
+		if (mp == null)
+			return;
 
-				if (drawToolTip && currentMousePosition != null) {
-					int mouseX = this.controller.getMousePosition().x;
-					int mouseY = this.controller.getMousePosition().y;
+		// the cells do not overlap, so at most one contains the mouse
+		int i = this.geometry.getCellAt(mp.x, mp.y);
+		if (i < 0)
+			return;
 
-					if ((mouseX >= gridX1) && (mouseX < gridX2)
-							&& (mouseY >= gridY1) && (mouseY < gridY2)) {
-						this.imageContainer.setColor(ToolConfig.COLOR_HOVER);
-						this.imageContainer.fillRect(gridX1, gridY1, gridX2
-								- gridX1, gridY2 - gridY1);
-						this.imageContainer.setLineThickness(3);
-						this.imageContainer.drawRect(gridX1, gridY1, gridX2
-								- gridX1, gridY2 - gridY1);
+		int[] rects = this.geometry.getCellRects();
+		int gridX1 = rects[4 * i];
+		int gridY1 = rects[4 * i + 1];
+		int gridX2 = rects[4 * i + 2];
+		int gridY2 = rects[4 * i + 3];
+
+		this.imageContainer.setColor(ToolConfig.COLOR_HOVER);
+		this.imageContainer.fillRect(gridX1, gridY1, gridX2
+				- gridX1, gridY2 - gridY1);
+		this.imageContainer.setLineThickness(3);
+		this.imageContainer.drawRect(gridX1, gridY1, gridX2
+				- gridX1, gridY2 - gridY1);
+
+		this.selectedCell = this.geometry.getCell(i);
+
+		// draw tooltip
+		this.data.prepare(Mode.CLEARING);
+		int tooltipHeight = isTimeBinShown() ? 125 : 85;
+		Double difference = comparison != null ? comparison.getCellDifferences(mode).getAttribute(selectedCell.getId()) : null;
+		if (difference != null)
+			tooltipHeight += 20;
+
+		this.imageContainer.setLineThickness(1);
+		this.imageContainer.setColor(new Color(0, 0, 0, 90));
+		this.imageContainer.fillRect(mp.x - 15, mp.y + 30,
+				260, tooltipHeight);
+		this.imageContainer.setColor(Color.white);
+		this.imageContainer.fillRect(mp.x - 25, mp.y + 20, 260, tooltipHeight);
+		this.imageContainer.setColor(Color.black);
+		this.imageContainer.drawRect(mp.x - 25, mp.y + 20, 260, tooltipHeight);
+
+		this.imageContainer.setFont(ToolConfig.FONT_DEFAULT_BOLD);
+		this.imageContainer.drawString(mp.x - 15, mp.y + 40,
+				"person count:");
+		this.imageContainer.drawString(mp.x - 15, mp.y + 60,
+				"clearing time:");
+		this.imageContainer.drawString(mp.x - 15, mp.y + 80,
+				"average evacuation time:");
+
+		this.imageContainer.setFont(ToolConfig.FONT_DEFAULT);
+		this.imageContainer.drawString(mp.x + 135, mp.y + 40, EAToolBox
+				.getReadableTime(selectedCell.getCount(), Unit.PEOPLE));
+		this.imageContainer.drawString(
+				mp.x + 135,
+				mp.y + 60,
+				EAToolBox.getReadableTime(
+						selectedCell.getClearingTime(), Unit.TIME));
+		this.imageContainer.drawString(
+				mp.x + 135,
+				mp.y + 80,
+				EAToolBox.getReadableTime(selectedCell.getTimeSum()
+						/ selectedCell.getCount(), Unit.TIME));
+
+		if (difference != null) {
+			// time bins are not shown for comparisons
+			this.imageContainer.setFont(ToolConfig.FONT_DEFAULT_BOLD);
+			this.imageContainer.drawString(mp.x - 15, mp.y + 100,
+					"difference:");
+			this.imageContainer.setFont(ToolConfig.FONT_DEFAULT);
+			this.imageContainer.drawString(mp.x + 135, mp.y + 100, EAToolBox
+					.getReadableDifference(difference, mode.equals(Mode.UTILIZATION) ? Unit.PEOPLE : Unit.TIME));
+		}
 
-						this.selectedCell = cell;
-					}
+		if (isTimeBinShown()) {
+			this.imageContainer.setFont(ToolConfig.FONT_DEFAULT_BOLD);
+			this.imageContainer.drawString(mp.x - 15, mp.y + 100,
+					"arrived:");
+			this.imageContainer.drawString(mp.x - 15, mp.y + 120,
+					"on the links:");
+
+			this.imageContainer.setFont(ToolConfig.FONT_DEFAULT);
+			this.imageContainer.drawString(mp.x + 135, mp.y + 100,
+					EAToolBox.getReadableTime(
+							selectedCell.getArrivals(timeBin),
+							Unit.PEOPLE));
+			this.imageContainer.drawString(mp.x + 135, mp.y + 120,
+					EAToolBox.getReadableTime(
+							selectedCell.getOccupancy(timeBin),
+							Unit.PEOPLE));
+		}
 
-				}
-			}
+		this.imageContainer.setColor(Color.black);
+	}
 
-			// draw tooltip
-			if ((this.selectedCell != null)
-					&& (this.controller.getMousePosition() != null)) {
-				Point mp = this.controller.getMousePosition();
-
-				this.imageContainer.setLineThickness(1);
-				this.imageContainer.setColor(new Color(0, 0, 0, 90));
-				this.imageContainer.fillRect(
-						this.controller.getMousePosition().x - 15, mp.y + 30,
-						260, 85);
-				this.imageContainer.setColor(Color.white);
-				this.imageContainer.fillRect(mp.x - 25, mp.y + 20, 260, 85);
-				this.imageContainer.setColor(Color.black);
-				this.imageContainer.drawRect(mp.x - 25, mp.y + 20, 260, 85);
-
-				this.imageContainer.setFont(ToolConfig.FONT_DEFAULT_BOLD);
-				this.imageContainer.drawString(mp.x - 15, mp.y + 40,
-						"person count:");
-				this.imageContainer.drawString(mp.x - 15, mp.y + 60,
-						"clearing time:");
-				this.imageContainer.drawString(mp.x - 15, mp.y + 80,
-						"average evacuation time:");
-
-				this.imageContainer.setFont(ToolConfig.FONT_DEFAULT);
-				this.imageContainer.drawString(mp.x + 135, mp.y + 40, EAToolBox
-						.getReadableTime(selectedCell.getCount(), Unit.PEOPLE));
-				this.imageContainer.drawString(
-						mp.x + 135,
-						mp.y + 60,
-						EAToolBox.getReadableTime(
-								selectedCell.getClearingTime(), Unit.TIME));
-				this.imageContainer.drawString(
-						mp.x + 135,
-						mp.y + 80,
-						EAToolBox.getReadableTime(selectedCell.getTimeSum()
-								/ selectedCell.getCount(), Unit.TIME));
+	private Color getDifferenceColor(Cell cell, Mode mode) {
+		if (comparison.getCellColoration(mode) == null)
+			return null;
+		return comparison.getCellColoration(mode).getAttribute(cell.getId());
+	}
 
-			}
-			this.imageContainer.setColor(Color.black);
+	private boolean isTimeBinShown() {
+		return (comparison == null) && (timeBin >= 0) && (timeBin < data.getTimeBinCount());
+	}
+
+	/**
+	 * @return color of the cell at the end of the current time bin: share of
+	 *         persons departed from the cell not arrived yet (evacuation) or
+	 *         vehicles on the links of the cell (clearing). null if the cell
+	 *         has no value.
+	 */
+	private Color getTimeBinColor(Cell cell, Mode mode) {
+		if (mode.equals(Mode.EVACUATION)) {
+			if (cell.getCount() <= 0)
+				return null;
+			double pending = 1d - (double) cell.getArrivals(timeBin) / cell.getCount();
+			return Coloration.getColor(Math.max(0d, pending), colorationMode, transparency);
+		}
+		if (mode.equals(Mode.CLEARING)) {
+			int occupancy = cell.getOccupancy(timeBin);
+			if ((occupancy <= 0) || (data.getMaxCellOccupancy() <= 0))
+				return null;
+			return Coloration.getColor((double) occupancy / data.getMaxCellOccupancy(), colorationMode, transparency);
 		}
+		return null;
 	}
 
 	public void setMode(Mode mode) {
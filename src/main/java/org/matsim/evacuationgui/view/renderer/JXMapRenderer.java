@@ -20,11 +20,11 @@
 
 package org.matsim.evacuationgui.view.renderer;
 
-import java.awt.Graphics;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.Point2D;
-import java.awt.image.BufferedImage;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.EventListener;
 
@@ -33,6 +33,9 @@ import org.jxmapviewer.viewer.TileFactory;
 import org.matsim.evacuationgui.control.Controller;
 import org.matsim.evacuationgui.control.JXMap;
 import org.matsim.evacuationgui.jxmapviewerhelper.TileFactoryBuilder;
+import org.matsim.evacuationgui.jxmapviewerhelper.TilePrefetcher;
+import org.matsim.evacuationgui.jxmapviewerhelper.TileSource;
+import org.matsim.evacuationgui.jxmapviewerhelper.TileStore;
 
 /**
  * JXMap renderer. uses {@link: JXMap} to pull map data.
@@ -42,9 +45,11 @@ import org.matsim.evacuationgui.jxmapviewerhelper.TileFactoryBuilder;
  */
 public class JXMapRenderer extends AbstractSlippyMapRenderLayer {
 
+	// osm zoom levels prefetched for the scenario
+	private static final int PREFETCH_MIN_ZOOM = 10;
+	private static final int PREFETCH_MAX_ZOOM = 16;
+
 	private JXMap mapViewer;
-	private BufferedImage mapImage;
-	private Graphics mapGraphics;
 
 	public JXMapRenderer(Controller controller, String wms, String layer) {
 		super(controller);
@@ -52,13 +57,13 @@ public class JXMapRenderer extends AbstractSlippyMapRenderLayer {
 		// create a new JXMapviewer frame
 		mapViewer = new JXMap(controller);
 
-		// create image to use for export
+		// size of the map viewer
 		updateMapImage();
 
 		// add new tile factory, depending on input
 		TileFactory tileFactory;
 		if (wms == null)
-			tileFactory = TileFactoryBuilder.getOsmTileFactory();
+			tileFactory = getTileFactory(controller);
 		else
 			tileFactory = TileFactoryBuilder.getWMSTileFactory(wms, layer);
 
@@ -73,12 +78,28 @@ public class JXMapRenderer extends AbstractSlippyMapRenderLayer {
 
 	}
 
+	/**
+	 * tiles of openstreetmap or the given source, kept in the tile store
+	 */
+	private TileFactory getTileFactory(Controller controller) {
+		TileSource source = controller.getTiles() != null ? TileSource.getTileSource(controller.getTiles()) : TileSource.getOsmTileSource();
+		TileStore store = controller.getTileStore() != null ? new TileStore(new File(controller.getTileStore())) : TileStore.getDefaultTileStore();
+
+		// fetch the tiles of the scenario in the background (x of the box
+		// is the latitude)
+		Rectangle2D box = controller.getBoundingBox();
+		if ((controller.isPrefetchTiles()) && (!controller.isOffline()) && (!source.isLocal()) && (box != null))
+			new TilePrefetcher(source, store, box.getMinY(), box.getMinX(), box.getMaxY(), box.getMaxX(),
+					PREFETCH_MIN_ZOOM, PREFETCH_MAX_ZOOM).start();
+
+		return TileFactoryBuilder.getTileFactory(source, store, controller.isOffline());
+	}
+
 	@Override
 	public void paintLayer() {
-		if (enabled) {
-			mapViewer.paint(mapGraphics);
-			imageContainer.drawBufferedImage(0, 0, mapImage);
-		}
+		// straight into the surface of the layer
+		if (enabled)
+			mapViewer.paint(getSurfaceGraphics());
 	}
 
 	@Override
@@ -136,9 +157,6 @@ public class JXMapRenderer extends AbstractSlippyMapRenderLayer {
 
 	@Override
 	public void updateMapImage() {
-		mapImage = new BufferedImage(imageContainer.getWidth(),
-				imageContainer.getHeight(), BufferedImage.TYPE_INT_ARGB);
-		mapGraphics = mapImage.getGraphics();
 		mapViewer.setBounds(0, 0, imageContainer.getWidth(),
 				imageContainer.getHeight());
 	}
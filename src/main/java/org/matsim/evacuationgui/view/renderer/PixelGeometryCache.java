@@ -0,0 +1,315 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PixelGeometryCache.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.view.renderer;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.collections.QuadTree;
+import org.matsim.core.utils.collections.QuadTree.Rect;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.evacuationgui.analysis.data.Cell;
+import org.matsim.evacuationgui.control.Controller;
+
+/**
+ * pixel coordinates of the cells and links of an analysis on the map at
+ * one zoom level. map pixels do not change when panning (only the viewport
+ * is translated), so the geometry is projected once per zoom level and
+ * grid. cells and links are indexed by pixel buckets, so the ones within
+ * the viewport are found without a scan.
+ *
+ */
+class PixelGeometryCache {
+
+	// at most this many buckets per axis
+	private static final int MAX_BUCKETS = 512;
+	private static final int MIN_BUCKET_SIZE = 256;
+
+	private final Controller controller;
+
+	// state the geometry was projected for
+	private int cellZoom = Integer.MIN_VALUE;
+	private QuadTree<Cell> cellTree;
+	private double cellSize;
+	private int linkZoom = Integer.MIN_VALUE;
+	private List<Link> links;
+
+	private Cell[] cells = new Cell[0];
+	// x1, y1, x2, y2 (x1 <= x2, y1 <= y2) per cell
+	private int[] cellRects = new int[0];
+	private BucketIndex cellIndex;
+
+	private Link[] linkArray = new Link[0];
+	// from x, from y, to x, to y per link
+	private int[] linkLines = new int[0];
+	private BucketIndex linkIndex;
+
+	PixelGeometryCache(Controller controller) {
+		this.controller = controller;
+	}
+
+	/**
+	 * projects the cells again if zoom level or grid have changed
+	 */
+	void updateCells(int zoom, QuadTree<Cell> cellTree, double cellSize) {
+		if ((zoom == this.cellZoom) && (cellTree == this.cellTree) && (cellSize == this.cellSize))
+			return;
+
+		List<Cell> cellList = new ArrayList<Cell>();
+		cellTree.getRectangle(new Rect(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY), cellList);
+		this.cells = cellList.toArray(new Cell[cellList.size()]);
+		this.cellRects = new int[4 * cells.length];
+
+		CoordinateTransformation ctInverse = this.controller.getCtTarget2Osm();
+		for (int i = 0; i < cells.length; i++) {
+			Coord c = cells[i].getCoord();
+			Point2D p1 = toPixel(ctInverse, c.getX() - cellSize / 2, c.getY() - cellSize / 2);
+			Point2D p2 = toPixel(ctInverse, c.getX() + cellSize / 2, c.getY() + cellSize / 2);
+
+			int x1 = (int) p1.getX();
+			int y1 = (int) p1.getY();
+			int x2 = (int) p2.getX();
+			int y2 = (int) p2.getY();
+			cellRects[4 * i] = Math.min(x1, x2);
+			cellRects[4 * i + 1] = Math.min(y1, y2);
+			cellRects[4 * i + 2] = Math.max(x1, x2);
+			cellRects[4 * i + 3] = Math.max(y1, y2);
+		}
+
+		this.cellIndex = new BucketIndex(cellRects, cells.length);
+		this.cellZoom = zoom;
+		this.cellTree = cellTree;
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * projects the links again if zoom level or links have changed
+	 */
+	void updateLinks(int zoom, List<Link> links) {
+		if ((zoom == this.linkZoom) && (links == this.links))
+			return;
+
+		this.linkArray = links.toArray(new Link[links.size()]);
+		this.linkLines = new int[4 * linkArray.length];
+		int[] linkRects = new int[4 * linkArray.length];
+
+		CoordinateTransformation ctInverse = this.controller.getCtTarget2Osm();
+		for (int i = 0; i < linkArray.length; i++) {
+			Coord from = linkArray[i].getFromNode().getCoord();
+			Coord to = linkArray[i].getToNode().getCoord();
+			Point2D p1 = toPixel(ctInverse, from.getX(), from.getY());
+			Point2D p2 = toPixel(ctInverse, to.getX(), to.getY());
+
+			linkLines[4 * i] = (int) p1.getX();
+			linkLines[4 * i + 1] = (int) p1.getY();
+			linkLines[4 * i + 2] = (int) p2.getX();
+			linkLines[4 * i + 3] = (int) p2.getY();
+			linkRects[4 * i] = Math.min(linkLines[4 * i], linkLines[4 * i + 2]);
+			linkRects[4 * i + 1] = Math.min(linkLines[4 * i + 1], linkLines[4 * i + 3]);
+			linkRects[4 * i + 2] = Math.max(linkLines[4 * i], linkLines[4 * i + 2]);
+			linkRects[4 * i + 3] = Math.max(linkLines[4 * i + 1], linkLines[4 * i + 3]);
+		}
+
+		this.linkIndex = new BucketIndex(linkRects, linkArray.length);
+		this.linkZoom = zoom;
+		this.links = links;
+	}
+
+	private Point2D toPixel(CoordinateTransformation ctInverse, double x, double y) {
+		Coord transformed = ctInverse.transform(new Coord(x, y));
+		return this.controller.geoToPixel(new Point2D.Double(transformed.getY(), transformed.getX()));
+	}
+
+	/**
+	 * @return indices of the cells intersecting the given map pixel area
+	 */
+	int[] getCells(Rectangle area) {
+		return cellIndex.query(area);
+	}
+
+	/**
+	 * @return index of the cell containing the given map pixel, -1 if none
+	 */
+	int getCellAt(int x, int y) {
+		for (int i : cellIndex.query(new Rectangle(x, y, 1, 1)))
+			if ((x >= cellRects[4 * i]) && (x < cellRects[4 * i + 2])
+					&& (y >= cellRects[4 * i + 1]) && (y < cellRects[4 * i + 3]))
+				return i;
+		return -1;
+	}
+
+	Cell getCell(int i) {
+		return cells[i];
+	}
+
+	/**
+	 * @return x1, y1, x2, y2 of all cells
+	 */
+	int[] getCellRects() {
+		return cellRects;
+	}
+
+	/**
+	 * @return indices of the links whose bounding box intersects the given
+	 *         map pixel area, with a margin for their stroke
+	 */
+	int[] getLinks(Rectangle area, int margin) {
+		return linkIndex.query(new Rectangle(area.x - margin, area.y - margin, area.width + 2 * margin, area.height + 2 * margin));
+	}
+
+	Link getLink(int i) {
+		return linkArray[i];
+	}
+
+	/**
+	 * @return from x, from y, to x, to y of all links
+	 */
+	int[] getLinkLines() {
+		return linkLines;
+	}
+
+	/**
+	 * rectangles bucketed by their centers. a query extends the area by
+	 * half of the largest rectangle, so every rectangle that may intersect
+	 * it is found once.
+	 */
+	private static class BucketIndex {
+
+		private final int[] rects;
+		private final int minX;
+		private final int minY;
+		private final int bucketSize;
+		private final int columns;
+		private final int rows;
+		private final int maxHalfWidth;
+		private final int maxHalfHeight;
+
+		// rectangles by bucket (row major), as offsets into the entries
+		private final int[] offsets;
+		private final int[] entries;
+
+		BucketIndex(int[] rects, int n) {
+			this.rects = rects;
+
+			int minX = Integer.MAX_VALUE;
+			int minY = Integer.MAX_VALUE;
+			int maxX = Integer.MIN_VALUE;
+			int maxY = Integer.MIN_VALUE;
+			int maxHalfWidth = 0;
+			int maxHalfHeight = 0;
+			for (int i = 0; i < n; i++) {
+				minX = Math.min(minX, centerX(i));
+				minY = Math.min(minY, centerY(i));
+				maxX = Math.max(maxX, centerX(i));
+				maxY = Math.max(maxY, centerY(i));
+				maxHalfWidth = Math.max(maxHalfWidth, (rects[4 * i + 2] - rects[4 * i]) / 2 + 1);
+				maxHalfHeight = Math.max(maxHalfHeight, (rects[4 * i + 3] - rects[4 * i + 1]) / 2 + 1);
+			}
+			if (n == 0) {
+				minX = 0;
+				minY = 0;
+				maxX = 0;
+				maxY = 0;
+			}
+
+			this.minX = minX;
+			this.minY = minY;
+			this.maxHalfWidth = maxHalfWidth;
+			this.maxHalfHeight = maxHalfHeight;
+			long extent = Math.max((long) maxX - minX, (long) maxY - minY) + 1;
+			this.bucketSize = (int) Math.max(MIN_BUCKET_SIZE, (extent + MAX_BUCKETS - 1) / MAX_BUCKETS);
+			this.columns = (int) (((long) maxX - minX) / bucketSize) + 1;
+			this.rows = (int) (((long) maxY - minY) / bucketSize) + 1;
+
+			// counting sort of the rectangles by bucket
+			int[] buckets = new int[n];
+			this.offsets = new int[columns * rows + 1];
+			for (int i = 0; i < n; i++) {
+				buckets[i] = bucket(centerX(i), centerY(i));
+				offsets[buckets[i] + 1]++;
+			}
+			for (int b = 0; b < columns * rows; b++)
+				offsets[b + 1] += offsets[b];
+
+			this.entries = new int[n];
+			int[] next = Arrays.copyOf(offsets, columns * rows);
+			for (int i = 0; i < n; i++)
+				entries[next[buckets[i]]++] = i;
+		}
+
+		private int centerX(int i) {
+			return (int) (((long) rects[4 * i] + rects[4 * i + 2]) / 2);
+		}
+
+		private int centerY(int i) {
+			return (int) (((long) rects[4 * i + 1] + rects[4 * i + 3]) / 2);
+		}
+
+		private int bucket(int x, int y) {
+			return row(y) * columns + column(x);
+		}
+
+		private int column(long x) {
+			return (int) Math.max(0, Math.min(columns - 1, (x - minX) / bucketSize));
+		}
+
+		private int row(long y) {
+			return (int) Math.max(0, Math.min(rows - 1, (y - minY) / bucketSize));
+		}
+
+		int[] query(Rectangle area) {
+			long x1 = (long) area.x - maxHalfWidth;
+			long y1 = (long) area.y - maxHalfHeight;
+			long x2 = (long) area.x + area.width + maxHalfWidth;
+			long y2 = (long) area.y + area.height + maxHalfHeight;
+
+			// nothing can intersect an area beyond the outer buckets
+			if ((x2 < minX) || (y2 < minY) || (x1 > minX + (long) columns * bucketSize) || (y1 > minY + (long) rows * bucketSize))
+				return new int[0];
+
+			int[] found = new int[16];
+			int count = 0;
+			for (int row = row(y1); row <= row(y2); row++) {
+				for (int column = column(x1); column <= column(x2); column++) {
+					int b = row * columns + column;
+					for (int k = offsets[b]; k < offsets[b + 1]; k++) {
+						int i = entries[k];
+						if ((rects[4 * i + 2] < area.x) || (rects[4 * i] > area.x + area.width) || (rects[4 * i + 3] < area.y)
+								|| (rects[4 * i + 1] > area.y + area.height))
+							continue;
+						if (count == found.length)
+							found = Arrays.copyOf(found, count * 2);
+						found[count++] = i;
+					}
+				}
+			}
+
+			return Arrays.copyOf(found, count);
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.matsim.evacuationgui.analysis.control;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.matsim.evacuationgui.analysis.data.ClassificationMode;
+
+import static junit.framework.Assert.assertEquals;
+
+public class ClusterizerTest {
+
+    @Test
+    public void testQuantileBreaks() {
+        Random random = new Random(4711);
+        double[] values = new double[10001];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(100000);
+        }
+
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        int k = 5;
+        int m = values.length / (k - 1);
+        double[] breaks = new Clusterizer(ClassificationMode.QUANTILE).getBreaks(values, k);
+        for (int i = 0; i < k; i++) {
+            assertEquals(sorted[i * m], breaks[i], 0.0);
+        }
+
+        // fewer values than classes
+        breaks = new Clusterizer(ClassificationMode.QUANTILE).getBreaks(new double[]{3, 1}, 5);
+        assertEquals(1.0, breaks[0], 0.0);
+        assertEquals(3.0, breaks[1], 0.0);
+        assertEquals(3.0, breaks[4], 0.0);
+    }
+
+    @Test
+    public void testNaturalBreaks() {
+        double[] values = {1, 2, 3, 101, 102, 103, 1001, 1002, 1003};
+        double[] breaks = new Clusterizer(ClassificationMode.NATURAL_BREAKS).getBreaks(values, 3);
+
+        assertEquals(1.0, breaks[0], 0.0);
+        assertEquals(101.0, breaks[1], 0.0);
+        assertEquals(1001.0, breaks[2], 0.0);
+    }
+
+    @Test
+    public void testClasses() {
+        double[] breaks = new Clusterizer(ClassificationMode.EQUAL_INTERVAL).getBreaks(new double[]{0, 100}, 4);
+        assertEquals(75.0, breaks[3], 0.0);
+
+        int[] classes = Clusterizer.getClasses(new double[]{-1, 0, 24.9, 25, 100, Double.NaN}, breaks);
+        assertEquals(0, classes[0]);
+        assertEquals(1, classes[1]);
+        assertEquals(1, classes[2]);
+        assertEquals(2, classes[3]);
+        assertEquals(4, classes[4]);
+        assertEquals(-1, classes[5]);
+
+        assertEquals(3, Clusterizer.getDistinctValues(new double[]{2, 1, 2, 0, 1}).length);
+    }
+
+}
@@ -0,0 +1,206 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventHandlerTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.control;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.evacuationgui.analysis.data.Cell;
+import org.matsim.evacuationgui.analysis.data.EventData;
+import org.matsim.evacuationgui.model.Constants.Mode;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class EventHandlerTest {
+
+    @Test
+    public void testStreamingMatchesRetained() {
+        Scenario sc = createScenario();
+        EventHandler retained = new EventHandler(false, false, "events", sc, 50, null);
+        EventHandler streaming = new EventHandler(false, true, "events", sc, 50, null);
+        feed(retained);
+        feed(streaming);
+
+        EventData r = retained.getData();
+        EventData s = streaming.getData();
+
+        // persons departed on the exit link are not counted
+        assertEquals(8, r.getArrivals());
+        assertEquals(r.getArrivals(), s.getArrivals());
+        assertEquals(r.getTimeSum(), s.getTimeSum(), 0.0);
+        List<Tuple<Double, Integer>> curve = s.getArrivalTimes();
+        assertEquals(r.getArrivalTimes(), curve);
+        assertEquals(6, curve.size());
+        assertEquals(new Tuple<Double, Integer>(150.0, 7), curve.get(5));
+
+        List<Cell> rCells = new ArrayList<Cell>(r.getCells());
+        List<Cell> sCells = new ArrayList<Cell>(s.getCells());
+        assertEquals(rCells.size(), sCells.size());
+        for (int i = 0; i < rCells.size(); i++) {
+            assertEquals(rCells.get(i).getCoord(), sCells.get(i).getCoord());
+            assertEquals(rCells.get(i).getCount(), sCells.get(i).getCount());
+            assertEquals(rCells.get(i).getTimeSum(), sCells.get(i).getTimeSum(), 0.0);
+            assertEquals(rCells.get(i).getLinkEnterCount(), sCells.get(i).getLinkEnterCount());
+        }
+    }
+
+    @Test
+    public void testStreamingRegrid() {
+        Scenario sc = createScenario();
+        EventHandler retained = new EventHandler(false, false, "events", sc, 50, null);
+        feed(retained);
+
+        // links l2 and l3 are within the exit cell of the grid read with
+        EventHandler streaming = new EventHandler(false, true, "events", sc, 60, null);
+        feed(streaming);
+        streaming.getData();
+        streaming.setGridSize(50);
+
+        EventData r = retained.getData();
+        EventData s = streaming.getData();
+        assertEquals(r.getArrivals(), s.getArrivals());
+        assertEquals(r.getArrivalTimes(), s.getArrivalTimes());
+        for (Cell cell : streaming.getCells()) {
+            assertEquals(cell.getCount() > 0, cell.getArrivalTimeCount() > 0);
+        }
+    }
+
+    @Test
+    public void testVehicleWithoutDriver() {
+        Scenario sc = createScenario();
+        for (boolean streaming : new boolean[]{false, true}) {
+            EventHandler handler = new EventHandler(false, streaming, "events", sc, 50, null);
+            Id<Link> linkId = Id.create("l1", Link.class);
+            handler.handleLinkEnter(10, linkId, null);
+            handler.handleLinkLeave(20, linkId, null);
+
+            assertEquals(1, handler.getLinkAggregates().getEnterCount(linkId.index()));
+            assertEquals(1, handler.getLinkAggregates().getLeaveCount(linkId.index()));
+        }
+    }
+
+    @Test
+    public void testVisualDataOfSupersededData() {
+        EventHandler handler = new EventHandler(false, false, "events", createScenario(), 50, null);
+        handler.setK(3);
+        feed(handler);
+
+        // same grid, the data can still be colored
+        EventData first = handler.getData();
+        EventData second = handler.getData();
+        assertNotNull(first.getEvacuationTimeVisData());
+        assertNotNull(second.getEvacuationTimeVisData());
+
+        // earlier grid, the mode stays unprepared
+        handler.setGridSize(25);
+        handler.getData();
+        assertNull(first.getClearingTimeVisData());
+        assertFalse(first.isPrepared(Mode.CLEARING));
+        assertTrue(first.isPrepared(Mode.EVACUATION));
+    }
+
+    @Test
+    public void testSnapshotKeepsCounts() {
+        EventHandler handler = new EventHandler(false, true, "events", createScenario(), 50, null);
+        handler.setK(3);
+        feed(handler);
+
+        Id<Link> linkId = Id.create("l2", Link.class);
+        EventData snapshot = handler.getSnapshot();
+        int enterCount = snapshot.getLinkEnterCount(linkId);
+        assertTrue(enterCount > 0);
+
+        // further events do not change the snapshot
+        handler.handleLinkEnter(200, linkId, Id.create("p100", Person.class));
+        assertEquals(enterCount, snapshot.getLinkEnterCount(linkId));
+        assertEquals(enterCount + 1, handler.getData().getLinkEnterCount(linkId));
+    }
+
+    @Test
+    public void testDeparturesChangeGrid() {
+        EventHandler handler = new EventHandler(false, false, "events", createScenario(), 50, null);
+        feed(handler);
+        EventData before = handler.getData();
+
+        handler.handleDeparture(300, Id.create("p100", Person.class), Id.create("l1", Link.class));
+        assertTrue(before.getCellTree() != handler.getData().getCellTree());
+    }
+
+    /**
+     * a square of four links with an exit link leading away from its upper
+     * right corner
+     */
+    private static Scenario createScenario() {
+        Scenario sc = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+        Network network = sc.getNetwork();
+        Node n0 = NetworkUtils.createAndAddNode(network, Id.create("n0", Node.class), new Coord(0, 0));
+        Node n1 = NetworkUtils.createAndAddNode(network, Id.create("n1", Node.class), new Coord(100, 0));
+        Node n2 = NetworkUtils.createAndAddNode(network, Id.create("n2", Node.class), new Coord(100, 100));
+        Node n3 = NetworkUtils.createAndAddNode(network, Id.create("n3", Node.class), new Coord(0, 100));
+        Node en = NetworkUtils.createAndAddNode(network, Id.create("en1", Node.class), new Coord(1000, 1000));
+        NetworkUtils.createAndAddLink(network, Id.create("l1", Link.class), n0, n1, 100, 10, 1000, 1);
+        NetworkUtils.createAndAddLink(network, Id.create("l2", Link.class), n1, n2, 100, 10, 1000, 1);
+        NetworkUtils.createAndAddLink(network, Id.create("l3", Link.class), n2, n3, 100, 10, 1000, 1);
+        NetworkUtils.createAndAddLink(network, Id.create("l4", Link.class), n3, n0, 100, 10, 1000, 1);
+        NetworkUtils.createAndAddLink(network, Id.create("el1", Link.class), n2, en, 1000, 10, 1000, 1);
+        return sc;
+    }
+
+    /**
+     * every third person departs on the exit link, persons arrive in pairs
+     * at the same time
+     */
+    private static void feed(EventHandler handler) {
+        String[] route = {"l1", "l2", "l3", "l4"};
+        for (int p = 0; p < 12; p++) {
+            Id<Person> personId = Id.create("p" + p, Person.class);
+            double time = 10 * p;
+            Id<Link> departureLink = Id.create(p % 3 == 0 ? "el1" : route[p % 4], Link.class);
+            handler.handleDeparture(time, personId, departureLink);
+
+            Id<Link> linkId = departureLink;
+            for (int i = 1; i <= p % 3; i++) {
+                time += 20;
+                handler.handleLinkLeave(time, linkId, personId);
+                linkId = Id.create(route[(p + i) % 4], Link.class);
+                handler.handleLinkEnter(time, linkId, personId);
+            }
+            handler.handleArrival(10 * (p - p % 2) + 50, personId, linkId);
+        }
+    }
+
+}
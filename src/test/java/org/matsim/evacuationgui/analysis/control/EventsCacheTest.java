@@ -0,0 +1,201 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventsCacheTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.control;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.evacuationgui.analysis.data.Cell;
+import org.matsim.evacuationgui.analysis.data.EventData;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+public class EventsCacheTest {
+
+    private static final String[] LINKS = {"l1", "l2", "l3", "l4"};
+
+    private Scenario scenario;
+    private File eventFile;
+
+    @Before
+    public void setUp() throws IOException {
+        scenario = createScenario();
+        eventFile = File.createTempFile("cache", ".events.xml");
+        writeEvents(eventFile);
+    }
+
+    @After
+    public void tearDown() {
+        EventsCache.getCacheFile(eventFile).delete();
+        eventFile.delete();
+    }
+
+    @Test
+    public void testReplayMatchesEventsFile() {
+        // the first read parses the events file and writes the cache
+        assertFalse(EventsCache.isValid(eventFile));
+        EventHandler parsed = read();
+        assertTrue(EventsCache.isValid(eventFile));
+
+        EventHandler replayed = read();
+        assertSameState(parsed, replayed);
+    }
+
+    @Test
+    public void testStaleCache() throws IOException {
+        read();
+        long lastModified = eventFile.lastModified();
+
+        eventFile.setLastModified(lastModified - 10000);
+        assertFalse(EventsCache.isValid(eventFile));
+        eventFile.setLastModified(lastModified);
+        assertTrue(EventsCache.isValid(eventFile));
+
+        try (FileWriter writer = new FileWriter(eventFile, true)) {
+            writer.write("\n");
+        }
+        eventFile.setLastModified(lastModified);
+        assertFalse(EventsCache.isValid(eventFile));
+    }
+
+    @Test
+    public void testTruncatedCache() throws IOException {
+        EventHandler parsed = read();
+        File cacheFile = EventsCache.getCacheFile(eventFile);
+        long length = cacheFile.length();
+
+        // cut off within the records, the events file is read again
+        truncate(cacheFile, EventsCache.HEADER_SIZE + 3 * EventsCache.RECORD_SIZE);
+        assertFalse(EventsCache.isValid(eventFile));
+        assertSameState(parsed, read());
+        assertEquals(length, cacheFile.length());
+
+        // cut off within the dictionaries, replaying fails
+        truncate(cacheFile, length - 4);
+        try {
+            new EventsCacheReader(cacheFile, new EventHandler(false, false, "events", scenario, 50, null)).run();
+            fail("truncated dictionaries replayed");
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    private EventHandler read() {
+        EventHandler handler = new EventHandler(false, false, "events", scenario, 50, null);
+        BatchAnalysis.readEvents(eventFile, handler);
+        return handler;
+    }
+
+    private void assertSameState(EventHandler expected, EventHandler actual) {
+        EventData e = expected.getData();
+        EventData a = actual.getData();
+        assertEquals(e.getArrivals(), a.getArrivals());
+        assertEquals(e.getTimeSum(), a.getTimeSum(), 0.0);
+        assertEquals(e.getArrivalTimes(), a.getArrivalTimes());
+
+        for (Link link : scenario.getNetwork().getLinks().values()) {
+            assertEquals(e.getLinkEnterCount(link.getId()), a.getLinkEnterCount(link.getId()));
+            assertEquals(e.getLinkLeaveCount(link.getId()), a.getLinkLeaveCount(link.getId()));
+            assertEquals(expected.getLinkClearingTime(link.getId().index()), actual.getLinkClearingTime(link.getId().index()), 0.0);
+        }
+
+        Cell[] eCells = expected.getCells();
+        Cell[] aCells = actual.getCells();
+        assertEquals(eCells.length, aCells.length);
+        for (int i = 0; i < eCells.length; i++) {
+            assertEquals(eCells[i].getCount(), aCells[i].getCount());
+            assertEquals(eCells[i].getLinkEnterCount(), aCells[i].getLinkEnterCount());
+            assertEquals(eCells[i].getClearingTime(), aCells[i].getClearingTime(), 0.0);
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    /**
+     * persons drive along the square in their own vehicles. ids are first
+     * seen in reverse order of their numbers, and one vehicle enters a link
+     * without having entered traffic (no driver).
+     */
+    private static void writeEvents(File file) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<events version=\"1.0\">\n");
+            for (int p = 5; p >= 0; p--) {
+                String person = "agent-" + p;
+                String vehicle = "veh-" + p;
+                double time = 10 * (5 - p);
+                String link = LINKS[p % 4];
+                writer.write(event(time, "departure", "person=\"" + person + "\" link=\"" + link + "\" legMode=\"car\""));
+                writer.write(event(time, "vehicle enters traffic", "person=\"" + person + "\" link=\"" + link + "\" vehicle=\"" + vehicle
+                        + "\" networkMode=\"car\" relativePosition=\"1.0\""));
+                for (int i = 1; i <= p % 3; i++) {
+                    time += 20;
+                    writer.write(event(time, "left link", "link=\"" + link + "\" vehicle=\"" + vehicle + "\""));
+                    link = LINKS[(p + i) % 4];
+                    writer.write(event(time, "entered link", "link=\"" + link + "\" vehicle=\"" + vehicle + "\""));
+                }
+                writer.write(event(time + 5, "arrival", "person=\"" + person + "\" link=\"" + link + "\" legMode=\"car\""));
+            }
+            writer.write(event(200, "entered link", "link=\"l2\" vehicle=\"unknown\""));
+            writer.write("</events>\n");
+        }
+    }
+
+    private static String event(double time, String type, String attributes) {
+        return "\t<event time=\"" + time + "\" type=\"" + type + "\" " + attributes + " />\n";
+    }
+
+    private static Scenario createScenario() {
+        Scenario sc = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+        Network network = sc.getNetwork();
+        Node n0 = NetworkUtils.createAndAddNode(network, Id.create("n0", Node.class), new Coord(0, 0));
+        Node n1 = NetworkUtils.createAndAddNode(network, Id.create("n1", Node.class), new Coord(100, 0));
+        Node n2 = NetworkUtils.createAndAddNode(network, Id.create("n2", Node.class), new Coord(100, 100));
+        Node n3 = NetworkUtils.createAndAddNode(network, Id.create("n3", Node.class), new Coord(0, 100));
+        NetworkUtils.createAndAddLink(network, Id.create("l1", Link.class), n0, n1, 100, 10, 1000, 1);
+        NetworkUtils.createAndAddLink(network, Id.create("l2", Link.class), n1, n2, 100, 10, 1000, 1);
+        NetworkUtils.createAndAddLink(network, Id.create("l3", Link.class), n2, n3, 100, 10, 1000, 1);
+        NetworkUtils.createAndAddLink(network, Id.create("l4", Link.class), n3, n0, 100, 10, 1000, 1);
+        return sc;
+    }
+
+}
@@ -0,0 +1,62 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ArrivalCurveTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class ArrivalCurveTest {
+
+    @Test
+    public void testDownsampling() {
+        // linear increase with a single step at 5000
+        int n = 10000;
+        double[] times = new double[n];
+        double[] arrivals = new double[n];
+        for (int i = 0; i < n; i++) {
+            times[i] = i;
+            arrivals[i] = i < 5000 ? i : i + 100000;
+        }
+
+        ArrivalCurve curve = new ArrivalCurve(times, arrivals);
+        ArrivalCurve sampled = curve.getDownsampled(100);
+
+        assertEquals(100, sampled.size());
+        assertEquals(0.0, sampled.getTime(0), 0.0);
+        assertEquals(n - 1.0, sampled.getTime(99), 0.0);
+
+        // both ends of the step are kept
+        boolean before = false;
+        boolean after = false;
+        for (int i = 0; i < sampled.size(); i++) {
+            if (i > 0)
+                assertTrue(sampled.getTime(i) > sampled.getTime(i - 1));
+            before |= sampled.getTime(i) == 4999;
+            after |= sampled.getTime(i) == 5000;
+        }
+        assertTrue(before && after);
+
+        assertTrue(curve.getDownsampled(n) == curve);
+    }
+
+}
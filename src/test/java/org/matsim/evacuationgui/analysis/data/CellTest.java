@@ -0,0 +1,97 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * CellTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class CellTest {
+
+    @Test
+    public void testMedianArrivalTime() {
+        Cell cell = new Cell();
+        assertEquals(0.0, cell.getMedianArrivalTime(), 0.0);
+
+        cell.addArrivalTime(10);
+        cell.addArrivalTime(30);
+        cell.addArrivalTime(20);
+        assertEquals(20.0, cell.getMedianArrivalTime(), 0.0);
+        assertEquals(20.0, cell.getMeanArrivalTime(), 0.0);
+
+        cell.addArrivalTime(40);
+        assertEquals(25.0, cell.getMedianArrivalTime(), 0.0);
+        assertEquals(4, cell.getArrivalTimes().length);
+    }
+
+    @Test
+    public void testMerge() {
+        Cell a = new Cell();
+        Cell b = new Cell();
+        for (int i = 0; i < 10; i++) {
+            a.addArrivalTime(2 * i);
+            b.addArrivalTime(2 * i + 1);
+        }
+        a.setCount(10);
+        b.setCount(10);
+        a.updateClearanceTime(18);
+        b.updateClearanceTime(19);
+
+        a.merge(b);
+        assertEquals(20, a.getCount());
+        assertEquals(19.0, a.getClearingTime(), 0.0);
+        assertEquals(9.5, a.getMedianArrivalTime(), 0.0);
+        assertEquals(9.5, a.getMeanArrivalTime(), 0.0);
+
+        Cell c = new Cell(new QuantileSketch());
+        Cell d = new Cell(new QuantileSketch());
+        for (int i = 1; i <= 100; i++) {
+            c.addArrivalTime(i);
+            d.addArrivalTime(100 + i);
+        }
+        c.merge(d);
+        assertEquals(200, c.getArrivalTimeCount());
+        assertEquals(100.5, c.getMeanArrivalTime(), 1e-9);
+        assertEquals(100.0, c.getMedianArrivalTime(), 1.0);
+    }
+
+    @Test
+    public void testSparseTimeBins() {
+        Cell cell = new Cell();
+        assertEquals(0, cell.getOccupancy(3));
+
+        // events in bins 2 and 5 only
+        cell.setTimeBins(new int[]{2, 5}, new int[]{3, 1}, new int[]{4, 2}, new int[]{1, 6});
+        assertEquals(0, cell.getOccupancy(1));
+        assertEquals(0, cell.getArrivals(-1));
+        assertEquals(3, cell.getOccupancy(2));
+        assertEquals(4, cell.getDepartures(2));
+
+        // values are kept until the next bin with events, departures are not
+        assertEquals(3, cell.getOccupancy(4));
+        assertEquals(1, cell.getArrivals(4));
+        assertEquals(0, cell.getDepartures(4));
+        assertEquals(1, cell.getOccupancy(5));
+        assertEquals(6, cell.getArrivals(100));
+        assertEquals(0, cell.getDepartures(100));
+    }
+
+}
@@ -0,0 +1,100 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EnsembleDataTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.matsim.core.utils.collections.QuadTree.Rect;
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.evacuationgui.model.Constants.Mode;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class EnsembleDataTest {
+
+    private static final double[] XS = { 5, 15 };
+    private static final double[] YS = { 5, 5 };
+
+    @Test
+    public void testMergedQuantiles() {
+        EnsembleData all = new EnsembleData(60);
+        EnsembleData first = new EnsembleData(60);
+        EnsembleData second = new EnsembleData(60);
+
+        // run r: cell 0 evacuated at 100 * r, cell 1 never
+        for (int r = 1; r <= 10; r++) {
+            addRun(all, r);
+            addRun(r <= 5 ? first : second, r);
+        }
+        first.merge(second);
+
+        assertEquals(10, first.getRuns());
+        assertEquals(all.getCellQuantile(Mode.EVACUATION, 0, 0.9), first.getCellQuantile(Mode.EVACUATION, 0, 0.9), 0.0);
+        assertEquals(900, all.getCellQuantile(Mode.EVACUATION, 0, 0.9), 900 * 0.02);
+        assertTrue(Double.isNaN(all.getCellQuantile(Mode.EVACUATION, 1, 0.5)));
+        assertEquals(550, all.getLinkQuantile(Mode.CLEARING, 3, 0.5), 550 * 0.02);
+        assertEquals(2.0, all.getMeanCount(0), 0.0);
+    }
+
+    @Test
+    public void testArrivalCurve() {
+        EnsembleData ensemble = new EnsembleData(60);
+        for (int r = 1; r <= 10; r++)
+            addRun(ensemble, r);
+
+        // by the end of the first bin, one run has evacuated both persons,
+        // 9 of 10 runs have evacuated none
+        ArrivalCurve p50 = ensemble.getArrivalCurve(0.5);
+        ArrivalCurve p90 = ensemble.getArrivalCurve(0.9);
+        assertEquals(17, p50.size());
+        assertEquals(0.0, p50.getArrivals(0), 0.0);
+        assertEquals(0.0, p90.getArrivals(0), 0.0);
+        assertEquals(2.0, p90.getArrivals(16), 0.0);
+
+        // the slow runs are later
+        for (int i = 0; i < p50.size(); i++)
+            assertTrue(p90.getArrivals(i) <= p50.getArrivals(i));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGridMismatch() {
+        EnsembleData ensemble = new EnsembleData(60);
+        ensemble.setGrid(XS, YS, 10, new Rect(0, 0, 20, 10), 1);
+        ensemble.setGrid(new double[] { 5 }, new double[] { 5 }, 10, new Rect(0, 0, 10, 10), 1);
+    }
+
+    private static void addRun(EnsembleData ensemble, int r) {
+        ensemble.setGrid(XS, YS, 10, new Rect(0, 0, 20, 10), 1);
+        ensemble.addCell(0, 2, 200 * r, 100 * r, 110 * r);
+        ensemble.addCell(1, 0, 0, Double.NaN, 0);
+        ensemble.addLink(3, 100 * r, 110 * r);
+
+        List<Tuple<Double, Integer>> arrivalTimes = new ArrayList<Tuple<Double, Integer>>();
+        arrivalTimes.add(new Tuple<Double, Integer>(50d * r, 1));
+        arrivalTimes.add(new Tuple<Double, Integer>(100d * r, 2));
+        ensemble.addArrivalTimes(arrivalTimes);
+        ensemble.addRun();
+    }
+
+}
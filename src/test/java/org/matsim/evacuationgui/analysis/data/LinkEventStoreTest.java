@@ -0,0 +1,77 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * LinkEventStoreTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+public class LinkEventStoreTest {
+
+    @Test
+    public void testColumnsAndPerLinkAccess() {
+        LinkEventStore store = new LinkEventStore();
+
+        // more events than fit into a single chunk
+        int n = 200000;
+        for (int i = 0; i < n; i++) {
+            store.add(i % 7, i, i * 0.5);
+        }
+
+        assertEquals(n, store.size());
+        assertEquals(5, store.getLinkIndex(12));
+        assertEquals(70000, store.getPersonIndex(70000));
+        assertEquals(35000.0, store.getTime(70000), 0.0);
+
+        int expectedCount = (n + 6 - 3) / 7;
+        assertEquals(expectedCount, store.getCount(3));
+        assertEquals(0, store.getCount(42));
+
+        // events of one link are returned in insertion order
+        assertEquals(1.5, store.getTime(3, 0), 0.0);
+        assertEquals(5.0, store.getTime(3, 1), 0.0);
+
+        // the per link index is rebuilt after further additions
+        store.add(3, 1, 123456.);
+        assertEquals(expectedCount + 1, store.getCount(3));
+        assertEquals(123456., store.getTime(3, expectedCount), 0.0);
+    }
+
+    @Test
+    public void testTimeOfRank() {
+        LinkEventStore store = new LinkEventStore();
+        store.add(1, 0, 10);
+        store.add(1, 1, 20);
+        store.add(2, 2, 30);
+        assertEquals(true, store.isChronological());
+        assertEquals(20.0, store.getTimeOfRank(1, 1), 0.0);
+
+        // out of order: ranks are selected
+        store.add(1, 3, 5);
+        store.add(1, 4, 15);
+        assertEquals(false, store.isChronological());
+        assertEquals(5.0, store.getTimeOfRank(1, 0), 0.0);
+        assertEquals(15.0, store.getTimeOfRank(1, 2), 0.0);
+        assertEquals(20.0, store.getTimeOfRank(1, 3), 0.0);
+        assertEquals(30.0, store.getTimeOfRank(2, 0), 0.0);
+    }
+
+}
@@ -0,0 +1,69 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QuantileSketchTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.analysis.data;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void testRelativeAccuracy() {
+        QuantileSketch sketch = new QuantileSketch();
+
+        int n = 100000;
+        for (int i = 1; i <= n; i++) {
+            sketch.add(i);
+        }
+
+        assertEquals(n, sketch.getCount());
+        assertEquals(1.0, sketch.getMin(), 0.0);
+        assertEquals((double) n, sketch.getMax(), 0.0);
+
+        double[] quantiles = {0.1, 0.5, 0.95, 0.99};
+        for (double q : quantiles) {
+            double exact = 1 + q * (n - 1);
+            double estimate = sketch.getQuantile(q);
+            assertTrue("quantile " + q + ": " + estimate, Math.abs(estimate - exact) <= 0.01 * exact + 1);
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        QuantileSketch lower = new QuantileSketch();
+        QuantileSketch upper = new QuantileSketch();
+        for (int i = 0; i < 1000; i++) {
+            lower.add(i);
+            upper.add(i + 1000);
+        }
+
+        lower.merge(upper);
+
+        assertEquals(2000, lower.getCount());
+        assertEquals(0.0, lower.getMin(), 0.0);
+        assertEquals(1999.0, lower.getMax(), 0.0);
+        assertEquals(1000.0, lower.getQuantile(0.5), 10.0);
+        assertEquals(0.0, new QuantileSketch().getQuantile(0.5), 0.0);
+    }
+
+}
@@ -0,0 +1,93 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * TileSourceTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.jxmapviewerhelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class TileSourceTest {
+
+    @Test
+    public void testTileUrl() {
+        TileSource osm = TileSource.getOsmTileSource();
+        String url = osm.getTileUrl(550, 335, 10);
+        assertEquals("http://tile.openstreetmap.org/10/550/335.png", url);
+
+        int[] tile = osm.getTile(url);
+        assertEquals(10, tile[0]);
+        assertEquals(550, tile[1]);
+        assertEquals(335, tile[2]);
+        assertNull(osm.getTile("http://tile.openstreetmap.org/10/550.png"));
+
+        // placeholders in another order, e.g. of a local tile server
+        TileSource server = TileSource.getTileSource("http://localhost:8080/tiles/{z}/{y}/{x}.jpg?v=1");
+        assertEquals("localhost_8080", server.getName());
+        assertEquals(".jpg", server.getExtension());
+        tile = server.getTile(server.getTileUrl(3, 5, 7));
+        assertEquals(7, tile[0]);
+        assertEquals(3, tile[1]);
+        assertEquals(5, tile[2]);
+        assertFalse(server.isLocal());
+    }
+
+    @Test
+    public void testTileCoordinates() {
+        assertEquals(550, TileSource.getTileX(13.4, 10));
+        assertEquals(335, TileSource.getTileY(52.52, 10));
+        assertEquals(0, TileSource.getTileX(-180, 5));
+        assertEquals(31, TileSource.getTileX(180, 5));
+
+        // the bounding box covers 2 x 2 tiles at zoom 10, 3 x 3 at zoom 11
+        List<int[]> tiles = TilePrefetcher.getTiles(13.3, 52.4, 13.6, 52.6, 10, 11, 1000);
+        assertEquals(4 + 9, tiles.size());
+        assertEquals(10, tiles.get(0)[0]);
+
+        // finer zoom levels are left out beyond the maximum
+        assertEquals(4, TilePrefetcher.getTiles(13.3, 52.4, 13.6, 52.6, 10, 16, 12).size());
+    }
+
+    @Test
+    public void testStore() throws IOException {
+        File dir = File.createTempFile("tiles", "");
+        dir.delete();
+        TileStore store = new TileStore(dir);
+        TileSource osm = TileSource.getOsmTileSource();
+
+        assertFalse(store.contains(osm, 10, 550, 335));
+        store.put(osm, 10, 550, 335, new byte[] { 1, 2, 3 });
+        assertTrue(store.contains(osm, 10, 550, 335));
+        assertEquals(3, store.getFile(osm, 10, 550, 335).length());
+
+        // the stored tiles are a local z/x/y tile source
+        TileSource local = TileSource.getDirectoryTileSource(store.getDirectory(osm));
+        assertTrue(local.isLocal());
+        assertEquals(store.getFile(osm, 10, 550, 335).toURI().toString(), local.getTileUrl(550, 335, 10));
+    }
+
+}
@@ -0,0 +1,62 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * IdClassificationTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2012 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.evacuationgui.utils;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class IdClassificationTest {
+
+    @Test
+    public void testNetworkChange() {
+        Scenario sc = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+        Network network = sc.getNetwork();
+        Node n0 = NetworkUtils.createAndAddNode(network, Id.create("n0", Node.class), new Coord(0, 0));
+        Node n1 = NetworkUtils.createAndAddNode(network, Id.create("n1", Node.class), new Coord(100, 0));
+        NetworkUtils.createAndAddLink(network, Id.create("l1", Link.class), n0, n1, 100, 10, 1000, 1);
+
+        IdClassification ids = IdClassification.get(sc);
+        assertSame(ids, IdClassification.get(sc));
+        Id<Link> exitLinkId = Id.create("el1", Link.class);
+        assertFalse(ids.isExitLink(exitLinkId));
+
+        // exit added later, e.g. by the scenario generator
+        Node exitNode = NetworkUtils.createAndAddNode(network, Id.create("en1", Node.class), new Coord(1000, 0));
+        NetworkUtils.createAndAddLink(network, exitLinkId, n1, exitNode, 900, 10, 1000, 1);
+
+        ids = IdClassification.get(sc);
+        assertTrue(ids.isExitLink(exitLinkId));
+        assertTrue(ids.isExitNode(exitNode.getId()));
+    }
+
+}